@@ -5,31 +5,42 @@ import com.bc.jnn.JnnException;
 import com.bc.jnn.JnnNet;
 import org.esa.beam.framework.gpf.OperatorException;
 import org.esa.beam.glint.util.GlintHelpers;
+import org.esa.beam.util.logging.BeamLogManager;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.logging.Level;
 
 /**
+ * This class is the registry of the Flint auxiliary data. Each table and neural net is parsed only once per JVM
+ * and then shared between all Flint operator instances. The tables are read-only: the returned arrays are copies,
+ * so that a caller cannot modify the data shared with other callers. All methods are thread-safe.
+ * <p/>
+ * If a binary version '&lt;resource&gt;.bin' of a resource is available (see {@link FlintBinaryAuxData}),
+ * it is used instead of parsing the text resource.
+ *
  * @author Olaf Danne
  * @version $Revision: 5451 $ $Date: 2009-06-05 18:36:49 +0200 (Fr, 05 Jun 2009) $
  */
 public class FlintAuxData {
 
-    private static FlintAuxData instance;
-    
-    private static final String AATSR_SPECTRAL_RESPONSE37_FILE_NAME = "aatsr_ir37.dat";
+
+    static final String AATSR_SPECTRAL_RESPONSE37_FILE_NAME = "aatsr_ir37.dat";
     // make sure that the following value corresponds to the file above
     private static final int AATSR_SPECTRAL_RESPONSE37_TABLE_LENGTH = 255;
     private static final int AATSR_SPECTRAL_RESPONSE37_TABLE_HEADER_LINES = 3;
 
-    private static final String CAHALAN_FILE_NAME = "cahalan.d";
+    static final String CAHALAN_FILE_NAME = "cahalan.d";
     // make sure that the following value corresponds to the file above
     private static final int CAHALAN_TABLE_LENGTH = 2496;
 
-    private static final String TEMP2RAD_FILE_NAME = "temp_to_rad_36.d";
+    static final String TEMP2RAD_FILE_NAME = "temp_to_rad_36.d";
     // make sure that the following value corresponds to the file above
     private static final int TEMP2RAD_TABLE_LENGTH = 200;
 
@@ -47,14 +58,35 @@ public class FlintAuxData {
     public static final String NEURAL_NET_WINDSPEED_FILE_NAME = "cm_ws_to_gauss2d.nna";
 
 
-    public static FlintAuxData getInstance() {
-        if (instance == null) {
-            instance = new FlintAuxData();
-        }
+    private final Map<String, float[][]> waterVapourCoefficients = new HashMap<String, float[][]>();
+    private final Map<String, float[]> transmissionWeights = new HashMap<String, float[]>();
+    private final Map<String, FlintNeuralNet> compiledNeuralNets = new HashMap<String, FlintNeuralNet>();
+    private AatsrSpectralResponse37Table aatsrSpectralResponse37Table;
+    private CahalanTable cahalanTable;
+    private Temp2RadianceTable temp2RadianceTable;
+
+    private final boolean useBinaryResources;
+
+    // the instance is created and safely published by the class loader on first access
+    private static class Holder {
+        private static final FlintAuxData INSTANCE = new FlintAuxData();
+    }
 
-        return instance;
+    FlintAuxData() {
+        this(true);
     }
 
+    FlintAuxData(boolean useBinaryResources) {
+        this.useBinaryResources = useBinaryResources;
+    }
+
+    public static FlintAuxData getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    //
+    // This method returns a new JnnNet instance on each call, since a JnnNet must not be shared between threads.
+    //
     public JnnNet loadNeuralNet(String filename) throws IOException, JnnException {
         InputStream inputStream = FlintOp.class.getResourceAsStream(filename);
         final InputStreamReader reader = new InputStreamReader(inputStream);
@@ -71,41 +103,63 @@ public class FlintAuxData {
         return neuralNet;
     }
 
+    public synchronized FlintNeuralNet loadCompiledNeuralNet(String filename) throws IOException {
+        FlintNeuralNet neuralNet = compiledNeuralNets.get(filename);
+        if (neuralNet == null) {
+            neuralNet = compileNeuralNet(filename);
+            compiledNeuralNets.put(filename, neuralNet);
+        }
+        return neuralNet;
+    }
+
+    private FlintNeuralNet compileNeuralNet(String filename) throws IOException {
+        final double[] binaryNet = readBinary(filename, -1, 1);
+        if (binaryNet != null) {
+            return FlintNeuralNet.fromArray(binaryNet);
+        }
 
-    public float[][] readWaterVapourCoefficients(int channel, String index) throws IOException {
-       InputStream inputStream;
+        InputStream inputStream = FlintOp.class.getResourceAsStream(filename);
+        final InputStreamReader reader = new InputStreamReader(inputStream);
 
-       float[][] tmpCoeffs;
-       float[] coeffs;
-       int COEFF_ROWS;
-       int COEFF_COLUMNS = 8;
-    
-       if (channel == 37) {
-            COEFF_ROWS = 45;
-            tmpCoeffs = new float[COEFF_ROWS][COEFF_COLUMNS];
-            coeffs = new float[COEFF_ROWS*COEFF_COLUMNS]; // final result
-            if (index.toUpperCase().equals("A")) {
-                inputStream = FlintOp.class.getResourceAsStream(A_COEFF_0370_FILE_NAME);
-            } else if (index.toUpperCase().equals("H")) {
-                inputStream = FlintOp.class.getResourceAsStream(H_COEFF_0370_FILE_NAME);
-            } else {
-                throw new OperatorException("Failed to read WV coefficients - index must be 'H' or 'A'.\n");
-            }
-       } else if (channel == 16) {
-           COEFF_ROWS = 54;
-            tmpCoeffs = new float[COEFF_ROWS][COEFF_COLUMNS];
-            coeffs = new float[COEFF_ROWS*COEFF_COLUMNS]; // final result
-            if (index.toUpperCase().equals("A")) {
-                inputStream = FlintOp.class.getResourceAsStream(A_COEFF_1600_FILE_NAME);
-            } else if (index.toUpperCase().equals("H")) {
-                inputStream = FlintOp.class.getResourceAsStream(H_COEFF_1600_FILE_NAME);
-            } else {
-                throw new OperatorException("Failed to read WV coefficients - index must be 'H' or 'A'.\n");
-            }
-       } else {
-           throw new OperatorException("Failed to read WV coefficients - channel must be '16' or '37'.\n");
+        try {
+            return FlintNeuralNet.compile(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+
+    public synchronized float[][] readWaterVapourCoefficients(int channel, String index) throws IOException {
+        final String key = channel + index.toUpperCase();
+        float[][] coeffs = waterVapourCoefficients.get(key);
+        if (coeffs == null) {
+            coeffs = parseWaterVapourCoefficients(channel, index);
+            waterVapourCoefficients.put(key, coeffs);
+        }
+        final float[][] copy = new float[coeffs.length][];
+        for (int i = 0; i < coeffs.length; i++) {
+            copy[i] = coeffs[i].clone();
+        }
+        return copy;
+    }
+
+    private float[][] parseWaterVapourCoefficients(int channel, String index) throws IOException {
+       final String fileName = getWaterVapourCoefficientsFileName(channel, index);
+       final int COEFF_ROWS = getNumberOfSpectralIntervals(channel);
+       final int COEFF_COLUMNS = 8;
+       final float[][] tmpCoeffs = new float[COEFF_ROWS][COEFF_COLUMNS];
+
+       final double[] binaryCoeffs = readBinary(fileName, COEFF_ROWS, COEFF_COLUMNS);
+       if (binaryCoeffs != null) {
+           for (int j=0; j<COEFF_ROWS; j++) {
+               for (int i=0; i<COEFF_COLUMNS; i++) {
+                   tmpCoeffs[j][i] = (float) binaryCoeffs[j*COEFF_COLUMNS + i];
+               }
+           }
+           return tmpCoeffs;
        }
 
+       final InputStream inputStream = FlintOp.class.getResourceAsStream(fileName);
        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
        StringTokenizer st;
        try {
@@ -121,12 +175,6 @@ public class FlintAuxData {
                }
                lineIndex++;
            }
-
-           for (int i=0; i<COEFF_COLUMNS; i++) {
-               for (int j=0; j<COEFF_ROWS; j++) {
-                    coeffs[i*COEFF_ROWS + j] = tmpCoeffs[j][i];
-               }
-           }
        } catch (IOException e) {
            throw new OperatorException("Failed to load WV coefficients: \n" + e.getMessage(), e);
        } catch (NumberFormatException e) {
@@ -134,42 +182,35 @@ public class FlintAuxData {
        } finally {
            inputStream.close();
        }
-//        return coeffs;
         return tmpCoeffs;
    }
 
     
 
-    public float[] readTransmissionWeights(int channel, String index) throws IOException {
-       InputStream inputStream;
+    public synchronized float[] readTransmissionWeights(int channel, String index) throws IOException {
+        final String key = channel + index.toUpperCase();
+        float[] weights = transmissionWeights.get(key);
+        if (weights == null) {
+            weights = parseTransmissionWeights(channel, index);
+            transmissionWeights.put(key, weights);
+        }
+        return weights.clone();
+    }
 
-       float[] coeffs;
-       int COEFF_ROWS;
+    private float[] parseTransmissionWeights(int channel, String index) throws IOException {
+       final String fileName = getTransmissionWeightsFileName(channel, index);
+       final int COEFF_ROWS = getNumberOfSpectralIntervals(channel);
+       final float[] coeffs = new float[COEFF_ROWS]; // result
 
-       if (channel == 37) {
-            COEFF_ROWS = 45;
-            coeffs = new float[COEFF_ROWS]; // result
-            if (index.toUpperCase().equals("A")) {
-                inputStream = FlintOp.class.getResourceAsStream(A_WEIGHT_0370_FILE_NAME);
-            } else if (index.toUpperCase().equals("H")) {
-                inputStream = FlintOp.class.getResourceAsStream(H_WEIGHT_0370_FILE_NAME);
-            } else {
-                throw new OperatorException("Failed to read WV weights - index must be 'H' or 'A'.\n");
-            }
-       } else if (channel == 16) {
-            COEFF_ROWS = 54;
-            coeffs = new float[COEFF_ROWS]; // result
-            if (index.toUpperCase().equals("A")) {
-                inputStream = FlintOp.class.getResourceAsStream(A_WEIGHT_1600_FILE_NAME);
-            } else if (index.toUpperCase().equals("H")) {
-                inputStream = FlintOp.class.getResourceAsStream(H_WEIGHT_1600_FILE_NAME);
-            } else {
-                throw new OperatorException("Failed to read WV weights - index must be 'H' or 'A'.\n");
-            }
-       } else {
-           throw new OperatorException("Failed to read WV weights - channel must be '16' or '37'.\n");
+       final double[] binaryCoeffs = readBinary(fileName, COEFF_ROWS, 1);
+       if (binaryCoeffs != null) {
+           for (int j=0; j<COEFF_ROWS; j++) {
+               coeffs[j] = (float) binaryCoeffs[j];
+           }
+           return coeffs;
        }
 
+       final InputStream inputStream = FlintOp.class.getResourceAsStream(fileName);
        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
        StringTokenizer st;
        try {
@@ -195,9 +236,26 @@ public class FlintAuxData {
 
 
 
-    public AatsrSpectralResponse37Table createAatsrSpectralResponse37Table() throws IOException {
+    public synchronized AatsrSpectralResponse37Table createAatsrSpectralResponse37Table() throws IOException {
+        if (aatsrSpectralResponse37Table == null) {
+            aatsrSpectralResponse37Table = parseAatsrSpectralResponse37Table();
+        }
+        return aatsrSpectralResponse37Table;
+    }
+
+    private AatsrSpectralResponse37Table parseAatsrSpectralResponse37Table() throws IOException {
+        AatsrSpectralResponse37Table table = new AatsrSpectralResponse37Table();
+        final double[] binaryTable = readBinary(AATSR_SPECTRAL_RESPONSE37_FILE_NAME,
+                                                AATSR_SPECTRAL_RESPONSE37_TABLE_LENGTH, 2);
+        if (binaryTable != null) {
+            for (int i = 0; i < AATSR_SPECTRAL_RESPONSE37_TABLE_LENGTH; i++) {
+                table.setWavelength(i, binaryTable[2 * i]);
+                table.setResponse(i, binaryTable[2 * i + 1]);
+            }
+            return table;
+        }
+
         final InputStream inputStream = FlintOp.class.getResourceAsStream(AATSR_SPECTRAL_RESPONSE37_FILE_NAME);
-        AatsrSpectralResponse37Table aatsrSpectralResponse37Table = new AatsrSpectralResponse37Table();
 
         BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
         StringTokenizer st;
@@ -217,11 +275,11 @@ public class FlintAuxData {
 
                 if (st.hasMoreTokens()) {
                     // wavelengthh
-                    aatsrSpectralResponse37Table.setWavelength(i, Double.parseDouble(st.nextToken()));
+                    table.setWavelength(i, Double.parseDouble(st.nextToken()));
                 }
                 if (st.hasMoreTokens()) {
                     // response
-                    aatsrSpectralResponse37Table.setResponse(i, Double.parseDouble(st.nextToken()));
+                    table.setResponse(i, Double.parseDouble(st.nextToken()));
                 }
                 i++;
             }
@@ -232,12 +290,28 @@ public class FlintAuxData {
         } finally {
             inputStream.close();
         }
-        return aatsrSpectralResponse37Table;
+        return table;
+    }
+
+    public synchronized CahalanTable createCahalanTable() throws IOException {
+        if (cahalanTable == null) {
+            cahalanTable = parseCahalanTable();
+        }
+        return cahalanTable;
     }
 
-    public CahalanTable createCahalanTable() throws IOException {
+    private CahalanTable parseCahalanTable() throws IOException {
+        CahalanTable table = new CahalanTable();
+        final double[] binaryTable = readBinary(CAHALAN_FILE_NAME, CAHALAN_TABLE_LENGTH, 2);
+        if (binaryTable != null) {
+            for (int i = 0; i < CAHALAN_TABLE_LENGTH; i++) {
+                table.setX(i, binaryTable[2 * i]);
+                table.setY(i, binaryTable[2 * i + 1]);
+            }
+            return table;
+        }
+
         final InputStream inputStream = FlintOp.class.getResourceAsStream(CAHALAN_FILE_NAME);
-        CahalanTable cahalanTable = new CahalanTable();
 
         BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
         StringTokenizer st;
@@ -250,11 +324,11 @@ public class FlintAuxData {
 
                 if (st.hasMoreTokens()) {
                     // x (whatever that is)
-                    cahalanTable.setX(i, Double.parseDouble(st.nextToken()));
+                    table.setX(i, Double.parseDouble(st.nextToken()));
                 }
                 if (st.hasMoreTokens()) {
                     // y
-                    cahalanTable.setY(i, Double.parseDouble(st.nextToken()));
+                    table.setY(i, Double.parseDouble(st.nextToken()));
                 }
                 i++;
             }
@@ -265,12 +339,28 @@ public class FlintAuxData {
         } finally {
             inputStream.close();
         }
-        return cahalanTable;
+        return table;
     }
 
-    public Temp2RadianceTable createTemp2RadianceTable() throws IOException {
-        final InputStream inputStream = FlintOp.class.getResourceAsStream(TEMP2RAD_FILE_NAME);
+    public synchronized Temp2RadianceTable createTemp2RadianceTable() throws IOException {
+        if (temp2RadianceTable == null) {
+            temp2RadianceTable = parseTemp2RadianceTable();
+        }
+        return temp2RadianceTable;
+    }
+
+    private Temp2RadianceTable parseTemp2RadianceTable() throws IOException {
         Temp2RadianceTable temp2radTable = new Temp2RadianceTable();
+        final double[] binaryTable = readBinary(TEMP2RAD_FILE_NAME, TEMP2RAD_TABLE_LENGTH, 2);
+        if (binaryTable != null) {
+            for (int i = 0; i < TEMP2RAD_TABLE_LENGTH; i++) {
+                temp2radTable.setTemp(i, binaryTable[2 * i]);
+                temp2radTable.setRad(i, binaryTable[2 * i + 1]);
+            }
+            return temp2radTable;
+        }
+
+        final InputStream inputStream = FlintOp.class.getResourceAsStream(TEMP2RAD_FILE_NAME);
 
         BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
         StringTokenizer st;
@@ -302,6 +392,70 @@ public class FlintAuxData {
     }
 
 
+    static String getWaterVapourCoefficientsFileName(int channel, String index) {
+        if (channel == 37) {
+            if (index.toUpperCase().equals("A")) {
+                return A_COEFF_0370_FILE_NAME;
+            } else if (index.toUpperCase().equals("H")) {
+                return H_COEFF_0370_FILE_NAME;
+            }
+            throw new OperatorException("Failed to read WV coefficients - index must be 'H' or 'A'.\n");
+        } else if (channel == 16) {
+            if (index.toUpperCase().equals("A")) {
+                return A_COEFF_1600_FILE_NAME;
+            } else if (index.toUpperCase().equals("H")) {
+                return H_COEFF_1600_FILE_NAME;
+            }
+            throw new OperatorException("Failed to read WV coefficients - index must be 'H' or 'A'.\n");
+        }
+        throw new OperatorException("Failed to read WV coefficients - channel must be '16' or '37'.\n");
+    }
+
+    static String getTransmissionWeightsFileName(int channel, String index) {
+        if (channel == 37) {
+            if (index.toUpperCase().equals("A")) {
+                return A_WEIGHT_0370_FILE_NAME;
+            } else if (index.toUpperCase().equals("H")) {
+                return H_WEIGHT_0370_FILE_NAME;
+            }
+            throw new OperatorException("Failed to read WV weights - index must be 'H' or 'A'.\n");
+        } else if (channel == 16) {
+            if (index.toUpperCase().equals("A")) {
+                return A_WEIGHT_1600_FILE_NAME;
+            } else if (index.toUpperCase().equals("H")) {
+                return H_WEIGHT_1600_FILE_NAME;
+            }
+            throw new OperatorException("Failed to read WV weights - index must be 'H' or 'A'.\n");
+        }
+        throw new OperatorException("Failed to read WV weights - channel must be '16' or '37'.\n");
+    }
+
+    // number of spectral intervals of the k-term tables of the given channel
+    private static int getNumberOfSpectralIntervals(int channel) {
+        return channel == 37 ? 45 : 54;
+    }
+
+    //
+    // This method reads the binary version of the given resource.
+    // Returns null if there is no valid binary version, so that the text resource is parsed instead.
+    //
+    private double[] readBinary(String fileName, int rows, int columns) {
+        if (!useBinaryResources) {
+            return null;
+        }
+        final URL url = FlintOp.class.getResource(fileName + FlintBinaryAuxData.FILE_EXTENSION);
+        if (url == null) {
+            return null;
+        }
+        try {
+            return FlintBinaryAuxData.read(url, rows, columns);
+        } catch (IOException e) {
+            BeamLogManager.getSystemLogger().log(Level.WARNING, "Failed to read binary aux data - using " +
+                                                                fileName + " instead: " + e.getMessage());
+            return null;
+        }
+    }
+
     public int getNearestCahalanTableIndex(double wavelength, double[] tableWavelengths) {
        return GlintHelpers.getNearestValueIndexInDescendingDoubleArray(wavelength, tableWavelengths);
     }
@@ -329,66 +483,66 @@ public class FlintAuxData {
     }
 
     public class AatsrSpectralResponse37Table {
-        private double[] wavelength = new double[AATSR_SPECTRAL_RESPONSE37_TABLE_LENGTH];
-        private double[] response = new double[AATSR_SPECTRAL_RESPONSE37_TABLE_LENGTH];
+        private final double[] wavelength = new double[AATSR_SPECTRAL_RESPONSE37_TABLE_LENGTH];
+        private final double[] response = new double[AATSR_SPECTRAL_RESPONSE37_TABLE_LENGTH];
 
         public double[] getWavelength() {
-            return wavelength;
+            return wavelength.clone();
         }
 
-        public void setWavelength(int index, double value) {
+        private void setWavelength(int index, double value) {
             wavelength[index] = value;
         }
 
         public double[] getResponse() {
-            return response;
+            return response.clone();
         }
 
-        public void setResponse(int index, double value) {
+        private void setResponse(int index, double value) {
             response[index] = value;
         }
     }
 
     public class CahalanTable {
         // todo: clarify the meaning of the columns and give proper names
-        private double[] x = new double[CAHALAN_TABLE_LENGTH];
-        private double[] y = new double[CAHALAN_TABLE_LENGTH];
+        private final double[] x = new double[CAHALAN_TABLE_LENGTH];
+        private final double[] y = new double[CAHALAN_TABLE_LENGTH];
 
         public double[] getX() {
-            return x;
+            return x.clone();
         }
 
-        public void setX(int index, double value) {
+        private void setX(int index, double value) {
             x[index] = value;
         }
 
         public double[] getY() {
-            return y;
+            return y.clone();
         }
 
-        public void setY(int index, double value) {
+        private void setY(int index, double value) {
             y[index] = value;
         }
     }
 
     public class Temp2RadianceTable {
         // todo: clarify the meaning of the columns and give proper names
-        private double[] temp = new double[TEMP2RAD_TABLE_LENGTH];
-        private double[] rad = new double[TEMP2RAD_TABLE_LENGTH];
+        private final double[] temp = new double[TEMP2RAD_TABLE_LENGTH];
+        private final double[] rad = new double[TEMP2RAD_TABLE_LENGTH];
 
         public double[] getTemp() {
-            return temp;
+            return temp.clone();
         }
 
-        public void setTemp(int index, double value) {
+        private void setTemp(int index, double value) {
             temp[index] = value;
         }
 
         public double[] getRad() {
-            return rad;
+            return rad.clone();
         }
 
-        public void setRad(int index, double value) {
+        private void setRad(int index, double value) {
             rad[index] = value;
         }
     }
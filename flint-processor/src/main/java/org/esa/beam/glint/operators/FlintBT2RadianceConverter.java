@@ -0,0 +1,108 @@
+package org.esa.beam.glint.operators;
+
+import org.esa.beam.glint.util.GlintHelpers;
+
+/**
+ * This class provides the conversion of AATSR 3.7um brightness temperatures to radiances
+ * by interpolation in the temperature to radiance table (breadboard step 1.c).
+ * <p/>
+ * The table index is the one of {@link GlintHelpers#getNearestValueIndexInAscendingDoubleArray}, but is not found
+ * by a linear scan: for (nearly) regularly spaced tables it is computed arithmetically and then corrected
+ * against the actual table values, otherwise it is found by binary search. In both cases the result is identical
+ * to the linear scan. Instances are immutable and can be shared between threads.
+ */
+class FlintBT2RadianceConverter {
+
+    // the tabulated temperatures are rounded, so allow some deviation from the regular grid
+    private static final double UNIFORM_SPACING_TOLERANCE = 0.01;
+
+    private final double[] temps;
+    private final double[] radiances;
+    private final boolean uniform;
+    private final double firstTemp;
+    private final double tempStep;
+
+    FlintBT2RadianceConverter(double[] temps, double[] radiances) {
+        if (temps.length < 2 || temps.length != radiances.length) {
+            throw new IllegalArgumentException("Temperature and radiance table must have the same length >= 2.");
+        }
+        this.temps = temps;
+        this.radiances = radiances;
+        firstTemp = temps[0];
+        tempStep = (temps[temps.length - 1] - temps[0]) / (temps.length - 1);
+        uniform = isUniform(temps, tempStep);
+    }
+
+    boolean isUniform() {
+        return uniform;
+    }
+
+    float convertBT2Radiance(float brightnessTemp) {
+        float radiance = 0.0f;
+
+        final int index = getNearestIndex(brightnessTemp);
+        if (index >= 0 && index < radiances.length - 1) {
+            radiance = (float) GlintHelpers.linearInterpol(brightnessTemp, temps[index], temps[index + 1],
+                                                           radiances[index], radiances[index + 1]);
+        }
+        return radiance;
+    }
+
+    //
+    // This method returns the same index as GlintHelpers.getNearestValueIndexInAscendingDoubleArray(x, temps)
+    //
+    int getNearestIndex(double x) {
+        final int n = temps.length;
+        // also catches NaN
+        if (!(x < temps[n - 1])) {
+            return -1;
+        }
+        // upper is the first index >= 1 with x < temps[upper]
+        final int upper = uniform ? findUpperUniform(x) : findUpperBinary(x);
+        if (temps[upper] - x > x - temps[upper - 1]) {
+            return upper - 1;
+        } else {
+            return upper;
+        }
+    }
+
+    private int findUpperUniform(double x) {
+        final int n = temps.length;
+        final double pos = (x - firstTemp) / tempStep;
+        int upper = pos < 0.0 ? 1 : (int) Math.min(pos + 1.0, n - 1);
+        upper = Math.max(upper, 1);
+        while (upper > 1 && x < temps[upper - 1]) {
+            upper--;
+        }
+        while (x >= temps[upper]) {
+            upper++;
+        }
+        return upper;
+    }
+
+    private int findUpperBinary(double x) {
+        int low = 1;
+        int high = temps.length - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (x < temps[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isUniform(double[] temps, double step) {
+        if (!(step > 0.0)) {
+            return false;
+        }
+        for (int i = 0; i < temps.length; i++) {
+            if (Math.abs(temps[i] - (temps[0] + i * step)) > UNIFORM_SPACING_TOLERANCE * step) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
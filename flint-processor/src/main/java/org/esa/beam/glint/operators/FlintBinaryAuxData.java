@@ -0,0 +1,231 @@
+package org.esa.beam.glint.operators;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * This class provides the binary format of the Flint auxiliary data, and the converter which creates the
+ * binary files from the text resources at build time (see flint-processor pom.xml).
+ * <p/>
+ * A binary file '&lt;resource&gt;.bin' holds one table of float64 values in little-endian byte order:
+ * <pre>
+ *   int32   magic number 'FLNT'
+ *   int32   format version
+ *   int32   number of rows
+ *   int32   number of columns
+ *   int64   CRC32 checksum of the values
+ *   float64 values[rows * columns], row-major order
+ * </pre>
+ * Files on the local file system are memory-mapped, resources within a jar are read into a direct buffer.
+ * The text resources are still shipped and used if no valid binary file is available.
+ */
+public final class FlintBinaryAuxData {
+
+    public static final String FILE_EXTENSION = ".bin";
+
+    static final int MAGIC = 0x544E4C46;     // 'F', 'L', 'N', 'T' in little-endian byte order
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    private static final String[] COEFFICIENT_INDICES = new String[]{"A", "H"};
+    private static final int[] CHANNELS = new int[]{37, 16};
+
+    private FlintBinaryAuxData() {
+    }
+
+    /**
+     * Converts the Flint text resources into binary files.
+     *
+     * @param args - args[0]: the output directory
+     * @throws IOException if a resource cannot be read or a binary file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: FlintBinaryAuxData <output directory>");
+        }
+        final File outputDir = new File(args[0]);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create output directory " + outputDir);
+        }
+        convert(outputDir);
+    }
+
+    //
+    // This method writes the binary versions of all Flint text resources read by FlintAuxData
+    // into the given directory.
+    //
+    static void convert(File outputDir) throws IOException {
+        // always parse the text resources here
+        final FlintAuxData auxData = new FlintAuxData(false);
+
+        for (int channel : CHANNELS) {
+            for (String index : COEFFICIENT_INDICES) {
+                final float[][] coeffs = auxData.readWaterVapourCoefficients(channel, index);
+                write(toDouble(coeffs), coeffs.length, coeffs[0].length,
+                      new File(outputDir, FlintAuxData.getWaterVapourCoefficientsFileName(channel, index) +
+                                          FILE_EXTENSION));
+                final float[] weights = auxData.readTransmissionWeights(channel, index);
+                write(toDouble(new float[][]{weights}), weights.length, 1,
+                      new File(outputDir, FlintAuxData.getTransmissionWeightsFileName(channel, index) +
+                                          FILE_EXTENSION));
+            }
+        }
+
+        final FlintAuxData.AatsrSpectralResponse37Table spectralResponseTable =
+                auxData.createAatsrSpectralResponse37Table();
+        write(new double[][]{spectralResponseTable.getWavelength(), spectralResponseTable.getResponse()},
+              new File(outputDir, FlintAuxData.AATSR_SPECTRAL_RESPONSE37_FILE_NAME + FILE_EXTENSION));
+        final FlintAuxData.CahalanTable cahalanTable = auxData.createCahalanTable();
+        write(new double[][]{cahalanTable.getX(), cahalanTable.getY()},
+              new File(outputDir, FlintAuxData.CAHALAN_FILE_NAME + FILE_EXTENSION));
+        final FlintAuxData.Temp2RadianceTable temp2RadianceTable = auxData.createTemp2RadianceTable();
+        write(new double[][]{temp2RadianceTable.getTemp(), temp2RadianceTable.getRad()},
+              new File(outputDir, FlintAuxData.TEMP2RAD_FILE_NAME + FILE_EXTENSION));
+
+        for (String netFileName : new String[]{FlintAuxData.NEURAL_NET_WV_OCEAN_MERIS_FILE_NAME,
+                FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME}) {
+            final double[] net = auxData.loadCompiledNeuralNet(netFileName).toArray();
+            write(net, net.length, 1, new File(outputDir, netFileName + FILE_EXTENSION));
+        }
+    }
+
+    //
+    // This method reads a binary table and checks its header and checksum.
+    // rows < 0 or columns < 0 means that the respective dimension is not checked.
+    // The values are returned in row-major order.
+    //
+    static double[] read(URL url, int rows, int columns) throws IOException {
+        final ByteBuffer buffer = open(url);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException("Invalid binary aux data file " + url + " - file too short.");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Invalid binary aux data file " + url + " - wrong magic number.");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Invalid binary aux data file " + url + " - unsupported version " + version + ".");
+        }
+        final int fileRows = buffer.getInt();
+        final int fileColumns = buffer.getInt();
+        final long checksum = buffer.getLong();
+        if ((rows >= 0 && fileRows != rows) || (columns >= 0 && fileColumns != columns)) {
+            throw new IOException("Invalid binary aux data file " + url + " - expected " + rows + " x " + columns +
+                                  " values, found " + fileRows + " x " + fileColumns + ".");
+        }
+        final long numValues = (long) fileRows * fileColumns;
+        if (fileRows < 0 || fileColumns < 0 || buffer.remaining() != numValues * 8) {
+            throw new IOException("Invalid binary aux data file " + url + " - wrong file size.");
+        }
+        if (computeChecksum(buffer.duplicate()) != checksum) {
+            throw new IOException("Invalid binary aux data file " + url + " - checksum mismatch.");
+        }
+        final double[] values = new double[(int) numValues];
+        buffer.asDoubleBuffer().get(values);
+        return values;
+    }
+
+    //
+    // columns[column][row] are written as a table with columns.length columns
+    //
+    private static void write(double[][] columns, File file) throws IOException {
+        final int rows = columns[0].length;
+        final double[] values = new double[rows * columns.length];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns.length; j++) {
+                values[i * columns.length + j] = columns[j][i];
+            }
+        }
+        write(values, rows, columns.length, file);
+    }
+
+    static void write(double[] values, int rows, int columns, File file) throws IOException {
+        final ByteBuffer payload = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        payload.asDoubleBuffer().put(values);
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(rows);
+        header.putInt(columns);
+        header.putLong(computeChecksum(payload.duplicate()));
+
+        final OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(header.array());
+            outputStream.write(payload.array());
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    // row-major order
+    private static double[] toDouble(float[][] values) {
+        final int columns = values[0].length;
+        final double[] doubleValues = new double[values.length * columns];
+        for (int i = 0; i < values.length; i++) {
+            for (int j = 0; j < columns; j++) {
+                doubleValues[i * columns + j] = values[i][j];
+            }
+        }
+        return doubleValues;
+    }
+
+    private static ByteBuffer open(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            final File file;
+            try {
+                file = new File(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid URL " + url, e);
+            }
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = randomAccessFile.getChannel();
+                // the mapping remains valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        final InputStream inputStream = url.openStream();
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] chunk = new byte[8192];
+            int n;
+            while ((n = inputStream.read(chunk)) != -1) {
+                bytes.write(chunk, 0, n);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size());
+            buffer.put(bytes.toByteArray());
+            buffer.flip();
+            return buffer;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static long computeChecksum(ByteBuffer buffer) {
+        final CRC32 crc32 = new CRC32();
+        final byte[] chunk = new byte[8192];
+        while (buffer.hasRemaining()) {
+            final int n = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, n);
+            crc32.update(chunk, 0, n);
+        }
+        return crc32.getValue();
+    }
+}
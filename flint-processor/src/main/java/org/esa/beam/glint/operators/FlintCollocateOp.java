@@ -0,0 +1,245 @@
+package org.esa.beam.glint.operators;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.FlagCoding;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.RasterDataNode;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.framework.dataop.barithm.BandArithmetic;
+import org.esa.beam.framework.gpf.Operator;
+import org.esa.beam.framework.gpf.OperatorException;
+import org.esa.beam.framework.gpf.OperatorSpi;
+import org.esa.beam.framework.gpf.Tile;
+import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
+import org.esa.beam.framework.gpf.annotations.Parameter;
+import org.esa.beam.framework.gpf.annotations.SourceProduct;
+import org.esa.beam.framework.gpf.annotations.TargetProduct;
+import org.esa.beam.util.ProductUtils;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operator collocating an AATSR product onto a MERIS product with a precomputed pixel mapping
+ * (see {@link FlintPixelMapping}), as input for the FLINT processor.
+ * <p/>
+ * The target product has the layout of the collocation product of CollocateOp with default parameters:
+ * MERIS bands with suffix '_M' (not resampled), MERIS tie-point grids, geo-coding and metadata,
+ * AATSR bands and tie-point grids with suffix '_S' (nearest neighbour). The bands keep the data type (float32 for
+ * tie-point grids), scaling, spectral properties, no-data value and valid-pixel expression of their source raster,
+ * expressions refer to the renamed rasters. The no-data value of the AATSR bands is always used, it is set for the
+ * pixels outside of the AATSR swath.
+ */
+@OperatorMetadata(alias = "glint.FlintCollocate",
+                  version = "1.2.1",
+                  description = "Collocates AATSR onto MERIS with a precomputed pixel mapping.")
+public class FlintCollocateOp extends Operator {
+
+    @SourceProduct(alias = "masterProduct",
+                   description = "The MERIS L1b source product.")
+    private Product merisProduct;
+
+    @SourceProduct(alias = "slaveProduct",
+                   description = "The AATSR L1b source product.")
+    private Product aatsrProduct;
+
+    @TargetProduct(description = "The target product.")
+    private Product targetProduct;
+
+    @Parameter(label = "Pixel mapping file",
+               description = "If given, the pixel mapping is read from this file if it exists, " +
+                             "otherwise it is computed and written to this file.")
+    File pixelMappingFile;
+
+    private FlintPixelMapping pixelMapping;
+    // the AATSR source raster of each collocated target band
+    private Map<Band, RasterDataNode> aatsrRasters;
+    // the AATSR source rectangle of each target rectangle (null outside of the swath), shared by all bands
+    private final Map<Rectangle, Rectangle> sourceRectangles = new HashMap<Rectangle, Rectangle>();
+
+    public void initialize() throws OperatorException {
+        pixelMapping = createPixelMapping();
+
+        final int sceneWidth = merisProduct.getSceneRasterWidth();
+        final int sceneHeight = merisProduct.getSceneRasterHeight();
+        targetProduct = new Product(merisProduct.getName(), "COLLOCATED", sceneWidth, sceneHeight);
+        targetProduct.setStartTime(merisProduct.getStartTime());
+        targetProduct.setEndTime(merisProduct.getEndTime());
+        ProductUtils.copyTiePointGrids(merisProduct, targetProduct);
+        ProductUtils.copyGeoCoding(merisProduct, targetProduct);
+        ProductUtils.copyMetadata(merisProduct, targetProduct);
+
+        final String[] merisBandNames = merisProduct.getBandNames();
+        for (String merisBandName : merisBandNames) {
+            final Band band = ProductUtils.copyBand(merisBandName, merisProduct,
+                                                    merisBandName + GlintMasterOp.MASTER_SUFFIX, targetProduct, true);
+            copyFlagCoding(merisProduct.getBand(merisBandName), band);
+            renameExpressionReferences(band, merisBandNames, GlintMasterOp.MASTER_SUFFIX);
+        }
+
+        final List<RasterDataNode> aatsrSourceRasters = new ArrayList<RasterDataNode>();
+        aatsrSourceRasters.addAll(Arrays.asList(aatsrProduct.getBands()));
+        aatsrSourceRasters.addAll(Arrays.asList(aatsrProduct.getTiePointGrids()));
+        final String[] aatsrRasterNames = new String[aatsrSourceRasters.size()];
+        for (int i = 0; i < aatsrRasterNames.length; i++) {
+            aatsrRasterNames[i] = aatsrSourceRasters.get(i).getName();
+        }
+        aatsrRasters = new HashMap<Band, RasterDataNode>();
+        for (RasterDataNode aatsrRaster : aatsrSourceRasters) {
+            final Band band = addCollocatedBand(aatsrRaster);
+            renameExpressionReferences(band, aatsrRasterNames, GlintMasterOp.SLAVE_SUFFIX);
+            aatsrRasters.put(band, aatsrRaster);
+        }
+    }
+
+    @Override
+    public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
+        final RasterDataNode aatsrRaster = aatsrRasters.get(targetBand);
+        final Rectangle rectangle = targetTile.getRectangle();
+        // unscaled integer samples (e.g. flags) are copied exactly, all others as geophysical values
+        final boolean isIntegerBand = !targetBand.isFloatingPointType() && !targetBand.isScalingApplied();
+        final Rectangle sourceRectangle = getSourceRectangle(rectangle);
+        if (sourceRectangle == null) {
+            // outside of the AATSR swath: all target samples get the no-data value
+            if (isIntegerBand) {
+                final int[] samples = new int[rectangle.width * rectangle.height];
+                Arrays.fill(samples, (int) targetBand.getNoDataValue());
+                targetTile.setSamples(samples);
+            } else {
+                final float[] samples = new float[rectangle.width * rectangle.height];
+                Arrays.fill(samples, (float) targetBand.getGeophysicalNoDataValue());
+                targetTile.setSamples(samples);
+            }
+            return;
+        }
+        final Tile sourceTile = getSourceTile(aatsrRaster, sourceRectangle);
+        if (isIntegerBand) {
+            final int[] samples = new int[rectangle.width * rectangle.height];
+            pixelMapping.gather(rectangle, sourceTile.getSamplesInt(), sourceRectangle,
+                                (int) targetBand.getNoDataValue(), samples);
+            targetTile.setSamples(samples);
+        } else {
+            final float[] samples = new float[rectangle.width * rectangle.height];
+            pixelMapping.gather(rectangle, sourceTile.getSamplesFloat(), sourceRectangle,
+                                (float) targetBand.getGeophysicalNoDataValue(), samples);
+            targetTile.setSamples(samples);
+        }
+    }
+
+    //
+    // This method provides the AATSR source rectangle of a target rectangle (see FlintPixelMapping.getSourceRectangle).
+    // The mapping is scanned once per target rectangle instead of once per band. Two threads computing bands of the
+    // same uncached rectangle may both scan it, with identical results.
+    //
+    private Rectangle getSourceRectangle(Rectangle rectangle) {
+        synchronized (sourceRectangles) {
+            if (sourceRectangles.containsKey(rectangle)) {
+                return sourceRectangles.get(rectangle);
+            }
+        }
+        final Rectangle sourceRectangle = pixelMapping.getSourceRectangle(rectangle);
+        synchronized (sourceRectangles) {
+            sourceRectangles.put(new Rectangle(rectangle), sourceRectangle);
+        }
+        return sourceRectangle;
+    }
+
+    //
+    // This method reads the pixel mapping from pixelMappingFile if it exists, otherwise it computes it
+    // from the geo-codings (and writes it to pixelMappingFile, if given).
+    //
+    private FlintPixelMapping createPixelMapping() {
+        final String merisName = merisProduct.getName();
+        final String aatsrName = aatsrProduct.getName();
+        final int merisWidth = merisProduct.getSceneRasterWidth();
+        final int merisHeight = merisProduct.getSceneRasterHeight();
+        final int aatsrWidth = aatsrProduct.getSceneRasterWidth();
+        final int aatsrHeight = aatsrProduct.getSceneRasterHeight();
+        if (pixelMappingFile != null && pixelMappingFile.exists()) {
+            final FlintPixelMapping mapping;
+            try {
+                mapping = FlintPixelMapping.open(pixelMappingFile);
+            } catch (IOException e) {
+                throw new OperatorException("Failed to read pixel mapping " + pixelMappingFile + ":\n" +
+                                            e.getMessage(), e);
+            }
+            if (!mapping.isMappingOf(merisName, aatsrName, merisWidth, merisHeight, aatsrWidth, aatsrHeight)) {
+                throw new OperatorException("Pixel mapping " + pixelMappingFile +
+                                            " was created for a different MERIS/AATSR product pair.");
+            }
+            return mapping;
+        }
+
+        if (merisProduct.getGeoCoding() == null || aatsrProduct.getGeoCoding() == null) {
+            throw new OperatorException("Source products must be geo-coded.");
+        }
+        final FlintPixelMapping mapping =
+                FlintPixelMapping.create(merisName, aatsrName, merisWidth, merisHeight, aatsrWidth, aatsrHeight,
+                                         FlintPixelMapping.createLocator(merisProduct.getGeoCoding(),
+                                                                         aatsrProduct.getGeoCoding()));
+        if (pixelMappingFile != null) {
+            try {
+                mapping.write(pixelMappingFile);
+            } catch (IOException e) {
+                throw new OperatorException("Failed to write pixel mapping " + pixelMappingFile + ":\n" +
+                                            e.getMessage(), e);
+            }
+        }
+        return mapping;
+    }
+
+    //
+    // This method adds the target band of an AATSR band or tie-point grid. Tie-point grids are collocated as float32.
+    // The source no-data value (0 unless defined) is used for the pixels outside of the AATSR swath.
+    //
+    private Band addCollocatedBand(RasterDataNode aatsrRaster) {
+        final int dataType = aatsrRaster instanceof TiePointGrid ? ProductData.TYPE_FLOAT32 : aatsrRaster.getDataType();
+        final Band band = new Band(aatsrRaster.getName() + GlintMasterOp.SLAVE_SUFFIX, dataType,
+                                   targetProduct.getSceneRasterWidth(), targetProduct.getSceneRasterHeight());
+        ProductUtils.copyRasterDataNodeProperties(aatsrRaster, band);
+        band.setNoDataValueUsed(true);
+        copyFlagCoding(aatsrRaster, band);
+        targetProduct.addBand(band);
+        return band;
+    }
+
+    private void copyFlagCoding(RasterDataNode sourceRaster, Band band) {
+        final FlagCoding flagCoding = sourceRaster.getFlagCoding();
+        if (flagCoding != null) {
+            if (targetProduct.getFlagCodingGroup().get(flagCoding.getName()) == null) {
+                ProductUtils.copyFlagCoding(flagCoding, targetProduct);
+            }
+            band.setSampleCoding(targetProduct.getFlagCodingGroup().get(flagCoding.getName()));
+        }
+    }
+
+    //
+    // This method lets the valid-pixel expression of a target band refer to the renamed rasters
+    // of its source product (e.g. 'l1_flags.INVALID' becomes 'l1_flags_M.INVALID').
+    //
+    private static void renameExpressionReferences(Band band, String[] sourceRasterNames, String suffix) {
+        for (String sourceRasterName : sourceRasterNames) {
+            band.updateExpression(BandArithmetic.createExternalName(sourceRasterName),
+                                  BandArithmetic.createExternalName(sourceRasterName + suffix));
+        }
+    }
+
+    /**
+     * The Service Provider Interface (SPI) for the operator.
+     * It provides operator meta-data and is a factory for new operator instances.
+     */
+    public static class Spi extends OperatorSpi {
+
+        public Spi() {
+            super(FlintCollocateOp.class);
+        }
+    }
+}
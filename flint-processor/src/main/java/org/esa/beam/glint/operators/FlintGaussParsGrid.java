@@ -0,0 +1,81 @@
+package org.esa.beam.glint.operators;
+
+/**
+ * This class holds the parameters of the 2D Gauss function (FUB windspeed neural net output)
+ * precomputed on a (windspeed, cos(sun zenith)) grid for both refractive indices used in the
+ * geometrical conversion. The windspeed axis is identical to the windspeeds of the normalized
+ * radiance LUT (breadboard step 2.a.1), so only the cos(sun zenith) axis is interpolated.
+ * The grid values are stored in single precision to keep the memory footprint small (~10MB for the default
+ * resolution). The grid is immutable after construction and can be shared between threads.
+ */
+class FlintGaussParsGrid {
+
+    static final int DEFAULT_NUMBER_OF_COS_SUN_ZENITHS = 2001;
+
+    private static final int NUMBER_OF_GAUSS_PARS = 4;
+
+    private final int numberOfCosSunZeniths;
+    private final double cosSunZenithStep;
+
+    // layout: [(windspeedIndex * numberOfCosSunZeniths + cosSunZenithIndex) * NUMBER_OF_GAUSS_PARS + k]
+    private final float[] gaussPars037;
+    private final float[] gaussPars088;
+
+    FlintGaussParsGrid(FlintGeometricalConversion conversion, int numberOfCosSunZeniths) {
+        if (numberOfCosSunZeniths < 2) {
+            throw new IllegalArgumentException("numberOfCosSunZeniths must be at least 2.");
+        }
+        this.numberOfCosSunZeniths = numberOfCosSunZeniths;
+        cosSunZenithStep = 1.0 / (numberOfCosSunZeniths - 1);
+        gaussPars037 = createGrid(conversion, FlintGeometricalConversion.refractiveIndexReal037);
+        gaussPars088 = createGrid(conversion, FlintGeometricalConversion.refractiveIndexReal088);
+    }
+
+    //
+    // This method provides the Gauss parameters for the given LUT windspeed, refractive index and cos(sun zenith)
+    // by linear interpolation in cos(sun zenith).
+    //
+    void getGaussPars(int windspeedIndex, double refractiveIndex, double cosSunZenith, double[] gaussPars) {
+        final float[] grid = getGrid(refractiveIndex);
+
+        final double pos = Math.min(Math.max(cosSunZenith, 0.0), 1.0) / cosSunZenithStep;
+        final int lowerIndex = Math.min((int) pos, numberOfCosSunZeniths - 2);
+        final double weight = pos - lowerIndex;
+
+        final int lower = (windspeedIndex * numberOfCosSunZeniths + lowerIndex) * NUMBER_OF_GAUSS_PARS;
+        final int upper = lower + NUMBER_OF_GAUSS_PARS;
+        for (int k = 0; k < NUMBER_OF_GAUSS_PARS; k++) {
+            gaussPars[k] = grid[lower + k] + weight * (grid[upper + k] - grid[lower + k]);
+        }
+    }
+
+    private float[] getGrid(double refractiveIndex) {
+        if (refractiveIndex == FlintGeometricalConversion.refractiveIndexReal037) {
+            return gaussPars037;
+        } else if (refractiveIndex == FlintGeometricalConversion.refractiveIndexReal088) {
+            return gaussPars088;
+        }
+        throw new IllegalArgumentException("No Gauss parameter grid for refractive index " + refractiveIndex);
+    }
+
+    private float[] createGrid(FlintGeometricalConversion conversion, double refractiveIndex) {
+        final int numberOfWindspeeds = FlintGeometricalConversion.NUMBER_OF_LUT_WINDSPEEDS;
+        final float[] grid = new float[numberOfWindspeeds * numberOfCosSunZeniths * NUMBER_OF_GAUSS_PARS];
+
+        final double[] nnIn = new double[3];
+        final double[] gaussPars = new double[NUMBER_OF_GAUSS_PARS];
+        for (int i = 0; i < numberOfWindspeeds; i++) {
+            for (int j = 0; j < numberOfCosSunZeniths; j++) {
+                nnIn[0] = FlintGeometricalConversion.getLutWindspeed(i);
+                nnIn[1] = refractiveIndex;
+                nnIn[2] = j * cosSunZenithStep;
+                conversion.applyNeuralNetWindspeed(nnIn, gaussPars);
+                final int offset = (i * numberOfCosSunZeniths + j) * NUMBER_OF_GAUSS_PARS;
+                for (int k = 0; k < NUMBER_OF_GAUSS_PARS; k++) {
+                    grid[offset + k] = (float) gaussPars[k];
+                }
+            }
+        }
+        return grid;
+    }
+}
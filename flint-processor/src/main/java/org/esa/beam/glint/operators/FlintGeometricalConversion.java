@@ -1,7 +1,5 @@
 package org.esa.beam.glint.operators;
 
-import com.bc.jnn.JnnException;
-import com.bc.jnn.JnnNet;
 import org.esa.beam.glint.util.GlintHelpers;
 
 import java.io.IOException;
@@ -14,25 +12,56 @@ import java.io.IOException;
  * @author Olaf Danne
  * @version $Revision: 5451 $ $Date: 2009-06-05 18:36:49 +0200 (Fr, 05 Jun 2009) $
  */
-public class FlintGeometricalConversion implements Cloneable {
+public class FlintGeometricalConversion {
 
     public static final double refractiveIndexReal037 = 1.37;
     public static final double refractiveIndexReal088 = 1.33;
 
-    private JnnNet neuralNetWindspeed;
+    static final int NUMBER_OF_LUT_WINDSPEEDS = 151;
 
-    @Override
-    protected FlintGeometricalConversion clone()  {
-        FlintGeometricalConversion conversion = new FlintGeometricalConversion();
-        conversion.neuralNetWindspeed = neuralNetWindspeed.clone();
-        return conversion;
-    }
+    private static final double[] LUT_WINDSPEEDS = createLutWindspeeds();
+
+    // the compiled net and the grid are immutable once loaded, so one instance of this class
+    // can be shared by all tile computations
+    private FlintNeuralNet neuralNetWindspeed;
+    private FlintGaussParsGrid gaussParsGrid;
+    // > 0: coarse LUT index step of the adaptive windspeed search, 0: exhaustive LUT search
+    private int adaptiveSearchStep;
+
+    // per-thread buffers of the geometrical conversion, so that no heap allocation is needed per pixel
+    private final ThreadLocal<Workspace> workspace = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
 
     //
     // This method loads required Flint Auxdata
     //
-    protected void loadFlintAuxData() throws IOException, JnnException {
-        neuralNetWindspeed = FlintAuxData.getInstance().loadNeuralNet(FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME);
+    protected void loadFlintAuxData() throws IOException {
+        neuralNetWindspeed = FlintAuxData.getInstance().loadCompiledNeuralNet(FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME);
+    }
+
+    //
+    // This method precomputes the windspeed neural net on a (windspeed, cos(sun zenith)) grid.
+    // Afterwards, the Gauss parameters are interpolated from this grid instead of calling the neural net per pixel.
+    //
+    protected void createGaussParsGrid(int numberOfCosSunZeniths) {
+        gaussParsGrid = new FlintGaussParsGrid(this, numberOfCosSunZeniths);
+    }
+
+    //
+    // This method selects the adaptive windspeed search instead of the exhaustive 151-point LUT:
+    // the radiance LUT is sampled at every coarseStep-th windspeed and only refined where needed
+    // (around the maximum and around the radiance match on each monotone branch).
+    // coarseStep = 0 selects the exhaustive search again.
+    //
+    protected void setAdaptiveWindspeedSearch(int coarseStep) {
+        if (coarseStep < 0 || coarseStep >= NUMBER_OF_LUT_WINDSPEEDS) {
+            throw new IllegalArgumentException("Invalid coarse step " + coarseStep + " for adaptive windspeed search.");
+        }
+        adaptiveSearchStep = coarseStep;
     }
 
     protected float applyGauss2DRecall(float merisViewZenith, float aatsrAzimuthDifference, double[] gaussPars) {
@@ -52,7 +81,15 @@ public class FlintGeometricalConversion implements Cloneable {
     protected static float[] getAmbiguityReducedRadiance(float[][] merisNormalizedRadianceResult,
                                                   float zonalWind, float meridionalWind) {
         float[] result = new float[]{-1.0f, -1.0f};
+        getAmbiguityReducedRadiance(merisNormalizedRadianceResult, zonalWind, meridionalWind, result);
+        return result;
+    }
 
+    //
+    // As above, the datapair is written into the given result array
+    //
+    protected static void getAmbiguityReducedRadiance(float[][] merisNormalizedRadianceResult,
+                                                      float zonalWind, float meridionalWind, float[] result) {
         double windSpeed = Math.sqrt(zonalWind*zonalWind + meridionalWind*meridionalWind);
 
         final double wsDiff1 = Math.abs(merisNormalizedRadianceResult[0][0] - windSpeed);
@@ -65,7 +102,6 @@ public class FlintGeometricalConversion implements Cloneable {
             result[0] = merisNormalizedRadianceResult[0][0];
             result[1] = merisNormalizedRadianceResult[0][1];
         }
-        return result;
     }
 
     //
@@ -98,100 +134,432 @@ public class FlintGeometricalConversion implements Cloneable {
     protected float[][] convertAatsrRad37ToMerisRad(float aatsrRad, float merisSunZenith, float merisViewZenith,
                                                 float aatsrAzimuthDifference, float merisAzimuthDifference) {
 
-        float[][] merisNormalizedRadianceResult = new float[][]{{-1.0f, -1.0f}, {-1.0f, -1.0f}};
+        float[][] merisNormalizedRadianceResult = new float[2][2];
+        convertAatsrRad37ToMerisRad(aatsrRad, merisSunZenith, merisViewZenith, aatsrAzimuthDifference,
+                                    merisAzimuthDifference, merisNormalizedRadianceResult);
+        return merisNormalizedRadianceResult;
+    }
 
-        final double[][] normalizedRadianceLUT = createNormalizedRadianceLUT(merisSunZenith, merisViewZenith,
-                aatsrAzimuthDifference);
+    //
+    // As above, the 2x2 result is written into the given array. No heap allocation is done,
+    // the geometry terms of the pixel are computed once and reused for all LUT windspeeds.
+    //
+    protected void convertAatsrRad37ToMerisRad(float aatsrRad, float merisSunZenith, float merisViewZenith,
+                                               float aatsrAzimuthDifference, float merisAzimuthDifference,
+                                               float[][] merisNormalizedRadianceResult) {
+        convertAatsrRad37ToMerisRad(aatsrRad, merisSunZenith, merisViewZenith, aatsrAzimuthDifference,
+                                    merisAzimuthDifference, adaptiveSearchStep, merisNormalizedRadianceResult);
+    }
+
+    //
+    // searchStep: see setAdaptiveWindspeedSearch
+    // Returns true in the 'ambiguous' case (maximum of the radiance LUT inside the windspeed range).
+    //
+    private boolean convertAatsrRad37ToMerisRad(float aatsrRad, float merisSunZenith, float merisViewZenith,
+                                                float aatsrAzimuthDifference, float merisAzimuthDifference,
+                                                int searchStep, float[][] merisNormalizedRadianceResult) {
+        final Workspace ws = workspace.get();
+        merisNormalizedRadianceResult[0][0] = -1.0f;
+        merisNormalizedRadianceResult[0][1] = -1.0f;
+        merisNormalizedRadianceResult[1][0] = -1.0f;
+        merisNormalizedRadianceResult[1][1] = -1.0f;
+
+        final double cosSunZenith = Math.cos(Math.toRadians(merisSunZenith));  // angle in degree!
+        final double cosViewElevation = Math.cos(Math.toRadians(90.0 - merisViewZenith));
+        final double aatsrSinAzimuth = Math.sin(Math.toRadians(aatsrAzimuthDifference));
+        final double aatsrCosAzimuth = Math.cos(Math.toRadians(aatsrAzimuthDifference));
+
+        if (searchStep > 0) {
+            return convertAdaptive(aatsrRad, cosSunZenith, cosViewElevation, aatsrSinAzimuth, aatsrCosAzimuth,
+                                   merisAzimuthDifference, searchStep, ws, merisNormalizedRadianceResult);
+        }
 
-        final double maximumAcceptableDiff = getMaximumAcceptableRadianceDiffInLUT(normalizedRadianceLUT[1]);
+        final double[] normalizedRadianceLUT = ws.lutRadiance;
+        createNormalizedRadianceLUT(cosSunZenith, cosViewElevation * aatsrSinAzimuth,
+                                    cosViewElevation * aatsrCosAzimuth, ws, normalizedRadianceLUT);
+        return invertNormalizedRadianceLUT(normalizedRadianceLUT, aatsrRad, cosSunZenith, cosViewElevation,
+                                           aatsrSinAzimuth, aatsrCosAzimuth, merisAzimuthDifference, ws,
+                                           merisNormalizedRadianceResult);
+    }
+
+    //
+    // As convertAatsrRad37ToMerisRad, but with a given simulated radiance LUT of the pixel
+    // (e.g. interpolated by FlintRadianceCurveGrid) instead of computing it.
+    //
+    protected void convertAatsrRad37ToMerisRad(double[] normalizedRadianceLUT, float aatsrRad,
+                                               float merisSunZenith, float merisViewZenith,
+                                               float aatsrAzimuthDifference, float merisAzimuthDifference,
+                                               float[][] merisNormalizedRadianceResult) {
+        merisNormalizedRadianceResult[0][0] = -1.0f;
+        merisNormalizedRadianceResult[0][1] = -1.0f;
+        merisNormalizedRadianceResult[1][0] = -1.0f;
+        merisNormalizedRadianceResult[1][1] = -1.0f;
+
+        final double cosSunZenith = Math.cos(Math.toRadians(merisSunZenith));
+        final double cosViewElevation = Math.cos(Math.toRadians(90.0 - merisViewZenith));
+        final double aatsrSinAzimuth = Math.sin(Math.toRadians(aatsrAzimuthDifference));
+        final double aatsrCosAzimuth = Math.cos(Math.toRadians(aatsrAzimuthDifference));
+        invertNormalizedRadianceLUT(normalizedRadianceLUT, aatsrRad, cosSunZenith, cosViewElevation,
+                                    aatsrSinAzimuth, aatsrCosAzimuth, merisAzimuthDifference, workspace.get(),
+                                    merisNormalizedRadianceResult);
+    }
+
+    //
+    // This method provides the simulated AATSR normalized radiances for the LUT windspeeds
+    // (breadboard step 2.a.1) for the given geometry.
+    //
+    protected void createNormalizedRadianceCurve(float merisSunZenith, float merisViewZenith,
+                                                 float aatsrAzimuthDifference, double[] normalizedRadianceLUT) {
+        final double cosSunZenith = Math.cos(Math.toRadians(merisSunZenith));
+        final double cosViewElevation = Math.cos(Math.toRadians(90.0 - merisViewZenith));
+        final double aatsrAzimuth = Math.toRadians(aatsrAzimuthDifference);
+        createNormalizedRadianceLUT(cosSunZenith, cosViewElevation * Math.sin(aatsrAzimuth),
+                                    cosViewElevation * Math.cos(aatsrAzimuth), workspace.get(),
+                                    normalizedRadianceLUT);
+    }
+
+    //
+    // This method finds the windspeed(s) and MERIS normalized radiance(s) for the AATSR radiance
+    // in the simulated radiance LUT (breadboard steps 2.a.2 - 2.a.4).
+    // Returns true in the 'ambiguous' case.
+    //
+    private boolean invertNormalizedRadianceLUT(double[] normalizedRadianceLUT, float aatsrRad, double cosSunZenith,
+                                                double cosViewElevation, double aatsrSinAzimuth,
+                                                double aatsrCosAzimuth, float merisAzimuthDifference,
+                                                Workspace ws, float[][] merisNormalizedRadianceResult) {
+        final double maximumAcceptableDiff = getMaximumAcceptableRadianceDiffInLUT(normalizedRadianceLUT);
 
-        final int maximumNormalizedRadianceIndex = GlintHelpers.getMaximumValueIndexInDoubleArray(normalizedRadianceLUT[1]);
+        final int maximumNormalizedRadianceIndex = GlintHelpers.getMaximumValueIndexInDoubleArray(normalizedRadianceLUT);
 
-        if (maximumNormalizedRadianceIndex > 0 && maximumNormalizedRadianceIndex < normalizedRadianceLUT[1].length-1) {
+        if (maximumNormalizedRadianceIndex > 0 && maximumNormalizedRadianceIndex < normalizedRadianceLUT.length-1) {
             // two LUT solutions possible
-            merisNormalizedRadianceResult[0] = getRadianceFromLUT(normalizedRadianceLUT, 0, maximumNormalizedRadianceIndex-1,
-                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, merisAzimuthDifference);
+            final double merisSinAzimuth = Math.sin(Math.toRadians(merisAzimuthDifference));
+            final double merisCosAzimuth = Math.cos(Math.toRadians(merisAzimuthDifference));
+            getRadianceFromLUT(normalizedRadianceLUT, 0, maximumNormalizedRadianceIndex-1,
+                    aatsrRad, cosSunZenith, maximumAcceptableDiff,
+                    cosViewElevation * merisSinAzimuth, cosViewElevation * merisCosAzimuth,
+                    ws, merisNormalizedRadianceResult[0]);
+
+            getRadianceFromLUT(normalizedRadianceLUT, maximumNormalizedRadianceIndex,
+                    normalizedRadianceLUT.length-1,
+                    aatsrRad, cosSunZenith, maximumAcceptableDiff,
+                    cosViewElevation * merisSinAzimuth, cosViewElevation * merisCosAzimuth,
+                    ws, merisNormalizedRadianceResult[1]);
+            return true;
+        } else {
+            // monotone (note: the AATSR azimuth difference is used here, as in the breadboard)
+            final int lutLength = normalizedRadianceLUT.length;
+            getRadianceFromLUT(normalizedRadianceLUT, 0, lutLength-1,
+                    aatsrRad, cosSunZenith, maximumAcceptableDiff,
+                    cosViewElevation * aatsrSinAzimuth, cosViewElevation * aatsrCosAzimuth,
+                    ws, merisNormalizedRadianceResult[0]);
+            return false;
+        }
+    }
+
+    //
+    // The adaptive version of the LUT approach. The radiance LUT is evaluated lazily:
+    //      - coarse sweep over every searchStep-th windspeed (and the last one)
+    //      - ternary search for the maximum around the coarse maximum
+    //      - on each monotone branch, bisection between the coarse samples bracketing the radiance match
+    // The maximum acceptable radiance difference is estimated from the steepest slope of the sampled values.
+    // If a match is not accepted with this estimate, the steepest part of the LUT is evaluated completely.
+    //
+    private boolean convertAdaptive(float aatsrRad, double cosSunZenith, double cosViewElevation,
+                                    double aatsrSinAzimuth, double aatsrCosAzimuth, float merisAzimuthDifference,
+                                    int searchStep, Workspace ws, float[][] merisNormalizedRadianceResult) {
+        final int n = NUMBER_OF_LUT_WINDSPEEDS;
+        final double gaussX = cosViewElevation * aatsrSinAzimuth;
+        final double gaussY = cosViewElevation * aatsrCosAzimuth;
+        for (int i = 0; i < n; i++) {
+            ws.evaluated[i] = false;
+        }
+
+        // coarse sweep
+        int coarseMaximumIndex = -1;
+        double coarseMaximum = Double.MIN_VALUE;
+        for (int i = 0; i < n; i = nextCoarseIndex(i, searchStep)) {
+            final double radiance = getLutRadiance(i, cosSunZenith, gaussX, gaussY, ws);
+            if (radiance > coarseMaximum) {
+                coarseMaximum = radiance;
+                coarseMaximumIndex = i;
+            }
+        }
 
-            merisNormalizedRadianceResult[1] = getRadianceFromLUT(normalizedRadianceLUT, maximumNormalizedRadianceIndex,
-                    normalizedRadianceLUT[0].length-1,
-                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, merisAzimuthDifference);
+        // refinement of the maximum
+        int maximumIndex = -1;
+        if (coarseMaximumIndex >= 0) {
+            int lo = Math.max(0, coarseMaximumIndex - searchStep);
+            int hi = Math.min(n - 1, coarseMaximumIndex + searchStep);
+            while (hi - lo > 2) {
+                final int m1 = lo + (hi - lo) / 3;
+                final int m2 = hi - (hi - lo) / 3;
+                if (getLutRadiance(m1, cosSunZenith, gaussX, gaussY, ws) <
+                    getLutRadiance(m2, cosSunZenith, gaussX, gaussY, ws)) {
+                    lo = m1 + 1;
+                } else {
+                    hi = m2;
+                }
+            }
+            double maximum = Double.MIN_VALUE;
+            for (int i = lo; i <= hi; i++) {
+                final double radiance = getLutRadiance(i, cosSunZenith, gaussX, gaussY, ws);
+                if (radiance > maximum) {
+                    maximum = radiance;
+                    maximumIndex = i;
+                }
+            }
+            if (maximum < coarseMaximum) {
+                // not unimodal within the refinement interval - keep the coarse maximum
+                maximumIndex = coarseMaximumIndex;
+            }
+        }
+
+        final boolean ambiguous = maximumIndex > 0 && maximumIndex < n - 1;
+        final int windspeedIndex1;
+        final int windspeedIndex2;
+        if (ambiguous) {
+            // two LUT solutions possible
+            windspeedIndex1 = searchRadianceOnBranch(0, maximumIndex - 1, aatsrRad, cosSunZenith,
+                                                     gaussX, gaussY, searchStep, ws);
+            windspeedIndex2 = searchRadianceOnBranch(maximumIndex, n - 1, aatsrRad, cosSunZenith,
+                                                     gaussX, gaussY, searchStep, ws);
         } else {
-            // monotone
-            final int lutLength = normalizedRadianceLUT[1].length;
-            merisNormalizedRadianceResult[0] = getRadianceFromLUT(normalizedRadianceLUT, 0, lutLength-1,
-                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, aatsrAzimuthDifference);
+            windspeedIndex1 = searchRadianceOnBranch(0, n - 1, aatsrRad, cosSunZenith,
+                                                     gaussX, gaussY, searchStep, ws);
+            windspeedIndex2 = -1;
         }
 
-        return merisNormalizedRadianceResult;
+        final double minRadianceDiff1 = Math.abs(ws.lutRadiance[windspeedIndex1] - aatsrRad);
+        final double minRadianceDiff2 = ambiguous ? Math.abs(ws.lutRadiance[windspeedIndex2] - aatsrRad) : 0.0;
+        double maximumAcceptableDiff = estimateMaximumAcceptableRadianceDiff(ws);
+        if (minRadianceDiff1 > maximumAcceptableDiff || minRadianceDiff2 > maximumAcceptableDiff) {
+            evaluateSteepestLutInterval(cosSunZenith, gaussX, gaussY, searchStep, ws);
+            maximumAcceptableDiff = estimateMaximumAcceptableRadianceDiff(ws);
+        }
+
+        if (ambiguous) {
+            final double merisSinAzimuth = Math.sin(Math.toRadians(merisAzimuthDifference));
+            final double merisCosAzimuth = Math.cos(Math.toRadians(merisAzimuthDifference));
+            setRadianceResult(windspeedIndex1, minRadianceDiff1, maximumAcceptableDiff, cosSunZenith,
+                              cosViewElevation * merisSinAzimuth, cosViewElevation * merisCosAzimuth,
+                              ws, merisNormalizedRadianceResult[0]);
+            setRadianceResult(windspeedIndex2, minRadianceDiff2, maximumAcceptableDiff, cosSunZenith,
+                              cosViewElevation * merisSinAzimuth, cosViewElevation * merisCosAzimuth,
+                              ws, merisNormalizedRadianceResult[1]);
+        } else {
+            // monotone (note: the AATSR azimuth difference is used here, as in the breadboard)
+            setRadianceResult(windspeedIndex1, minRadianceDiff1, maximumAcceptableDiff, cosSunZenith,
+                              gaussX, gaussY, ws, merisNormalizedRadianceResult[0]);
+        }
+        return ambiguous;
+    }
+
+    private static int nextCoarseIndex(int i, int searchStep) {
+        final int last = NUMBER_OF_LUT_WINDSPEEDS - 1;
+        return i < last ? Math.min(i + searchStep, last) : NUMBER_OF_LUT_WINDSPEEDS;
+    }
+
+    //
+    // This method provides the LUT index with the radiance closest to aatsrRad
+    // on a monotone branch [startIndex, endIndex] of the radiance LUT.
+    //
+    private int searchRadianceOnBranch(int startIndex, int endIndex, float aatsrRad, double cosSunZenith,
+                                       double gaussX, double gaussY, int searchStep, Workspace ws) {
+        // bracket the radiance match with the coarse samples of this branch
+        int lo = startIndex;
+        boolean loAbove = getLutRadiance(lo, cosSunZenith, gaussX, gaussY, ws) >= aatsrRad;
+        int hi = -1;
+        int i = startIndex;
+        while (i < endIndex) {
+            final int next = Math.min(endIndex, (i / searchStep + 1) * searchStep);
+            if ((getLutRadiance(next, cosSunZenith, gaussX, gaussY, ws) >= aatsrRad) != loAbove) {
+                hi = next;
+                break;
+            }
+            lo = next;
+            i = next;
+        }
+
+        if (hi < 0) {
+            // no crossing: the closest radiance is at one of the branch ends
+            final double startDiff = Math.abs(getLutRadiance(startIndex, cosSunZenith, gaussX, gaussY, ws) - aatsrRad);
+            final double endDiff = Math.abs(getLutRadiance(endIndex, cosSunZenith, gaussX, gaussY, ws) - aatsrRad);
+            return endDiff < startDiff ? endIndex : startIndex;
+        } else {
+            // bisection down to two neighbouring LUT indices
+            while (hi - lo > 1) {
+                final int mid = (lo + hi) / 2;
+                if ((getLutRadiance(mid, cosSunZenith, gaussX, gaussY, ws) >= aatsrRad) == loAbove) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            final double loDiff = Math.abs(getLutRadiance(lo, cosSunZenith, gaussX, gaussY, ws) - aatsrRad);
+            final double hiDiff = Math.abs(getLutRadiance(hi, cosSunZenith, gaussX, gaussY, ws) - aatsrRad);
+            return hiDiff < loDiff ? hi : lo;
+        }
+    }
+
+    //
+    // This method evaluates all LUT values around the steepest interval between the sampled LUT values.
+    //
+    private void evaluateSteepestLutInterval(double cosSunZenith, double gaussX, double gaussY, int searchStep,
+                                             Workspace ws) {
+        double maximumSlope = -1.0;
+        int steepestStart = 0;
+        int steepestEnd = 0;
+        int previous = -1;
+        for (int i = 0; i < NUMBER_OF_LUT_WINDSPEEDS; i++) {
+            if (ws.evaluated[i]) {
+                if (previous >= 0 && i - previous > 1) {
+                    final double slope = Math.abs(ws.lutRadiance[i] - ws.lutRadiance[previous]) / (i - previous);
+                    if (slope > maximumSlope) {
+                        maximumSlope = slope;
+                        steepestStart = previous;
+                        steepestEnd = i;
+                    }
+                }
+                previous = i;
+            }
+        }
+        final int start = Math.max(0, steepestStart - searchStep);
+        final int end = Math.min(NUMBER_OF_LUT_WINDSPEEDS - 1, steepestEnd + searchStep);
+        for (int i = start; i <= end; i++) {
+            getLutRadiance(i, cosSunZenith, gaussX, gaussY, ws);
+        }
+    }
+
+    //
+    // The steepest slope between sampled LUT values, scaled to one LUT step. For the smooth radiance curves
+    // this is close to the maximum difference of neighbouring LUT values (getMaximumAcceptableRadianceDiffInLUT).
+    //
+    private static double estimateMaximumAcceptableRadianceDiff(Workspace ws) {
+        double diffAcceptable = 0.0;
+        int previous = -1;
+        for (int i = 0; i < NUMBER_OF_LUT_WINDSPEEDS; i++) {
+            if (ws.evaluated[i]) {
+                if (previous >= 0) {
+                    final double diff = Math.abs(ws.lutRadiance[i] - ws.lutRadiance[previous]) / (i - previous);
+                    if (diff > diffAcceptable) {
+                        diffAcceptable = diff;
+                    }
+                }
+                previous = i;
+            }
+        }
+        return diffAcceptable;
     }
 
-    private float[] getRadianceFromLUT(double[][] lut, int startIndex, int endIndex, float aatsrRad,
-                                      float merisSunZenith, double maximumAcceptableDiff,
-                                      float merisViewZenith, float merisAzimuthDifference) {
+    //
+    // This method provides the radiance LUT value of the given windspeed index, evaluated on first access
+    //
+    private double getLutRadiance(int windspeedIndex, double cosSunZenith, double gaussX, double gaussY,
+                                  Workspace ws) {
+        if (!ws.evaluated[windspeedIndex]) {
+            final double[] nnIn = ws.nnIn;
+            nnIn[0] = LUT_WINDSPEEDS[windspeedIndex];
+            nnIn[1] = refractiveIndexReal037;
+            nnIn[2] = cosSunZenith;
+            computeGaussPars(windspeedIndex, nnIn, ws.gaussPars);
+            ws.lutRadiance[windspeedIndex] = (float) gauss2DRecall(gaussX, gaussY, ws.gaussPars);
+            ws.evaluated[windspeedIndex] = true;
+        }
+        return ws.lutRadiance[windspeedIndex];
+    }
 
-        float[] radianceResult = new float[]{-1.0f, -1.0f};
+    //
+    // gaussX, gaussY: the pixel geometry terms of gauss2DRecall
+    // radianceResult: [windspeed, radiance], kept at -1 if no acceptable LUT match is found
+    //
+    private void getRadianceFromLUT(double[] lutRadiance, int startIndex, int endIndex, float aatsrRad,
+                                    double cosSunZenith, double maximumAcceptableDiff,
+                                    double gaussX, double gaussY, Workspace ws, float[] radianceResult) {
 
-        final int lutLength = endIndex - startIndex + 1;
-        double[] radianceDiffs = new double[lutLength];
+        // same search as GlintHelpers.getMinimumValueIndexInDoubleArray on the absolute differences
+        int minRadianceDiffIndexInLUT = -1;
+        double minRadianceDiffInLUT = Double.MAX_VALUE;
         for (int i=startIndex; i<=endIndex; i++) {
-            radianceDiffs[i-startIndex] = Math.abs(lut[1][i] - aatsrRad);
+            final double radianceDiff = Math.abs(lutRadiance[i] - aatsrRad);
+            if (radianceDiff < minRadianceDiffInLUT) {
+                minRadianceDiffInLUT = radianceDiff;
+                minRadianceDiffIndexInLUT = i - startIndex;
+            }
         }
-        final int minRadianceDiffIndexInLUT = GlintHelpers.getMinimumValueIndexInDoubleArray(radianceDiffs);
 
-        final double minRadianceDiffInLUT = GlintHelpers.getMinimumValueInDoubleArray(radianceDiffs);
-        final double windspeed = lut[0][startIndex+minRadianceDiffIndexInLUT];
+        final int windspeedIndex = startIndex + minRadianceDiffIndexInLUT;
+        setRadianceResult(windspeedIndex, minRadianceDiffInLUT, maximumAcceptableDiff, cosSunZenith,
+                          gaussX, gaussY, ws, radianceResult);
+    }
+
+    private void setRadianceResult(int windspeedIndex, double minRadianceDiffInLUT, double maximumAcceptableDiff,
+                                   double cosSunZenith, double gaussX, double gaussY, Workspace ws,
+                                   float[] radianceResult) {
+        final double windspeed = LUT_WINDSPEEDS[windspeedIndex];
 
-        final double[] nnIn = new double[3];
-        final double[] gaussPars = new double[4];
+        final double[] nnIn = ws.nnIn;
+        final double[] gaussPars = ws.gaussPars;
 
         // apply FUB NN...
         nnIn[0] = windspeed;
         nnIn[1] = refractiveIndexReal088;
-        nnIn[2] = Math.cos(Math.toRadians(merisSunZenith));  // angle in degree!
+        nnIn[2] = cosSunZenith;
 
         if (minRadianceDiffInLUT <= maximumAcceptableDiff) {
             radianceResult[0] = (float) windspeed;
-            applyNeuralNetWindspeed(nnIn, gaussPars);
-            radianceResult[1] = applyGauss2DRecall(merisViewZenith, merisAzimuthDifference, gaussPars);
+            computeGaussPars(windspeedIndex, nnIn, gaussPars);
+            radianceResult[1] = (float) gauss2DRecall(gaussX, gaussY, gaussPars);
         }
-
-        return radianceResult;
     }
 
 
     //
-    // This method generates a 1D LUT of AATSR normalized radiances for different wind speeds
+    // This method generates a 1D LUT of AATSR normalized radiances for the LUT wind speeds
     // (breadboard step 2.a.1)
     //
-    private double[][] createNormalizedRadianceLUT(float merisSunZenith, float merisViewZenith,
-                                                     float aatsrAzimuthDifference) {
-
-        final int numberOfWindspeeds = 151;
+    private void createNormalizedRadianceLUT(double cosSunZenith, double gaussX, double gaussY, Workspace ws,
+                                             double[] aatsrReflectanceSimulated) {
+        final double[] nnIn = ws.nnIn;
+        final double[] gaussPars = ws.gaussPars;
 
-        double[][] lookupTable = new double[2][numberOfWindspeeds];
+        for (int i = 0; i < NUMBER_OF_LUT_WINDSPEEDS; i++) {
+            // apply FUB NN...
+            nnIn[0] = LUT_WINDSPEEDS[i];
+            nnIn[1] = refractiveIndexReal037;
+            nnIn[2] = cosSunZenith;
 
-        double[] windspeed = new double[numberOfWindspeeds];
-        double[] aatsrReflectanceSimulated = new double[numberOfWindspeeds];
+            computeGaussPars(i, nnIn, gaussPars);
 
-        final double[] nnIn = new double[3];
-        final double[] gaussPars = new double[4];
+            aatsrReflectanceSimulated[i] = (float) gauss2DRecall(gaussX, gaussY, gaussPars);
+        }
+    }
 
-        for (int i = 0; i < numberOfWindspeeds; i++) {
-            windspeed[i] = i * 13.0 / (numberOfWindspeeds - 1) + 1.0;
+    //
+    // This method provides the windspeed of the given LUT index (1 to 14 m/s)
+    //
+    static double getLutWindspeed(int windspeedIndex) {
+        return windspeedIndex * 13.0 / (NUMBER_OF_LUT_WINDSPEEDS - 1) + 1.0;
+    }
 
-            // apply FUB NN...
-            nnIn[0] = windspeed[i];
-            nnIn[1] = refractiveIndexReal037;
-            nnIn[2] = Math.cos(Math.toRadians(merisSunZenith));  // angle in degree!
+    private static double[] createLutWindspeeds() {
+        final double[] windspeeds = new double[NUMBER_OF_LUT_WINDSPEEDS];
+        for (int i = 0; i < windspeeds.length; i++) {
+            windspeeds[i] = getLutWindspeed(i);
+        }
+        return windspeeds;
+    }
 
+    //
+    // This method provides the Gauss parameters for the LUT windspeed with given index,
+    // either from the precomputed grid or directly from the FUB NN
+    //
+    private void computeGaussPars(int windspeedIndex, double[] nnIn, double[] gaussPars) {
+        if (gaussParsGrid != null) {
+            gaussParsGrid.getGaussPars(windspeedIndex, nnIn[1], nnIn[2], gaussPars);
+        } else {
             applyNeuralNetWindspeed(nnIn, gaussPars);
-
-            aatsrReflectanceSimulated[i] = gauss2DRecall(merisViewZenith, aatsrAzimuthDifference, gaussPars);
-            lookupTable[0][i] = windspeed[i];
-            lookupTable[1][i] = aatsrReflectanceSimulated[i];
         }
-
-        return lookupTable;
     }
 
     //
@@ -211,18 +579,146 @@ public class FlintGeometricalConversion implements Cloneable {
     }
 
     private float gauss2DRecall(float merisViewZenith, float aatsrAzimuthDifference, double[] gaussPars) {
-        float normalizedRadiance;
-
         final double x = Math.cos(Math.toRadians(90.0 - merisViewZenith)) *
                 Math.sin(Math.toRadians(aatsrAzimuthDifference));
         final double y = Math.cos(Math.toRadians(90.0 - merisViewZenith)) *
                 Math.cos(Math.toRadians(aatsrAzimuthDifference));
 
+        return (float) gauss2DRecall(x, y, gaussPars);
+    }
+
+    //
+    // x = cos(90 - view zenith) * sin(azimuth difference), y = cos(90 - view zenith) * cos(azimuth difference)
+    //
+    private static double gauss2DRecall(double x, double y, double[] gaussPars) {
         final double yy = y - gaussPars[3];
         final double u = x * x / (gaussPars[1] * gaussPars[1]) + yy * yy / (gaussPars[2] * gaussPars[2]);
 
-        normalizedRadiance = (float) (gaussPars[0] * Math.exp(-u / 2.0));
+        return gaussPars[0] * Math.exp(-u / 2.0);
+    }
+
+    //
+    // This method compares the adaptive windspeed search with the given coarse step against the exhaustive
+    // LUT search on a grid of geometries and AATSR radiances typical for sun glint observations.
+    //
+    protected SearchDeviation getAdaptiveSearchDeviation(int coarseStep) {
+        if (coarseStep <= 0 || coarseStep >= NUMBER_OF_LUT_WINDSPEEDS) {
+            throw new IllegalArgumentException("Invalid coarse step " + coarseStep + " for adaptive windspeed search.");
+        }
+        final Workspace ws = workspace.get();
+        final float[][] exhaustiveResult = new float[2][2];
+        final float[][] adaptiveResult = new float[2][2];
+        final SearchDeviation deviation = new SearchDeviation();
+
+        for (float sunZenith = 10.0f; sunZenith <= 60.0f; sunZenith += 10.0f) {
+            for (float viewZenith = 0.0f; viewZenith <= 40.0f; viewZenith += 10.0f) {
+                for (float azimuthDifference = 0.0f; azimuthDifference <= 180.0f; azimuthDifference += 36.0f) {
+                    for (float aatsrRad = 0.01f; aatsrRad <= 0.1f; aatsrRad += 0.015f) {
+                        final boolean exhaustiveAmbiguous =
+                                convertAatsrRad37ToMerisRad(aatsrRad, sunZenith, viewZenith, azimuthDifference,
+                                                            180.0f - azimuthDifference, 0, exhaustiveResult);
+                        final boolean adaptiveAmbiguous =
+                                convertAatsrRad37ToMerisRad(aatsrRad, sunZenith, viewZenith, azimuthDifference,
+                                                            180.0f - azimuthDifference, coarseStep, adaptiveResult);
+                        deviation.add(exhaustiveAmbiguous, exhaustiveResult, adaptiveAmbiguous, adaptiveResult,
+                                      getNumberOfLutEvaluations(ws));
+                    }
+                }
+            }
+        }
+        return deviation;
+    }
+
+    //
+    // The number of radiance LUT values evaluated by the last adaptive conversion in this workspace.
+    // Each value is evaluated at most once per conversion, so the evaluated flags are counted instead of
+    // counting the evaluations in getLutRadiance.
+    //
+    private static int getNumberOfLutEvaluations(Workspace ws) {
+        int numberOfEvaluations = 0;
+        for (int i = 0; i < NUMBER_OF_LUT_WINDSPEEDS; i++) {
+            if (ws.evaluated[i]) {
+                numberOfEvaluations++;
+            }
+        }
+        return numberOfEvaluations;
+    }
+
+    /**
+     * The deviation of the adaptive windspeed search from the exhaustive LUT search.
+     */
+    static class SearchDeviation {
+
+        private int numberOfSamples;
+        private int numberOfClassificationMismatches;
+        private int numberOfSolutionMismatches;
+        private double maxWindspeedDeviation;
+        private double maxRadianceDeviation;
+        private long numberOfEvaluations;
+
+        private void add(boolean exhaustiveAmbiguous, float[][] exhaustiveResult,
+                         boolean adaptiveAmbiguous, float[][] adaptiveResult, long evaluations) {
+            numberOfSamples++;
+            numberOfEvaluations += evaluations;
+            if (exhaustiveAmbiguous != adaptiveAmbiguous) {
+                numberOfClassificationMismatches++;
+                return;
+            }
+            for (int i = 0; i < 2; i++) {
+                // -1: no acceptable LUT match
+                final boolean exhaustiveFound = exhaustiveResult[i][0] != -1.0f;
+                final boolean adaptiveFound = adaptiveResult[i][0] != -1.0f;
+                if (exhaustiveFound != adaptiveFound) {
+                    numberOfSolutionMismatches++;
+                } else if (exhaustiveFound) {
+                    maxWindspeedDeviation = Math.max(maxWindspeedDeviation,
+                                                     Math.abs(adaptiveResult[i][0] - exhaustiveResult[i][0]));
+                    maxRadianceDeviation = Math.max(maxRadianceDeviation,
+                                                    Math.abs(adaptiveResult[i][1] - exhaustiveResult[i][1]));
+                }
+            }
+        }
+
+        int getNumberOfSamples() {
+            return numberOfSamples;
+        }
+
+        int getNumberOfClassificationMismatches() {
+            return numberOfClassificationMismatches;
+        }
+
+        int getNumberOfSolutionMismatches() {
+            return numberOfSolutionMismatches;
+        }
+
+        double getMaxWindspeedDeviation() {
+            return maxWindspeedDeviation;
+        }
+
+        double getMaxRadianceDeviation() {
+            return maxRadianceDeviation;
+        }
+
+        // mean number of radiance LUT values evaluated per conversion (exhaustive search: 151)
+        double getMeanNumberOfEvaluations() {
+            return numberOfSamples > 0 ? (double) numberOfEvaluations / numberOfSamples : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d samples, %d classification mismatches, %d solution mismatches, " +
+                                 "max. windspeed deviation %.3f m/s, max. radiance deviation %.3g 1/sr, " +
+                                 "%.1f LUT evaluations per pixel (exhaustive: %d)",
+                                 numberOfSamples, numberOfClassificationMismatches, numberOfSolutionMismatches,
+                                 maxWindspeedDeviation, maxRadianceDeviation, getMeanNumberOfEvaluations(),
+                                 NUMBER_OF_LUT_WINDSPEEDS);
+        }
+    }
 
-        return normalizedRadiance;
+    private static class Workspace {
+        private final double[] lutRadiance = new double[NUMBER_OF_LUT_WINDSPEEDS];
+        private final boolean[] evaluated = new boolean[NUMBER_OF_LUT_WINDSPEEDS];
+        private final double[] nnIn = new double[3];
+        private final double[] gaussPars = new double[4];
     }
 }
@@ -0,0 +1,439 @@
+package org.esa.beam.glint.operators;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * This class holds the result of the geometrical conversion (breadboard step 2.a) tabulated over
+ * (AATSR solar part 3.7um, MERIS sun zenith, MERIS view zenith, AATSR azimuth difference, MERIS azimuth difference),
+ * and the generator which creates the table offline.
+ * <p/>
+ * A node holds the 2x2 result of {@link FlintGeometricalConversion#convertAatsrRad37ToMerisRad}
+ * ([windspeed1, radiance1, windspeed2, radiance2], -1 if no windspeed was found), so the number of windspeeds
+ * and, with the ECMWF winds of the pixel, the ambiguity reduced final result (step 2.b) follow from the table.
+ * Between nodes, the results are interpolated multilinearly if all surrounding nodes have found the same
+ * windspeeds, otherwise the result of the nearest node is used.
+ * <p/>
+ * The table file holds float32 values in little-endian byte order:
+ * <pre>
+ *   int32   magic number 'FLIT'
+ *   int32   format version
+ *   5 x     axis: float64 minimum, float64 maximum, int32 number of nodes
+ *   int64   CRC32 checksum of the values
+ *   float32 values[numberOfNodes * 4], the last axis varying fastest
+ * </pre>
+ * The file is memory-mapped, so the table does not use heap memory and can be shared between threads.
+ */
+public final class FlintInversionTable {
+
+    static final int MAGIC = 0x54494C46;     // 'F', 'L', 'I', 'T' in little-endian byte order
+    static final int VERSION = 1;
+    static final int NUMBER_OF_AXES = 5;
+    static final int VALUES_PER_NODE = 4;
+    static final int HEADER_SIZE = 8 + NUMBER_OF_AXES * 20 + 8;
+
+    static final Axis[] DEFAULT_AXES = new Axis[]{
+            new Axis(0.0, 0.15, 31),        // AATSR solar part 3.7um (normalized radiance)
+            new Axis(0.0, 80.0, 17),        // MERIS sun zenith (deg)
+            new Axis(0.0, 45.0, 10),        // MERIS view zenith (deg)
+            new Axis(0.0, 180.0, 19),       // AATSR azimuth difference (deg)
+            new Axis(0.0, 180.0, 19)        // MERIS azimuth difference (deg)
+    };
+
+    private static final int NUMBER_OF_ERROR_SAMPLES = 100000;
+    // in units of the axis step
+    private static final double AXIS_TOLERANCE = 1.0E-4;
+
+    private final Axis[] axes;
+    private final int[] strides;
+    private final FloatBuffer values;
+
+    // per-thread buffers of the table lookup, so that no heap allocation is needed per pixel
+    private final ThreadLocal<Workspace> workspace = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
+    private FlintInversionTable(Axis[] axes, FloatBuffer values) {
+        this.axes = axes;
+        this.values = values;
+        strides = new int[NUMBER_OF_AXES];
+        int stride = VALUES_PER_NODE;
+        for (int i = NUMBER_OF_AXES - 1; i >= 0; i--) {
+            strides[i] = stride;
+            stride *= axes[i].count;
+        }
+    }
+
+    /**
+     * Generates the inversion table and reports its interpolation error against the exact geometrical conversion.
+     *
+     * @param args - args[0]: the output file, optional args[1..5]: the axes as 'minimum:maximum:count'
+     *             (AATSR solar part 3.7um, MERIS sun zenith, MERIS view zenith, AATSR azimuth difference,
+     *             MERIS azimuth difference)
+     * @throws IOException if the Flint auxdata cannot be read or the table cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 1 + NUMBER_OF_AXES) {
+            throw new IllegalArgumentException(
+                    "Usage: FlintInversionTable <output file> [<min:max:count> x " + NUMBER_OF_AXES + "]");
+        }
+        final Axis[] axes = DEFAULT_AXES.clone();
+        for (int i = 1; i < args.length; i++) {
+            axes[i - 1] = Axis.parse(args[i]);
+        }
+        final File file = new File(args[0]);
+
+        final FlintGeometricalConversion geometricalConversion = new FlintGeometricalConversion();
+        geometricalConversion.loadFlintAuxData();
+        write(geometricalConversion, axes, file);
+        final FlintInversionTable table = open(file);
+        System.out.println("Inversion table " + file + " written - interpolation error: " +
+                           table.getInterpolationError(geometricalConversion, NUMBER_OF_ERROR_SAMPLES));
+    }
+
+    //
+    // This method computes the table with the exact geometrical conversion and writes it to the given file.
+    // The radiance curve of a node depends on the sun and view zenith and the AATSR azimuth difference only,
+    // so it is computed once for all AATSR radiances and MERIS azimuth differences.
+    //
+    static void write(FlintGeometricalConversion geometricalConversion, Axis[] axes, File file) throws IOException {
+        if (axes.length != NUMBER_OF_AXES) {
+            throw new IllegalArgumentException("Inversion table needs " + NUMBER_OF_AXES + " axes.");
+        }
+        final Axis radAxis = axes[0];
+        final Axis szAxis = axes[1];
+        final Axis vzAxis = axes[2];
+        final Axis aatsrAzAxis = axes[3];
+        final Axis merisAzAxis = axes[4];
+        final long numberOfValues = (long) radAxis.count * szAxis.count * vzAxis.count * aatsrAzAxis.count *
+                                    merisAzAxis.count * VALUES_PER_NODE;
+        if (numberOfValues > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Inversion table too large: " + numberOfValues + " values.");
+        }
+        final ByteBuffer payload = ByteBuffer.allocate((int) numberOfValues * 4).order(ByteOrder.LITTLE_ENDIAN);
+        final FloatBuffer values = payload.asFloatBuffer();
+        final FlintInversionTable table = new FlintInversionTable(axes, values);
+
+        final double[] radianceCurve = new double[FlintGeometricalConversion.NUMBER_OF_LUT_WINDSPEEDS];
+        final float[][] result = new float[2][2];
+        for (int iSz = 0; iSz < szAxis.count; iSz++) {
+            final float sunZenith = (float) szAxis.getValue(iSz);
+            for (int iVz = 0; iVz < vzAxis.count; iVz++) {
+                final float viewZenith = (float) vzAxis.getValue(iVz);
+                for (int iAaz = 0; iAaz < aatsrAzAxis.count; iAaz++) {
+                    final float aatsrAzimuthDifference = (float) aatsrAzAxis.getValue(iAaz);
+                    geometricalConversion.createNormalizedRadianceCurve(sunZenith, viewZenith,
+                                                                        aatsrAzimuthDifference, radianceCurve);
+                    for (int iRad = 0; iRad < radAxis.count; iRad++) {
+                        final float aatsrRad = (float) radAxis.getValue(iRad);
+                        for (int iMaz = 0; iMaz < merisAzAxis.count; iMaz++) {
+                            geometricalConversion.convertAatsrRad37ToMerisRad(radianceCurve, aatsrRad, sunZenith,
+                                                                              viewZenith, aatsrAzimuthDifference,
+                                                                              (float) merisAzAxis.getValue(iMaz),
+                                                                              result);
+                            final int offset = table.getOffset(new int[]{iRad, iSz, iVz, iAaz, iMaz});
+                            values.put(offset, result[0][0]);
+                            values.put(offset + 1, result[0][1]);
+                            values.put(offset + 2, result[1][0]);
+                            values.put(offset + 3, result[1][1]);
+                        }
+                    }
+                }
+            }
+        }
+
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        for (Axis axis : axes) {
+            header.putDouble(axis.minimum);
+            header.putDouble(axis.maximum);
+            header.putInt(axis.count);
+        }
+        header.putLong(computeChecksum(payload.duplicate()));
+
+        final OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(header.array());
+            outputStream.write(payload.array());
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    //
+    // This method memory-maps a table file and checks its header and checksum.
+    //
+    static FlintInversionTable open(File file) throws IOException {
+        final ByteBuffer buffer;
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            // the mapping remains valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException("Invalid inversion table " + file + " - file too short.");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Invalid inversion table " + file + " - wrong magic number.");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Invalid inversion table " + file + " - unsupported version " + version + ".");
+        }
+        final Axis[] axes = new Axis[NUMBER_OF_AXES];
+        long numberOfValues = VALUES_PER_NODE;
+        for (int i = 0; i < NUMBER_OF_AXES; i++) {
+            final double minimum = buffer.getDouble();
+            final double maximum = buffer.getDouble();
+            final int count = buffer.getInt();
+            if (count < 2 || !(maximum > minimum)) {
+                throw new IOException("Invalid inversion table " + file + " - invalid axis " + i + ".");
+            }
+            axes[i] = new Axis(minimum, maximum, count);
+            numberOfValues *= count;
+        }
+        final long checksum = buffer.getLong();
+        if (buffer.remaining() != numberOfValues * 4) {
+            throw new IOException("Invalid inversion table " + file + " - wrong file size.");
+        }
+        if (computeChecksum(buffer.duplicate()) != checksum) {
+            throw new IOException("Invalid inversion table " + file + " - checksum mismatch.");
+        }
+        return new FlintInversionTable(axes, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer());
+    }
+
+    //
+    // This method provides the result of the geometrical conversion for the given pixel, with the same arguments
+    // as FlintGeometricalConversion.convertAatsrRad37ToMerisRad.
+    // Returns false if the pixel is outside of the table, the result is not modified then.
+    //
+    boolean convertAatsrRad37ToMerisRad(float aatsrRad, float merisSunZenith, float merisViewZenith,
+                                        float aatsrAzimuthDifference, float merisAzimuthDifference,
+                                        float[][] merisNormalizedRadianceResult) {
+        final Workspace ws = workspace.get();
+        final double[] point = ws.point;
+        point[0] = aatsrRad;
+        point[1] = merisSunZenith;
+        point[2] = merisViewZenith;
+        point[3] = aatsrAzimuthDifference;
+        point[4] = merisAzimuthDifference;
+        final int[] lowerIndices = ws.lowerIndices;
+        final double[] weights = ws.weights;
+        int nearestOffset = 0;
+        for (int i = 0; i < NUMBER_OF_AXES; i++) {
+            final Axis axis = axes[i];
+            // tolerance for the float representation of the axis limits
+            final double pos = (point[i] - axis.minimum) / axis.step;
+            if (!(pos >= -AXIS_TOLERANCE && pos <= axis.count - 1 + AXIS_TOLERANCE)) {
+                return false;
+            }
+            lowerIndices[i] = Math.min((int) Math.max(pos, 0.0), axis.count - 2);
+            weights[i] = Math.min(Math.max(pos - lowerIndices[i], 0.0), 1.0);
+            nearestOffset += (weights[i] < 0.5 ? lowerIndices[i] : lowerIndices[i] + 1) * strides[i];
+        }
+
+        final boolean found1 = values.get(nearestOffset) != -1.0f;
+        final boolean found2 = values.get(nearestOffset + 2) != -1.0f;
+        final double[] sums = ws.sums;
+        for (int k = 0; k < VALUES_PER_NODE; k++) {
+            sums[k] = 0.0;
+        }
+        boolean sameWindspeedsFound = true;
+        for (int corner = 0; corner < (1 << NUMBER_OF_AXES) && sameWindspeedsFound; corner++) {
+            int offset = 0;
+            double weight = 1.0;
+            for (int i = 0; i < NUMBER_OF_AXES; i++) {
+                if ((corner & (1 << i)) != 0) {
+                    offset += (lowerIndices[i] + 1) * strides[i];
+                    weight *= weights[i];
+                } else {
+                    offset += lowerIndices[i] * strides[i];
+                    weight *= 1.0 - weights[i];
+                }
+            }
+            if (weight == 0.0) {
+                continue;
+            }
+            sameWindspeedsFound = (values.get(offset) != -1.0f) == found1 &&
+                                  (values.get(offset + 2) != -1.0f) == found2;
+            for (int k = 0; k < VALUES_PER_NODE; k++) {
+                sums[k] += weight * values.get(offset + k);
+            }
+        }
+
+        for (int k = 0; k < VALUES_PER_NODE; k++) {
+            final float nearestValue = values.get(nearestOffset + k);
+            final boolean found = k < 2 ? found1 : found2;
+            merisNormalizedRadianceResult[k / 2][k % 2] =
+                    sameWindspeedsFound && found ? (float) sums[k] : nearestValue;
+        }
+        return true;
+    }
+
+    //
+    // This method compares the table with the exact geometrical conversion at random points inside the table.
+    //
+    InterpolationError getInterpolationError(FlintGeometricalConversion geometricalConversion, int numberOfSamples) {
+        final Random random = new Random(4711);
+        final float[][] exactResult = new float[2][2];
+        final float[][] tableResult = new float[2][2];
+        final InterpolationError error = new InterpolationError();
+        final float[] point = new float[NUMBER_OF_AXES];
+        for (int n = 0; n < numberOfSamples; n++) {
+            for (int i = 0; i < NUMBER_OF_AXES; i++) {
+                point[i] = (float) (axes[i].minimum + random.nextDouble() * (axes[i].maximum - axes[i].minimum));
+            }
+            geometricalConversion.convertAatsrRad37ToMerisRad(point[0], point[1], point[2], point[3], point[4],
+                                                              exactResult);
+            if (convertAatsrRad37ToMerisRad(point[0], point[1], point[2], point[3], point[4], tableResult)) {
+                error.add(exactResult, tableResult);
+            }
+        }
+        return error;
+    }
+
+    private int getOffset(int[] indices) {
+        int offset = 0;
+        for (int i = 0; i < NUMBER_OF_AXES; i++) {
+            offset += indices[i] * strides[i];
+        }
+        return offset;
+    }
+
+    private static long computeChecksum(ByteBuffer buffer) {
+        final CRC32 crc32 = new CRC32();
+        final byte[] chunk = new byte[8192];
+        while (buffer.hasRemaining()) {
+            final int n = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, n);
+            crc32.update(chunk, 0, n);
+        }
+        return crc32.getValue();
+    }
+
+    private static class Workspace {
+        private final double[] point = new double[NUMBER_OF_AXES];
+        private final int[] lowerIndices = new int[NUMBER_OF_AXES];
+        private final double[] weights = new double[NUMBER_OF_AXES];
+        private final double[] sums = new double[VALUES_PER_NODE];
+    }
+
+    /**
+     * An equidistant table axis.
+     */
+    static final class Axis {
+
+        private final double minimum;
+        private final double maximum;
+        private final int count;
+        private final double step;
+
+        Axis(double minimum, double maximum, int count) {
+            if (count < 2 || !(maximum > minimum)) {
+                throw new IllegalArgumentException("Invalid axis [" + minimum + ", " + maximum + "] with " +
+                                                   count + " nodes.");
+            }
+            this.minimum = minimum;
+            this.maximum = maximum;
+            this.count = count;
+            step = (maximum - minimum) / (count - 1);
+        }
+
+        double getValue(int index) {
+            return minimum + index * step;
+        }
+
+        // 'minimum:maximum:count'
+        static Axis parse(String text) {
+            final String[] parts = text.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid axis '" + text + "', expected 'minimum:maximum:count'.");
+            }
+            return new Axis(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Integer.parseInt(parts[2]));
+        }
+    }
+
+    /**
+     * The deviation of the table results from the exact geometrical conversion.
+     */
+    static final class InterpolationError {
+
+        private int numberOfSamples;
+        private int numberOfWindspeedMismatches;
+        private int numberOfCompared;
+        private double maxWindspeedError;
+        private double maxRadianceError;
+        private double sumWindspeedError;
+        private double sumRadianceError;
+
+        private void add(float[][] exactResult, float[][] tableResult) {
+            numberOfSamples++;
+            if (FlintGeometricalConversion.windspeedFound(exactResult) !=
+                FlintGeometricalConversion.windspeedFound(tableResult)) {
+                numberOfWindspeedMismatches++;
+                return;
+            }
+            for (int i = 0; i < 2; i++) {
+                if (exactResult[i][0] != -1.0f && tableResult[i][0] != -1.0f) {
+                    final double windspeedError = Math.abs(tableResult[i][0] - exactResult[i][0]);
+                    final double radianceError = Math.abs(tableResult[i][1] - exactResult[i][1]);
+                    maxWindspeedError = Math.max(maxWindspeedError, windspeedError);
+                    maxRadianceError = Math.max(maxRadianceError, radianceError);
+                    sumWindspeedError += windspeedError;
+                    sumRadianceError += radianceError;
+                    numberOfCompared++;
+                }
+            }
+        }
+
+        int getNumberOfSamples() {
+            return numberOfSamples;
+        }
+
+        int getNumberOfWindspeedMismatches() {
+            return numberOfWindspeedMismatches;
+        }
+
+        double getMaxWindspeedError() {
+            return maxWindspeedError;
+        }
+
+        double getMaxRadianceError() {
+            return maxRadianceError;
+        }
+
+        double getMeanWindspeedError() {
+            return numberOfCompared > 0 ? sumWindspeedError / numberOfCompared : 0.0;
+        }
+
+        double getMeanRadianceError() {
+            return numberOfCompared > 0 ? sumRadianceError / numberOfCompared : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d samples, %d with different number of windspeeds, " +
+                                 "windspeed error mean %.3f / max. %.3f m/s, radiance error mean %.3g / max. %.3g 1/sr",
+                                 numberOfSamples, numberOfWindspeedMismatches, getMeanWindspeedError(),
+                                 maxWindspeedError, getMeanRadianceError(), maxRadianceError);
+        }
+    }
+}
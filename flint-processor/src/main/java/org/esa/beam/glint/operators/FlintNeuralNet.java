@@ -0,0 +1,513 @@
+package org.esa.beam.glint.operators;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class provides a compiled, allocation-free evaluator for the FUB multilayer perceptrons stored
+ * in the '.nna' format (wv_ocean_meris.nna, cm_ws_to_gauss2d.nna).
+ * <p/>
+ * The net is compiled into flat primitive arrays (one dense weight matrix per layer) which are never modified
+ * after construction, so a single instance can be shared between all threads. Intermediate results are kept in
+ * per-thread scratch buffers.
+ * <p/>
+ * Supported layer functions are those used by the FUB nets: input function 'Sum_1', activation functions
+ * 'Identity', 'Sigmoid_1' and 'Sigmoid_2' (with activation slope), and output function 'Linear'.
+ * The connections of a unit are accumulated into the dense weight matrix of its layer, so the unit inputs are
+ * summed in the order of the source units, not in the connection order of the '.nna' file. The results may
+ * therefore differ from {@link com.bc.jnn.JnnNet#process(double[], double[])} by rounding,
+ * FlintNeuralNetTest checks that they agree to within 1.0E-6 (absolute) over the input ranges of the FUB nets.
+ */
+public final class FlintNeuralNet {
+
+    private static final int ACT_FUNC_IDENTITY = 0;
+    private static final int ACT_FUNC_SIGMOID_1 = 1;
+    private static final int ACT_FUNC_SIGMOID_2 = 2;
+
+    private final int numInputs;
+    private final int numOutputs;
+    private final int maxUnits;
+
+    // input layer: linear transformation of the input values
+    private final double[] inputScale;
+    private final double[] inputBias;
+
+    // all other layers: weights[l] is a dense (numUnits[l] x numUnits[l-1]) matrix in row-major order
+    private final int[] numUnits;
+    private final int[] activationFunction;
+    private final double[][] weights;
+    private final double[][] unitInputBias;
+    private final double[][] activationSlope;
+    private final double[][] unitOutputScale;
+    private final double[][] unitOutputBias;
+
+    private final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return createScratch();
+        }
+    };
+
+    private final ThreadLocal<double[]> batchScratch = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[0];
+        }
+    };
+
+    private static FlintNeuralNet create(NnaDescription nna) throws IOException {
+        final int numLayers = nna.layers.size();
+        if (numLayers < 2) {
+            throw new IOException("Neural net must have at least 2 layers.");
+        }
+        final int[] numUnits = new int[numLayers];
+        final int[] activationFunction = new int[numLayers];
+        final double[][] weights = new double[numLayers][];
+        final double[][] unitInputBias = new double[numLayers][];
+        final double[][] activationSlope = new double[numLayers][];
+        final double[][] unitOutputScale = new double[numLayers][];
+        final double[][] unitOutputBias = new double[numLayers][];
+
+        for (int l = 0; l < numLayers; l++) {
+            final Map<String, String> layer = nna.layers.get(l);
+            numUnits[l] = getInt(layer, "NumUnits", -1);
+            if (numUnits[l] <= 0) {
+                throw new IOException("Missing or invalid 'NumUnits' in layer " + (l + 1) + ".");
+            }
+            checkFunction(layer, "InpFunc", "Sum_1", l);
+            checkFunction(layer, "OutFunc", "Linear", l);
+            activationFunction[l] = parseActivationFunction(layer.get("ActFunc"), l);
+            final double layerSlope = getDouble(layer, "ActSlope", 1.0);
+
+            final int numSourceUnits = l > 0 ? numUnits[l - 1] : 0;
+            weights[l] = new double[numUnits[l] * numSourceUnits];
+            unitInputBias[l] = new double[numUnits[l]];
+            activationSlope[l] = new double[numUnits[l]];
+            unitOutputScale[l] = new double[numUnits[l]];
+            unitOutputBias[l] = new double[numUnits[l]];
+            for (int u = 0; u < numUnits[l]; u++) {
+                final Map<String, String> unit = nna.units.get(unitKey(l + 1, u + 1));
+                if (unit == null) {
+                    throw new IOException("Missing unit (" + (l + 1) + "," + (u + 1) + ").");
+                }
+                unitInputBias[l][u] = getDouble(unit, "InpBias", 0.0);
+                activationSlope[l][u] = getDouble(unit, "ActSlope", layerSlope);
+                unitOutputScale[l][u] = getDouble(unit, "OutScale", 1.0);
+                unitOutputBias[l][u] = getDouble(unit, "OutBias", 0.0);
+                final List<double[]> connections = nna.connections.get(unitKey(l + 1, u + 1));
+                for (double[] connection : connections) {
+                    final int sourceLayer = (int) connection[0];
+                    final int sourceUnit = (int) connection[1];
+                    if (sourceLayer != l || sourceUnit < 1 || sourceUnit > numSourceUnits) {
+                        throw new IOException("Unsupported connection to unit (" + (l + 1) + "," + (u + 1) +
+                                              ") - only connections from the previous layer are supported.");
+                    }
+                    weights[l][u * numSourceUnits + sourceUnit - 1] += connection[2];
+                }
+            }
+        }
+        return new FlintNeuralNet(numUnits, activationFunction, weights, unitInputBias, activationSlope,
+                                  unitOutputScale, unitOutputBias);
+    }
+
+    private FlintNeuralNet(int[] numUnits, int[] activationFunction, double[][] weights, double[][] unitInputBias,
+                           double[][] activationSlope, double[][] unitOutputScale, double[][] unitOutputBias)
+            throws IOException {
+        if (activationFunction[0] != ACT_FUNC_IDENTITY) {
+            throw new IOException("Activation function of the input layer must be 'Identity'.");
+        }
+        this.numUnits = numUnits;
+        this.activationFunction = activationFunction;
+        this.weights = weights;
+        this.unitInputBias = unitInputBias;
+        this.activationSlope = activationSlope;
+        this.unitOutputScale = unitOutputScale;
+        this.unitOutputBias = unitOutputBias;
+
+        int units = 0;
+        for (int numLayerUnits : numUnits) {
+            units = Math.max(units, numLayerUnits);
+        }
+        numInputs = numUnits[0];
+        numOutputs = numUnits[numUnits.length - 1];
+        maxUnits = units;
+        inputScale = unitOutputScale[0];
+        inputBias = unitOutputBias[0];
+    }
+
+    /**
+     * Compiles a neural net in '.nna' format.
+     *
+     * @param reader - the reader providing the '.nna' file content
+     * @return the compiled net
+     * @throws IOException if the net cannot be read or uses unsupported features
+     */
+    public static FlintNeuralNet compile(Reader reader) throws IOException {
+        return create(NnaDescription.read(reader));
+    }
+
+    /**
+     * Restores a compiled neural net from its array representation (see {@link #toArray()}).
+     *
+     * @param values - the array representation of the net
+     * @return the compiled net
+     * @throws IOException if the array does not describe a valid net
+     */
+    public static FlintNeuralNet fromArray(double[] values) throws IOException {
+        try {
+            int pos = 0;
+            final int numLayers = (int) values[pos++];
+            if (numLayers < 2) {
+                throw new IOException("Neural net must have at least 2 layers.");
+            }
+            final int[] numUnits = new int[numLayers];
+            final int[] activationFunction = new int[numLayers];
+            for (int l = 0; l < numLayers; l++) {
+                numUnits[l] = (int) values[pos++];
+                if (numUnits[l] <= 0) {
+                    throw new IOException("Invalid number of units in layer " + (l + 1) + ".");
+                }
+            }
+            for (int l = 0; l < numLayers; l++) {
+                activationFunction[l] = (int) values[pos++];
+                if (activationFunction[l] < ACT_FUNC_IDENTITY || activationFunction[l] > ACT_FUNC_SIGMOID_2) {
+                    throw new IOException("Invalid activation function in layer " + (l + 1) + ".");
+                }
+            }
+            final double[][] weights = new double[numLayers][];
+            final double[][] unitInputBias = new double[numLayers][];
+            final double[][] activationSlope = new double[numLayers][];
+            final double[][] unitOutputScale = new double[numLayers][];
+            final double[][] unitOutputBias = new double[numLayers][];
+            for (int l = 0; l < numLayers; l++) {
+                final int numSourceUnits = l > 0 ? numUnits[l - 1] : 0;
+                weights[l] = copyOfRange(values, pos, numUnits[l] * numSourceUnits);
+                pos += weights[l].length;
+                unitInputBias[l] = copyOfRange(values, pos, numUnits[l]);
+                pos += numUnits[l];
+                activationSlope[l] = copyOfRange(values, pos, numUnits[l]);
+                pos += numUnits[l];
+                unitOutputScale[l] = copyOfRange(values, pos, numUnits[l]);
+                pos += numUnits[l];
+                unitOutputBias[l] = copyOfRange(values, pos, numUnits[l]);
+                pos += numUnits[l];
+            }
+            if (pos != values.length) {
+                throw new IOException("Invalid neural net array - unexpected length " + values.length + ".");
+            }
+            return new FlintNeuralNet(numUnits, activationFunction, weights, unitInputBias, activationSlope,
+                                      unitOutputScale, unitOutputBias);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Invalid neural net array - too short.", e);
+        }
+    }
+
+    /**
+     * Provides the array representation of this net, which can be restored by {@link #fromArray(double[])}.
+     * Layout: number of layers, units per layer, activation function per layer, and for each layer
+     * the weights, unit input biases, activation slopes, unit output scales and unit output biases.
+     *
+     * @return the array representation
+     */
+    public double[] toArray() {
+        final int numLayers = numUnits.length;
+        int length = 1 + 2 * numLayers;
+        for (int l = 0; l < numLayers; l++) {
+            length += weights[l].length + 4 * numUnits[l];
+        }
+        final double[] values = new double[length];
+        int pos = 0;
+        values[pos++] = numLayers;
+        for (int l = 0; l < numLayers; l++) {
+            values[pos++] = numUnits[l];
+        }
+        for (int l = 0; l < numLayers; l++) {
+            values[pos++] = activationFunction[l];
+        }
+        for (int l = 0; l < numLayers; l++) {
+            pos = append(weights[l], values, pos);
+            pos = append(unitInputBias[l], values, pos);
+            pos = append(activationSlope[l], values, pos);
+            pos = append(unitOutputScale[l], values, pos);
+            pos = append(unitOutputBias[l], values, pos);
+        }
+        return values;
+    }
+
+    public int getNumInputs() {
+        return numInputs;
+    }
+
+    public int getNumOutputs() {
+        return numOutputs;
+    }
+
+    /**
+     * Creates a scratch buffer for {@link #process(double[], double[], double[])}.
+     * A scratch buffer must not be used by more than one thread at a time.
+     *
+     * @return the scratch buffer
+     */
+    public double[] createScratch() {
+        return new double[2 * maxUnits];
+    }
+
+    /**
+     * Evaluates the net for one input vector, using a scratch buffer of the calling thread.
+     *
+     * @param in  - the input vector
+     * @param out - the output vector
+     */
+    public void process(double[] in, double[] out) {
+        process(in, out, scratch.get());
+    }
+
+    /**
+     * Evaluates the net for one input vector.
+     *
+     * @param in      - the input vector
+     * @param out     - the output vector
+     * @param scratch - a buffer obtained from {@link #createScratch()}
+     */
+    public void process(double[] in, double[] out, double[] scratch) {
+        int current = 0;
+        for (int i = 0; i < numInputs; i++) {
+            scratch[i] = inputScale[i] * in[i] + inputBias[i];
+        }
+        final int numLayers = numUnits.length;
+        for (int l = 1; l < numLayers; l++) {
+            final int sourceOffset = current * maxUnits;
+            final int targetOffset = (1 - current) * maxUnits;
+            final int numSourceUnits = numUnits[l - 1];
+            final double[] w = weights[l];
+            for (int u = 0; u < numUnits[l]; u++) {
+                double sum = unitInputBias[l][u];
+                final int rowOffset = u * numSourceUnits;
+                for (int k = 0; k < numSourceUnits; k++) {
+                    sum += w[rowOffset + k] * scratch[sourceOffset + k];
+                }
+                scratch[targetOffset + u] = output(l, u, sum);
+            }
+            current = 1 - current;
+        }
+        System.arraycopy(scratch, current * maxUnits, out, 0, numOutputs);
+    }
+
+    /**
+     * Evaluates the net for a batch of input vectors in one call. Each layer is computed as a dense matrix
+     * product over all input vectors. The results are identical to single evaluations by
+     * {@link #process(double[], double[])}.
+     *
+     * @param in    - the input vectors, n x numInputs in row-major order
+     * @param out   - the output vectors, n x numOutputs in row-major order
+     * @param n     - the number of input vectors
+     */
+    public void process(double[] in, double[] out, int n) {
+        final int bufferSize = n * maxUnits;
+        double[] buffer = batchScratch.get();
+        if (buffer.length < 2 * bufferSize) {
+            buffer = new double[2 * bufferSize];
+            batchScratch.set(buffer);
+        }
+
+        for (int j = 0; j < n; j++) {
+            final int inOffset = j * numInputs;
+            for (int i = 0; i < numInputs; i++) {
+                buffer[inOffset + i] = inputScale[i] * in[inOffset + i] + inputBias[i];
+            }
+        }
+        int current = 0;
+        final int numLayers = numUnits.length;
+        for (int l = 1; l < numLayers; l++) {
+            final int sourceOffset = current * bufferSize;
+            final int targetOffset = (1 - current) * bufferSize;
+            final int numSourceUnits = numUnits[l - 1];
+            final int numTargetUnits = numUnits[l];
+            final double[] w = weights[l];
+            for (int j = 0; j < n; j++) {
+                final int sourceRow = sourceOffset + j * numSourceUnits;
+                final int targetRow = targetOffset + j * numTargetUnits;
+                for (int u = 0; u < numTargetUnits; u++) {
+                    double sum = unitInputBias[l][u];
+                    final int rowOffset = u * numSourceUnits;
+                    for (int k = 0; k < numSourceUnits; k++) {
+                        sum += w[rowOffset + k] * buffer[sourceRow + k];
+                    }
+                    buffer[targetRow + u] = output(l, u, sum);
+                }
+            }
+            current = 1 - current;
+        }
+        System.arraycopy(buffer, current * bufferSize, out, 0, n * numOutputs);
+    }
+
+    private double output(int l, int u, double sum) {
+        final double activation;
+        switch (activationFunction[l]) {
+            case ACT_FUNC_SIGMOID_1:
+                activation = 1.0 / (1.0 + Math.exp(-activationSlope[l][u] * sum));
+                break;
+            case ACT_FUNC_SIGMOID_2:
+                activation = 2.0 / (1.0 + Math.exp(-activationSlope[l][u] * sum)) - 1.0;
+                break;
+            default:
+                activation = sum;
+        }
+        return unitOutputScale[l][u] * activation + unitOutputBias[l][u];
+    }
+
+    private static int parseActivationFunction(String name, int layerIndex) throws IOException {
+        if (name == null || name.equals("Identity")) {
+            return ACT_FUNC_IDENTITY;
+        } else if (name.equals("Sigmoid_1")) {
+            return ACT_FUNC_SIGMOID_1;
+        } else if (name.equals("Sigmoid_2")) {
+            return ACT_FUNC_SIGMOID_2;
+        }
+        throw new IOException("Unsupported activation function '" + name + "' in layer " + (layerIndex + 1) + ".");
+    }
+
+    private static void checkFunction(Map<String, String> layer, String key, String expected, int layerIndex)
+            throws IOException {
+        final String value = layer.get(key);
+        if (value != null && !value.equals(expected)) {
+            throw new IOException("Unsupported function '" + key + " = " + value + "' in layer " +
+                                  (layerIndex + 1) + ".");
+        }
+    }
+
+    private static int getInt(Map<String, String> section, String key, int defaultValue) throws IOException {
+        final String value = section.get(key);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid value for '" + key + "': " + value, e);
+        }
+    }
+
+    private static double getDouble(Map<String, String> section, String key, double defaultValue) throws IOException {
+        final String value = section.get(key);
+        try {
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid value for '" + key + "': " + value, e);
+        }
+    }
+
+    private static double[] copyOfRange(double[] values, int offset, int length) {
+        final double[] copy = new double[length];
+        System.arraycopy(values, offset, copy, 0, length);
+        return copy;
+    }
+
+    private static int append(double[] source, double[] values, int pos) {
+        System.arraycopy(source, 0, values, pos, source.length);
+        return pos + source.length;
+    }
+
+    private static String unitKey(int layer, int unit) {
+        return layer + "," + unit;
+    }
+
+    /**
+     * The plain content of a '.nna' file: layer sections, unit sections and unit connections.
+     */
+    private static class NnaDescription {
+
+        private final List<Map<String, String>> layers = new ArrayList<Map<String, String>>();
+        private final Map<String, Map<String, String>> units = new HashMap<String, Map<String, String>>();
+        private final Map<String, List<double[]>> connections = new HashMap<String, List<double[]>>();
+
+        static NnaDescription read(Reader reader) throws IOException {
+            final NnaDescription nna = new NnaDescription();
+            final Map<Integer, Map<String, String>> layerMap = new HashMap<Integer, Map<String, String>>();
+            final BufferedReader bufferedReader = new BufferedReader(reader);
+
+            Map<String, String> section = new HashMap<String, String>();
+            List<double[]> unitConnections = null;
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                final int commentIndex = line.indexOf(';');
+                if (commentIndex >= 0) {
+                    line = line.substring(0, commentIndex);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("[")) {
+                    section = new HashMap<String, String>();
+                    unitConnections = null;
+                    final String sectionName = line.substring(1, line.indexOf(']')).replace(" ", "");
+                    if (sectionName.startsWith("Layer(")) {
+                        layerMap.put(parseIndices(sectionName)[0], section);
+                    } else if (sectionName.startsWith("Unit(")) {
+                        final int[] indices = parseIndices(sectionName);
+                        final String key = unitKey(indices[0], indices[1]);
+                        unitConnections = new ArrayList<double[]>();
+                        nna.units.put(key, section);
+                        nna.connections.put(key, unitConnections);
+                    }
+                    continue;
+                }
+                final int equalsIndex = line.indexOf('=');
+                if (equalsIndex < 0) {
+                    throw new IOException("Invalid line in neural net file: " + line);
+                }
+                final String key = line.substring(0, equalsIndex).trim();
+                final String value = line.substring(equalsIndex + 1).trim();
+                if (key.startsWith("C(")) {
+                    if (unitConnections == null) {
+                        throw new IOException("Connection outside of unit section: " + line);
+                    }
+                    unitConnections.add(parseConnection(value));
+                } else {
+                    section.put(key, value);
+                }
+            }
+            for (int l = 1; l <= layerMap.size(); l++) {
+                final Map<String, String> layer = layerMap.get(l);
+                if (layer == null) {
+                    throw new IOException("Missing layer " + l + ".");
+                }
+                nna.layers.add(layer);
+            }
+            return nna;
+        }
+
+        private static int[] parseIndices(String sectionName) throws IOException {
+            final String[] tokens = sectionName.substring(sectionName.indexOf('(') + 1,
+                                                          sectionName.indexOf(')')).split(",");
+            try {
+                final int[] indices = new int[tokens.length];
+                for (int i = 0; i < tokens.length; i++) {
+                    indices[i] = Integer.parseInt(tokens[i].trim());
+                }
+                return indices;
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid section in neural net file: " + sectionName, e);
+            }
+        }
+
+        private static double[] parseConnection(String value) throws IOException {
+            final String[] tokens = value.split(",");
+            if (tokens.length != 3) {
+                throw new IOException("Invalid connection in neural net file: " + value);
+            }
+            try {
+                return new double[]{
+                        Integer.parseInt(tokens[0].trim()),
+                        Integer.parseInt(tokens[1].trim()),
+                        Double.parseDouble(tokens[2].trim())
+                };
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid connection in neural net file: " + value, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.esa.beam.glint.operators;
+
+import java.awt.Rectangle;
+
+/**
+ * This class provides the nodes for the bilinear interpolation of smooth per-pixel quantities within a tile.
+ * <p/>
+ * The nodes are placed at every cellSize-th image row and column (the MERIS tie-points if cellSize is the
+ * tie-point subsampling) and at the tile edges. Nodes are numbered row by row, cells (the rectangles between
+ * four neighbouring nodes) likewise.
+ */
+class FlintNodeGrid {
+
+    private final int[] nodeXs;
+    private final int[] nodeYs;
+    private final int[] cellOfX;
+    private final int[] cellOfY;
+    private final int tileX;
+    private final int tileY;
+
+    FlintNodeGrid(Rectangle rectangle, int cellSize) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("Cell size must be at least 1.");
+        }
+        tileX = rectangle.x;
+        tileY = rectangle.y;
+        nodeXs = createNodes(rectangle.x, rectangle.width, cellSize);
+        nodeYs = createNodes(rectangle.y, rectangle.height, cellSize);
+        cellOfX = createCellIndices(nodeXs, rectangle.x, rectangle.width);
+        cellOfY = createCellIndices(nodeYs, rectangle.y, rectangle.height);
+    }
+
+    int getNumberOfNodes() {
+        return nodeXs.length * nodeYs.length;
+    }
+
+    int getNumberOfCells() {
+        return Math.max(1, nodeXs.length - 1) * Math.max(1, nodeYs.length - 1);
+    }
+
+    int getNodeX(int node) {
+        return nodeXs[node % nodeXs.length];
+    }
+
+    int getNodeY(int node) {
+        return nodeYs[node / nodeXs.length];
+    }
+
+    int getCell(int x, int y) {
+        return cellOfY[y - tileY] * Math.max(1, nodeXs.length - 1) + cellOfX[x - tileX];
+    }
+
+    //
+    // This method provides a corner node of the cell containing image pixel (x, y).
+    // corner: 0 upper left, 1 upper right, 2 lower left, 3 lower right
+    //
+    int getCellNode(int x, int y, int corner) {
+        final int cx = cellOfX[x - tileX];
+        final int cy = cellOfY[y - tileY];
+        final int nx = (corner & 1) != 0 ? Math.min(cx + 1, nodeXs.length - 1) : cx;
+        final int ny = (corner & 2) != 0 ? Math.min(cy + 1, nodeYs.length - 1) : cy;
+        return ny * nodeXs.length + nx;
+    }
+
+    //
+    // These methods provide the bilinear interpolation weights of the right and the lower cell nodes.
+    //
+    double getWeightX(int x) {
+        final int cx = cellOfX[x - tileX];
+        return getWeight(x, nodeXs[cx], nodeXs[Math.min(cx + 1, nodeXs.length - 1)]);
+    }
+
+    double getWeightY(int y) {
+        final int cy = cellOfY[y - tileY];
+        return getWeight(y, nodeYs[cy], nodeYs[Math.min(cy + 1, nodeYs.length - 1)]);
+    }
+
+    private static double getWeight(int p, int p0, int p1) {
+        return p1 > p0 ? (double) (p - p0) / (p1 - p0) : 0.0;
+    }
+
+    //
+    // nodes at the multiples of cellSize inside [start, start + length), plus the first and last pixel
+    //
+    private static int[] createNodes(int start, int length, int cellSize) {
+        final int end = start + length - 1;
+        final int firstMultiple = ((start + cellSize - 1) / cellSize) * cellSize;
+        int count = 1;
+        for (int p = firstMultiple; p < end; p += cellSize) {
+            if (p > start) {
+                count++;
+            }
+        }
+        if (end > start) {
+            count++;
+        }
+        final int[] nodes = new int[count];
+        int k = 0;
+        nodes[k++] = start;
+        for (int p = firstMultiple; p < end; p += cellSize) {
+            if (p > start) {
+                nodes[k++] = p;
+            }
+        }
+        if (end > start) {
+            nodes[k] = end;
+        }
+        return nodes;
+    }
+
+    private static int[] createCellIndices(int[] nodes, int start, int length) {
+        final int[] cellIndices = new int[length];
+        int cell = 0;
+        for (int i = 0; i < length; i++) {
+            while (cell < nodes.length - 2 && start + i >= nodes[cell + 1]) {
+                cell++;
+            }
+            cellIndices[i] = cell;
+        }
+        return cellIndices;
+    }
+}
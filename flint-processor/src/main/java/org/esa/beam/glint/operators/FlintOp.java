@@ -5,6 +5,7 @@ import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.FlagCoding;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.RasterDataNode;
 import org.esa.beam.framework.gpf.Operator;
 import org.esa.beam.framework.gpf.OperatorException;
 import org.esa.beam.framework.gpf.OperatorSpi;
@@ -18,6 +19,14 @@ import org.esa.beam.util.ProductUtils;
 import org.esa.beam.util.logging.BeamLogManager;
 
 import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -92,14 +101,66 @@ public class FlintOp extends Operator {
                label = "Normalized Radiance (Final Result)")
     boolean writeNormalizedRadianceFinal;
 
+    @Parameter(defaultValue = "false",
+               label = "Use precomputed windspeed/Gauss parameter grid",
+               description = "If set, the windspeed neural net is evaluated once on a (windspeed, cos(sun zenith)) " +
+                             "grid, and the Gauss parameters are interpolated from this grid.")
+    boolean useGaussParsGrid;
+
+    @Parameter(defaultValue = "false",
+               label = "Use precomputed transmission LUT",
+               description = "If set, the transmissions at 3.7um and 1.6um are interpolated from a 2D LUT " +
+                             "over (water vapour, airmass) instead of the exact k-term sum.")
+    boolean useTransmissionLut;
+
+    @Parameter(defaultValue = "101", interval = "[21,401]",
+               label = "Transmission LUT size",
+               description = "Number of LUT nodes per axis (water vapour, airmass). The max. interpolation error " +
+                             "at 3.7um is ~7e-4 for 21 nodes, ~3e-5 for 101 and ~2e-6 for 401 nodes; larger LUTs " +
+                             "gain nothing at the float precision of the transmissions.")
+    int transmissionLutSize;
+
+    @Parameter(defaultValue = "false",
+               label = "Use adaptive windspeed search",
+               description = "If set, the windspeed LUT of the geometrical conversion is searched coarse-to-fine " +
+                             "instead of evaluating all 151 LUT windspeeds per pixel.")
+    boolean useAdaptiveWindspeedSearch;
+
+    @Parameter(defaultValue = "10", interval = "[1,150]",
+               label = "Adaptive windspeed search step",
+               description = "LUT index step of the coarse sweep of the adaptive windspeed search.")
+    int adaptiveWindspeedSearchStep;
+
+    @Parameter(defaultValue = "false",
+               label = "Interpolate radiance curves between geometry nodes",
+               description = "If set, the simulated radiance curves of the geometrical conversion are computed " +
+                             "on geometry nodes only and bilinearly interpolated for the pixels in between.")
+    boolean useRadianceCurveGrid;
+
+    @Parameter(defaultValue = "0", interval = "[0,1024]",
+               label = "Radiance curve cell size",
+               description = "Distance of the geometry nodes in pixels (0: MERIS tie-point subsampling).")
+    int radianceCurveCellSize;
+
+    @Parameter(defaultValue = "false",
+               label = "Compute water vapour at reduced resolution",
+               description = "If set, the water vapour is computed on a subsampled grid and bilinearly " +
+                             "interpolated. Pixels with a deviating MERIS radiance ratio are computed exactly.")
+    boolean useReducedResolutionWaterVapour;
+
+    @Parameter(defaultValue = "0", interval = "[0,1024]",
+               label = "Water vapour cell size",
+               description = "Distance of the water vapour grid nodes in pixels (0: MERIS tie-point subsampling).")
+    int waterVapourCellSize;
+
+    @Parameter(label = "Geometrical conversion inversion table",
+               description = "If given, the geometrical conversion is interpolated from this table " +
+                             "(created by FlintInversionTable) instead of using the windspeed neural net.")
+    File inversionTableFile;
+
     private static final String INVALID_EXPRESSION = "l1_flags_M.INVALID";
     private Band invalidBand;
 
-    /* AATSR L1 Cloud Flags (just the ones needed) */
-    final int AATSR_L1_CF_LAND = 0;
-    final int AATSR_L1_CF_CLOUDY = 1;
-    final int AATSR_L1_CF_SUNGLINT = 2;
-
     public static final String CONFID_NADIR_FLAGS = "confid_flags_nadir_S";
     public static final String CONFID_FWARD_FLAGS = "confid_flags_fward_S";
     public static final String CLOUD_NADIR_FLAGS = "cloud_flags_nadir_S";
@@ -134,8 +195,11 @@ public class FlintOp extends Operator {
     private float solarIrradiance37;
 
     private Logger logger;
-    private Tile vaMerisTileComplete;
-    private Tile vaAatsrNadirTileComplete;
+    private FlintTiePointViewAzimuthCorrection merisViewAzimuthCorrection;
+    private FlintViewAzimuthCorrection aatsrViewAzimuthCorrection;
+    private FlintProcessingPlan processingPlan;
+    private Band[] outputBands;
+    private FlintInversionTable inversionTable;
 
 
     public void initialize() throws OperatorException {
@@ -149,14 +213,57 @@ public class FlintOp extends Operator {
         // todo: check if we need sth. like this!
 //        collocateProduct.setPreferredTileSize(400, 400);
 
+        processingPlan = createProcessingPlan();
+        logger.info("Flint processing steps: " + processingPlan);
+        for (String rasterName : getRequiredSourceRasterNames(processingPlan)) {
+            if (!collocateProduct.containsRasterDataNode(rasterName)) {
+                throw new OperatorException("Source product does not contain raster '" + rasterName + "'.");
+            }
+        }
+
         try {
             solarPart37.loadFlintAuxData();
             solarPart37WaterVapour.loadFlintAuxData();
             geometricalConversion.loadFlintAuxData();
+            if (useGaussParsGrid) {
+                geometricalConversion.createGaussParsGrid(FlintGaussParsGrid.DEFAULT_NUMBER_OF_COS_SUN_ZENITHS);
+            }
+            if (useTransmissionLut) {
+                final FlintTransmissionLut transmissionLut = solarPart37.createTransmissionLut(transmissionLutSize);
+                logger.info("Transmission LUT (" + transmissionLutSize + " x " + transmissionLutSize +
+                            ") created - max. interpolation error 3.7um: " +
+                            transmissionLut.getMaximumInterpolationError37() + ", 1.6um: " +
+                            transmissionLut.getMaximumInterpolationError16());
+            }
+            if (useAdaptiveWindspeedSearch) {
+                geometricalConversion.setAdaptiveWindspeedSearch(adaptiveWindspeedSearchStep);
+                logger.info("Adaptive windspeed search (step " + adaptiveWindspeedSearchStep +
+                            ") - deviation from LUT search: " +
+                            geometricalConversion.getAdaptiveSearchDeviation(adaptiveWindspeedSearchStep));
+            }
         } catch (Exception e) {
             throw new OperatorException("Failed to load flint auxdata:\n" + e.getMessage());
         }
+        // the table is only used by the geometrical conversion, opening it reads the whole file (checksum)
+        if (inversionTableFile != null && processingPlan.contains(FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION)) {
+            try {
+                inversionTable = FlintInversionTable.open(inversionTableFile);
+            } catch (IOException e) {
+                throw new OperatorException("Failed to load inversion table " + inversionTableFile + ":\n" +
+                                            e.getMessage(), e);
+            }
+        }
         createTargetProduct();
+        if (needsMerisGeometry(processingPlan)) {
+            final int tiePointSubSampling =
+                    Math.max(1, (int) collocateProduct.getTiePointGrid("sun_zenith").getSubSamplingX());
+            if (useRadianceCurveGrid && radianceCurveCellSize == 0) {
+                radianceCurveCellSize = tiePointSubSampling;
+            }
+            if (useReducedResolutionWaterVapour && waterVapourCellSize == 0) {
+                waterVapourCellSize = tiePointSubSampling;
+            }
+        }
 
         // get solar irradiance for day of year
         String startTime = collocateProduct.getMetadataRoot().getElement(
@@ -167,17 +274,117 @@ public class FlintOp extends Operator {
 
         solarIrradiance37 = preparation.computeSolarIrradiance37(dayOfYear);
 
-        // correction of azimuth discontinuity:
-        // set up tiles for MERIS and AATSR which cover the whole scene...
-        int sceneWidth = collocateProduct.getSceneRasterWidth();
-        int sceneHeight = collocateProduct.getSceneRasterHeight();
-        Rectangle rect = new Rectangle(0, 0, sceneWidth, sceneHeight);
-        vaMerisTileComplete = getSourceTile(collocateProduct.getTiePointGrid("view_azimuth"), rect);
-        vaAatsrNadirTileComplete = getSourceTile(collocateProduct.getBand("view_azimuth_nadir_S"), rect);
+        // correction of azimuth discontinuity for MERIS and AATSR:
+        // MERIS is corrected on the tie-point grid, AATSR on demand for blocks of full-width rows
+        if (needsMerisGeometry(processingPlan)) {
+            merisViewAzimuthCorrection =
+                    new FlintTiePointViewAzimuthCorrection(collocateProduct.getTiePointGrid("view_azimuth"));
+        }
+        if (processingPlan.contains(FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION)) {
+            aatsrViewAzimuthCorrection =
+                    createViewAzimuthCorrection(collocateProduct.getBand("view_azimuth_nadir_S"));
+        }
+    }
+
+    private FlintViewAzimuthCorrection createViewAzimuthCorrection(final RasterDataNode viewAzimuthRaster) {
+        final int sceneWidth = collocateProduct.getSceneRasterWidth();
+        final int sceneHeight = collocateProduct.getSceneRasterHeight();
+        final FlintViewAzimuthCorrection.RowSource rowSource = new FlintViewAzimuthCorrection.RowSource() {
+            @Override
+            public void readRows(int y, int height, float[] samples) {
+                final Tile tile = getSourceTile(viewAzimuthRaster, new Rectangle(0, y, sceneWidth, height));
+                int i = 0;
+                for (int row = y; row < y + height; row++) {
+                    for (int x = 0; x < sceneWidth; x++) {
+                        samples[i++] = tile.getSampleFloat(x, row);
+                    }
+                }
+            }
+        };
+        return new FlintViewAzimuthCorrection(rowSource, preparation, sceneWidth, sceneHeight,
+                                              FlintViewAzimuthCorrection.DEFAULT_BLOCK_HEIGHT,
+                                              FlintViewAzimuthCorrection.DEFAULT_MAX_CACHED_BLOCKS);
+    }
+
+    //
+    // This method provides the names of the rasters of the collocated source product read by this operator
+    // for the given processing plan (must match initialize and computeTileStack). GlintMasterOp collocates
+    // only these rasters. MERIS bands have the suffix '_M', AATSR rasters the suffix '_S', MERIS tie-point
+    // grids no suffix (default renaming of CollocateOp).
+    //
+    static String[] getRequiredSourceRasterNames(FlintProcessingPlan processingPlan) {
+        final List<String> rasterNames = new ArrayList<String>();
+        // pre-pass and invalid pixel expression
+        rasterNames.addAll(Arrays.asList("l1_flags_M", "view_elev_nadir_S", "sun_elev_nadir_S",
+                                         "btemp_nadir_0370_S", CLOUD_NADIR_FLAGS));
+        if (needsMerisGeometry(processingPlan)) {
+            rasterNames.addAll(Arrays.asList("sun_zenith", "view_zenith", "sun_azimuth", "view_azimuth"));
+        }
+        if (processingPlan.contains(FlintProcessingPlan.Step.WATER_VAPOUR) ||
+            processingPlan.contains(FlintProcessingPlan.Step.AMBIGUITY_REDUCTION)) {
+            rasterNames.addAll(Arrays.asList("zonal_wind", "merid_wind"));
+        }
+        if (processingPlan.contains(FlintProcessingPlan.Step.WATER_VAPOUR)) {
+            rasterNames.addAll(Arrays.asList("radiance_14_M", "radiance_15_M"));
+        }
+        if (processingPlan.contains(FlintProcessingPlan.Step.TRANSMISSION_16)) {
+            rasterNames.add("reflec_nadir_1600_S");
+        }
+        if (processingPlan.contains(FlintProcessingPlan.Step.THERMAL_EXTRAPOLATION)) {
+            rasterNames.addAll(Arrays.asList("btemp_nadir_1100_S", "btemp_nadir_1200_S"));
+        }
+        if (processingPlan.contains(FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION)) {
+            rasterNames.addAll(Arrays.asList("sun_azimuth_nadir_S", "view_azimuth_nadir_S"));
+        }
+        return rasterNames.toArray(new String[rasterNames.size()]);
+    }
+
+    // the MERIS sun and view geometry is used by the water vapour and the geometrical conversion
+    private static boolean needsMerisGeometry(FlintProcessingPlan processingPlan) {
+        return processingPlan.contains(FlintProcessingPlan.Step.WATER_VAPOUR) ||
+               processingPlan.contains(FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION);
+    }
+
+    //
+    // This method determines the algorithm steps needed for the requested target bands
+    //
+    FlintProcessingPlan createProcessingPlan() {
+        return createProcessingPlan(getSelectedOutputBands());
+    }
+
+    static FlintProcessingPlan createProcessingPlan(Set<FlintOutputBand> outputBands) {
+        final Set<FlintProcessingPlan.Step> requestedSteps = EnumSet.noneOf(FlintProcessingPlan.Step.class);
+        for (FlintOutputBand outputBand : outputBands) {
+            requestedSteps.add(outputBand.getStep());
+        }
+        return FlintProcessingPlan.create(requestedSteps);
+    }
+
+    //
+    // This method provides the output bands selected by the write* parameters
+    //
+    Set<FlintOutputBand> getSelectedOutputBands() {
+        final Set<FlintOutputBand> outputBands = EnumSet.noneOf(FlintOutputBand.class);
+        addIf(writeWaterVapour, FlintOutputBand.WATER_VAPOUR, outputBands);
+        addIf(writeTransmission37, FlintOutputBand.TRANSMISSION_37, outputBands);
+        addIf(writeTransmission16, FlintOutputBand.TRANSMISSION_16, outputBands);
+        addIf(writeThermalPart37, FlintOutputBand.RADIANCE_THERMAL_PART_37, outputBands);
+        addIf(writeSolarPart37, FlintOutputBand.SOLAR_PART_37, outputBands);
+        addIf(writeSolarPart37AatsrUnits, FlintOutputBand.SOLAR_PART_37_AATSR_UNITS, outputBands);
+        addIf(writeRadiance1, FlintOutputBand.RADIANCE1, outputBands);
+        addIf(writeRadiance2, FlintOutputBand.RADIANCE2, outputBands);
+        addIf(writeEffectiveWindspeed1, FlintOutputBand.WINDSPEED1, outputBands);
+        addIf(writeEffectiveWindspeed2, FlintOutputBand.WINDSPEED2, outputBands);
+        addIf(writeNumberEffectiveWindspeeds, FlintOutputBand.NUMBER_WINDSPEEDS, outputBands);
+        addIf(writeEffectiveWindspeedFinal, FlintOutputBand.WINDSPEED_FINAL, outputBands);
+        addIf(writeNormalizedRadianceFinal, FlintOutputBand.RADIANCE_FINAL, outputBands);
+        return outputBands;
+    }
 
-        // correct azimuths in these tiles for later usage...
-        preparation.correctViewAzimuthLinear(vaMerisTileComplete, rect);
-        preparation.correctViewAzimuthLinear(vaAatsrNadirTileComplete, rect);
+    static void addIf(boolean selected, FlintOutputBand outputBand, Set<FlintOutputBand> outputBands) {
+        if (selected) {
+            outputBands.add(outputBand);
+        }
     }
 
     //
@@ -204,65 +411,16 @@ public class FlintOp extends Operator {
     }
 
     private void setTargetBands() {
-        // 'debug' bands: intermediate results part 1
-        // todo: perhaps remove later
-        if (writeWaterVapour) {
-            Band resultStep1b1Band = targetProduct.addBand(STEP_1b1_RESULT_NAME, ProductData.TYPE_FLOAT32);
-            resultStep1b1Band.setUnit("1/sr");
-        }
-        if (writeTransmission37) {
-            targetProduct.addBand(STEP_1b2_RESULT1_NAME, ProductData.TYPE_FLOAT32);
-        }
-        if (writeTransmission16) {
-            targetProduct.addBand(STEP_1b2_RESULT2_NAME, ProductData.TYPE_FLOAT32);
-        }
-        if (writeThermalPart37) {
-            Band result2Step1cBand = targetProduct.addBand(STEP_1c_RESULT2_NAME, ProductData.TYPE_FLOAT32);
-            result2Step1cBand.setUnit("1/sr");
-        }
-        if (writeSolarPart37) {
-            Band result1Step1dBand = targetProduct.addBand(STEP_1d_RESULT1_NAME, ProductData.TYPE_FLOAT32);
-            result1Step1dBand.setUnit("1/sr");
-        }
-        if (writeSolarPart37AatsrUnits) {
-            Band result2Step1dBand = targetProduct.addBand(STEP_1d_RESULT2_NAME, ProductData.TYPE_FLOAT32);
-            result2Step1dBand.setUnit("%");
-        }
-
-        // 'debug' bands: intermediate results part 2
-        if (writeRadiance1) {
-            Band resultRadiance1Band = targetProduct.addBand(RESULT_RADIANCE1_NAME, ProductData.TYPE_FLOAT32);
-            resultRadiance1Band.setUnit("1/sr");
-        }
-        if (writeRadiance2) {
-            Band resultRadiance2Band = targetProduct.addBand(RESULT_RADIANCE2_NAME, ProductData.TYPE_FLOAT32);
-            resultRadiance2Band.setUnit("1/sr");
-        }
-        if (writeEffectiveWindspeed1) {
-            Band resultWindspeed1Band = targetProduct.addBand(RESULT_WINDSPEED1_NAME, ProductData.TYPE_FLOAT32);
-            resultWindspeed1Band.setUnit("m/s");
-        }
-        if (writeEffectiveWindspeed2) {
-            Band resultWindspeed2Band = targetProduct.addBand(RESULT_WINDSPEED2_NAME, ProductData.TYPE_FLOAT32);
-            resultWindspeed2Band.setUnit("m/s");
-        }
-        if (writeNumberEffectiveWindspeeds) {
-            targetProduct.addBand(RESULT_NUMBERWINDSPEEDS_NAME, ProductData.TYPE_INT16);
-        }
-
-        // final result bands:
-        if (writeEffectiveWindspeedFinal) {
-            Band merisWindspeedFinalBand = targetProduct.addBand(RESULT_WINDSPEED_FINAL_NAME, ProductData.TYPE_FLOAT32);
-            merisWindspeedFinalBand.setUnit("m/s");
-        }
-        if (writeNormalizedRadianceFinal) {
-            Band merisRadianceFinalBand = targetProduct.addBand(RESULT_RADIANCE_FINAL_NAME, ProductData.TYPE_FLOAT32);
-            merisRadianceFinalBand.setUnit("1/sr");
+        // the target bands are bound to their output slots once, so that computeTileStack
+        // does not need any band name lookups
+        outputBands = new Band[FlintOutputBand.values().length];
+        for (FlintOutputBand outputBand : getSelectedOutputBands()) {
+            final Band band = targetProduct.addBand(outputBand.getBandName(), outputBand.getDataType());
+            if (outputBand.getUnit() != null) {
+                band.setUnit(outputBand.getUnit());
+            }
+            outputBands[outputBand.ordinal()] = band;
         }
-
-        // debug output for view azimuth correction
-//        Band vaAatsrBand = targetProduct.addBand("va_aatsr_corr", ProductData.TYPE_FLOAT32);
-//        Band vaMerisBand = targetProduct.addBand("va_meris_corr", ProductData.TYPE_FLOAT32);
     }
 
     private void setFlagBands() {
@@ -289,201 +447,317 @@ public class FlintOp extends Operator {
     }
 
     @Override
-    public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
-        Rectangle rectangle = targetTile.getRectangle();
-
-        if (targetBand.isFlagBand()) {
-            // no computations
-            return;
-        }
+    public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
 
         pm.beginTask("Processing frame...", rectangle.height);
 
         try {
-            Tile szMerisTile = getSourceTile(collocateProduct.getTiePointGrid("sun_zenith"), rectangle);
-            Tile vzMerisTile = getSourceTile(collocateProduct.getTiePointGrid("view_zenith"), rectangle);
-            Tile saMerisTile = getSourceTile(collocateProduct.getTiePointGrid("sun_azimuth"), rectangle);
-            Tile zonalWindTile = getSourceTile(collocateProduct.getTiePointGrid("zonal_wind"), rectangle);
-            Tile meridWindTile = getSourceTile(collocateProduct.getTiePointGrid("merid_wind"), rectangle);
-
-            Tile seAatsrNadirTile = getSourceTile(collocateProduct.getBand("sun_elev_nadir_S"), rectangle);
-            Tile veAatsrNadirTile = getSourceTile(collocateProduct.getBand("view_elev_nadir_S"), rectangle);
-            Tile saAatsrNadirTile = getSourceTile(collocateProduct.getBand("sun_azimuth_nadir_S"), rectangle);
-            Tile cfAatsrNadirTile = getSourceTile(collocateProduct.getBand("cloud_flags_nadir_S"), rectangle);
-
-            Tile merisRad14Tile = getSourceTile(collocateProduct.getBand("radiance_14_M"), rectangle);
-            Tile merisRad15Tile = getSourceTile(collocateProduct.getBand("radiance_15_M"), rectangle);
-            Tile aatsrReflNadir1600Tile = getSourceTile(collocateProduct.getBand("reflec_nadir_1600_S"), rectangle);
-            Tile aatsrBTNadir0370Tile = getSourceTile(collocateProduct.getBand("btemp_nadir_0370_S"), rectangle);
-            Tile aatsrBTNadir1100Tile = getSourceTile(collocateProduct.getBand("btemp_nadir_1100_S"), rectangle);
-            Tile aatsrBTNadir1200Tile = getSourceTile(collocateProduct.getBand("btemp_nadir_1200_S"), rectangle);
-
-            Tile isInvalid = getSourceTile(invalidBand, rectangle);
-            FlintGeometricalConversion conversion = geometricalConversion.clone();
-            FlintSolarPart37WaterVapour waterVapour = solarPart37WaterVapour.clone();
+            // the steps to be executed for the requested target bands (see createProcessingPlan)
+            final boolean doThermalExtrapolation = processingPlan.contains(FlintProcessingPlan.Step.THERMAL_EXTRAPOLATION);
+            final boolean doWaterVapour = processingPlan.contains(FlintProcessingPlan.Step.WATER_VAPOUR);
+            final boolean doTransmission37 = processingPlan.contains(FlintProcessingPlan.Step.TRANSMISSION_37);
+            final boolean doTransmission16 = processingPlan.contains(FlintProcessingPlan.Step.TRANSMISSION_16);
+            final boolean doBTConversion = processingPlan.contains(FlintProcessingPlan.Step.BT_CONVERSION);
+            final boolean doSolarPart = processingPlan.contains(FlintProcessingPlan.Step.SOLAR_PART);
+            final boolean doGeometricalConversion =
+                    processingPlan.contains(FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION);
+            final boolean doAmbiguityReduction = processingPlan.contains(FlintProcessingPlan.Step.AMBIGUITY_REDUCTION);
+            final boolean needsMerisGeometry = needsMerisGeometry(processingPlan);
+
+            // the results are collected in primitive arrays (one per requested output slot) and written
+            // to the target tiles at the end. Pixels which are invalid or not useful keep the value 0.
+            final int numPixels = rectangle.width * rectangle.height;
+            final float[][] outputs = new float[outputBands.length][];
+            for (int slot = 0; slot < outputBands.length; slot++) {
+                if (outputBands[slot] != null && targetTiles.containsKey(outputBands[slot])) {
+                    outputs[slot] = new float[numPixels];
+                }
+            }
+
+            // pre-pass: collect the pixels to be processed. Most pixels of a scene are land, invalid, outside
+            // of the AATSR swath or too cold at 3.7um, so the processing cost scales with the useful pixels only.
+            final float[] veAatsrNadir = getSourceSamples(collocateProduct.getBand("view_elev_nadir_S"), rectangle);
+            final float[] aatsrBTNadir0370 = getSourceSamples(collocateProduct.getBand("btemp_nadir_0370_S"), rectangle);
+            final int[] cfAatsrNadir =
+                    getSourceTile(collocateProduct.getBand("cloud_flags_nadir_S"), rectangle).getSamplesInt();
+            final int[] isInvalid = getSourceTile(invalidBand, rectangle).getSamplesInt();
+            final int[] pixelIndices = new int[numPixels];
+            final int[] rowStarts = new int[rectangle.height + 1];
+            final int numUsefulPixels = preparation.collectUsefulPixels(cfAatsrNadir, veAatsrNadir, aatsrBTNadir0370,
+                                                                        isInvalid, rectangle.width, rectangle.height,
+                                                                        pixelIndices, rowStarts);
+            if (numUsefulPixels == 0) {
+                // nothing to compute: all target samples get the fill value 0
+                final float[] fillSamples = new float[numPixels];
+                for (int slot = 0; slot < outputBands.length; slot++) {
+                    if (outputs[slot] != null) {
+                        targetTiles.get(outputBands[slot]).setSamples(fillSamples);
+                    }
+                }
+                return;
+            }
+
+            // read the needed source tiles into primitive arrays once (row-major, rectangle.width x rectangle.height)
+            final float[] szMeris = needsMerisGeometry ?
+                                    getSourceSamples(collocateProduct.getTiePointGrid("sun_zenith"), rectangle) : null;
+            final float[] vzMeris = needsMerisGeometry ?
+                                    getSourceSamples(collocateProduct.getTiePointGrid("view_zenith"), rectangle) : null;
+            final float[] saMeris = needsMerisGeometry ?
+                                    getSourceSamples(collocateProduct.getTiePointGrid("sun_azimuth"), rectangle) : null;
+            final boolean needsWinds = doWaterVapour || doAmbiguityReduction;
+            final float[] zonalWinds = needsWinds ?
+                                       getSourceSamples(collocateProduct.getTiePointGrid("zonal_wind"), rectangle) : null;
+            final float[] meridWinds = needsWinds ?
+                                       getSourceSamples(collocateProduct.getTiePointGrid("merid_wind"), rectangle) : null;
+
+            final float[] seAatsrNadir = getSourceSamples(collocateProduct.getBand("sun_elev_nadir_S"), rectangle);
+            final float[] saAatsrNadir = doGeometricalConversion ?
+                                         getSourceSamples(collocateProduct.getBand("sun_azimuth_nadir_S"), rectangle) :
+                                         null;
+
+            final float[] merisRad14 = doWaterVapour ?
+                                       getSourceSamples(collocateProduct.getBand("radiance_14_M"), rectangle) : null;
+            final float[] merisRad15 = doWaterVapour ?
+                                       getSourceSamples(collocateProduct.getBand("radiance_15_M"), rectangle) : null;
+            final float[] aatsrReflNadir1600 = doTransmission16 ?
+                                               getSourceSamples(collocateProduct.getBand("reflec_nadir_1600_S"),
+                                                                rectangle) : null;
+            final float[] aatsrBTNadir1100 = doThermalExtrapolation ?
+                                             getSourceSamples(collocateProduct.getBand("btemp_nadir_1100_S"),
+                                                              rectangle) : null;
+            final float[] aatsrBTNadir1200 = doThermalExtrapolation ?
+                                             getSourceSamples(collocateProduct.getBand("btemp_nadir_1200_S"),
+                                                              rectangle) : null;
+
+            final float[][] merisNormalizedRadianceResultMatrix = new float[2][2];
+            final float[] finalResultWindspeedRadiance = new float[2];
+
+            final float[] waterVapourData = outputs[FlintOutputBand.WATER_VAPOUR.ordinal()];
+            final float[] trans37Data = outputs[FlintOutputBand.TRANSMISSION_37.ordinal()];
+            final float[] trans16Data = outputs[FlintOutputBand.TRANSMISSION_16.ordinal()];
+            final float[] radThermalPart37Data = outputs[FlintOutputBand.RADIANCE_THERMAL_PART_37.ordinal()];
+            final float[] solarPart37Data = outputs[FlintOutputBand.SOLAR_PART_37.ordinal()];
+            final float[] solarPart37AatsrUnitsData = outputs[FlintOutputBand.SOLAR_PART_37_AATSR_UNITS.ordinal()];
+            final float[] numberWindspeedsData = outputs[FlintOutputBand.NUMBER_WINDSPEEDS.ordinal()];
+            final float[] windspeed1Data = outputs[FlintOutputBand.WINDSPEED1.ordinal()];
+            final float[] windspeed2Data = outputs[FlintOutputBand.WINDSPEED2.ordinal()];
+            final float[] radiance1Data = outputs[FlintOutputBand.RADIANCE1.ordinal()];
+            final float[] radiance2Data = outputs[FlintOutputBand.RADIANCE2.ordinal()];
+            final float[] windspeedFinalData = outputs[FlintOutputBand.WINDSPEED_FINAL.ordinal()];
+            final float[] radianceFinalData = outputs[FlintOutputBand.RADIANCE_FINAL.ordinal()];
+
+            // simulated radiance curves of step 2.a interpolated between geometry nodes (see useRadianceCurveGrid)
+            final FlintRadianceCurveGrid radianceCurveGrid =
+                    useRadianceCurveGrid && doGeometricalConversion ?
+                    createRadianceCurveGrid(rectangle, szMeris, vzMeris, saAatsrNadir) : null;
+            final double[] radianceCurve = new double[FlintGeometricalConversion.NUMBER_OF_LUT_WINDSPEEDS];
+            // water vapour of step 1.b.1 interpolated between grid nodes (see useReducedResolutionWaterVapour)
+            final FlintWaterVapourGrid waterVapourGrid =
+                    useReducedResolutionWaterVapour && doWaterVapour ?
+                    createWaterVapourGrid(rectangle, zonalWinds, meridWinds, saMeris, vzMeris, szMeris,
+                                          merisRad14, merisRad15) : null;
+
+            // MERIS azimuth differences and water vapour (step 1.b.1) are computed row by row for all useful pixels
+            // of a row, the water vapour NN is evaluated in batches
+            final float[] merisAzimuthDifferences = needsMerisGeometry ? new float[numPixels] : null;
+            final float[] waterVapours = doWaterVapour ?
+                                         (waterVapourData != null ? waterVapourData : new float[numPixels]) : null;
+            // transmissions (step 1.b.2) are computed row by row for all useful pixels of a row
+            final boolean doTransmission = doTransmission37 || doTransmission16;
+            final float[] rowWaterVapours = doTransmission ? new float[rectangle.width] : null;
+            final float[] rowSunZeniths = doTransmission ? new float[rectangle.width] : null;
+            final float[] rowViewZeniths = doTransmission ? new float[rectangle.width] : null;
+            final float[] rowTrans37 = doTransmission ? new float[rectangle.width] : null;
+            final float[] rowTrans16 = doTransmission16 ? new float[rectangle.width] : null;
+
+            FlintViewAzimuthCorrection.Block vaAatsrNadirBlock = null;
 
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                final int rowStart = rowStarts[y - rectangle.y];
+                final int rowEnd = rowStarts[y - rectangle.y + 1];
+                if (rowStart == rowEnd) {
+                    pm.worked(1);
+                    continue;
+                }
+                if (doGeometricalConversion && (vaAatsrNadirBlock == null || !vaAatsrNadirBlock.containsRow(y))) {
+                    vaAatsrNadirBlock = aatsrViewAzimuthCorrection.getBlock(y);
+                }
+                final int rowOffset = (y - rectangle.y) * rectangle.width - rectangle.x;
+                if (needsMerisGeometry) {
+                    for (int k = rowStart; k < rowEnd; k++) {
+                        final int i = pixelIndices[k];
+                        final float merisViewAzimuth = merisViewAzimuthCorrection.getSample(i - rowOffset, y);
+                        merisAzimuthDifferences[i] = preparation.removeAzimuthDifferenceAmbiguity(merisViewAzimuth,
+                                                                                                  saMeris[i]);
+                    }
+                }
+                if (waterVapourGrid != null) {
+                    for (int k = rowStart; k < rowEnd; k++) {
+                        final int i = pixelIndices[k];
+                        waterVapours[i] = waterVapourGrid.getWaterVapour(i - rowOffset, y);
+                    }
+                } else if (waterVapours != null) {
+                    solarPart37WaterVapour.computeWaterVapour(zonalWinds, meridWinds, merisAzimuthDifferences,
+                                                              vzMeris, szMeris, merisRad14, merisRad15,
+                                                              pixelIndices, rowStart, rowEnd, waterVapours);
+                }
+                if (doTransmission) {
+                    for (int k = rowStart; k < rowEnd; k++) {
+                        final int i = pixelIndices[k];
+                        rowWaterVapours[k - rowStart] = doWaterVapour ? waterVapours[i] : 0.0f;
+                        rowSunZeniths[k - rowStart] = 90.0f - seAatsrNadir[i];
+                        rowViewZeniths[k - rowStart] = 90.0f - veAatsrNadir[i];
+                    }
+                    solarPart37.computeTransmissions(rowWaterVapours, rowSunZeniths, rowViewZeniths,
+                                                     rowEnd - rowStart, rowTrans37, rowTrans16);
+                }
+                for (int k = rowStart; k < rowEnd; k++) {
                     if (pm.isCanceled()) {
                         break;
                     }
+                    final int i = pixelIndices[k];
+                    final int x = i - rowOffset;
+                    final float aatsrSunElevation = seAatsrNadir[i];
+                    final float aatsrBt37 = aatsrBTNadir0370[i];
+
+                    // 1. The solar part of 3.7
+                    // 1.a. Thermal extrapolation of 11/12 to 3.7
+                    float aatsrBTThermalPart37 = 0.0f;
+                    if (doThermalExtrapolation) {
+                        aatsrBTThermalPart37 = solarPart37.extrapolateTo37(aatsrBTNadir1100[i], aatsrBTNadir1200[i]);
+                    }
 
-                    final boolean cloudFlagNadirLand = cfAatsrNadirTile.getSampleBit(x, y, AATSR_L1_CF_LAND);
-                    final boolean cloudFlagNadirCloudy = cfAatsrNadirTile.getSampleBit(x, y, AATSR_L1_CF_CLOUDY);
-                    final boolean cloudFlagNadirSunglint = cfAatsrNadirTile.getSampleBit(x, y, AATSR_L1_CF_SUNGLINT);
-                    final float aatsrViewElevation = veAatsrNadirTile.getSampleFloat(x, y);
-                    final float aatsrSunElevation = seAatsrNadirTile.getSampleFloat(x, y);
-                    final float aatsrBt37 = aatsrBTNadir0370Tile.getSampleFloat(x, y);
-                    if (isInvalid.getSampleBoolean(x, y)
-                        || !preparation.isUsefulPixel(cloudFlagNadirLand, cloudFlagNadirCloudy, cloudFlagNadirSunglint,
-                                                      aatsrViewElevation, aatsrBt37)) {
-                        targetTile.setSample(x, y, 0);
-                    } else {
-
-                        // 1. The solar part of 3.7
-                        // 1.a. Thermal extrapolation of 11/12 to 3.7
-                        final float aatsrBTThermalPart37 =
-                                solarPart37.extrapolateTo37(aatsrBTNadir1100Tile.getSampleFloat(x, y),
-                                                            aatsrBTNadir1200Tile.getSampleFloat(x, y));
-
-                        // 1.b.1 Calculation of water vapour
-                        final float zonalWind = zonalWindTile.getSampleFloat(x, y);
-                        final float meridWind = meridWindTile.getSampleFloat(x, y);
-                        float merisViewAzimuth = vaMerisTileComplete.getSampleFloat(x, y);
-                        float merisSunAzimuth = saMerisTile.getSampleFloat(x, y);
-                        float merisAzimuthDifference = preparation.removeAzimuthDifferenceAmbiguity(merisViewAzimuth,
-                                                                                                    merisSunAzimuth);
-                        final float merisViewZenith = vzMerisTile.getSampleFloat(x, y);
-                        final float merisSunZenith = szMerisTile.getSampleFloat(x, y);
-                        final float merisRad14 = merisRad14Tile.getSampleFloat(x, y);
-                        final float merisRad15 = merisRad15Tile.getSampleFloat(x, y);
-
-                        float waterVapourColumn = waterVapour.computeWaterVapour(zonalWind, meridWind,
-                                                                                 merisAzimuthDifference,
-                                                                                 merisViewZenith, merisSunZenith,
-                                                                                 merisRad14, merisRad15);
-                        if (targetBand.getName().equals(STEP_1b1_RESULT_NAME)) {
-                            targetTile.setSample(x, y, waterVapourColumn);
-                        }
+                    // 1.b.1 Calculation of water vapour (computed for the whole row above)
+                    float merisAzimuthDifference = 0.0f;
+                    float merisViewZenith = 0.0f;
+                    float merisSunZenith = 0.0f;
+                    if (needsMerisGeometry) {
+                        merisAzimuthDifference = merisAzimuthDifferences[i];
+                        merisViewZenith = vzMeris[i];
+                        merisSunZenith = szMeris[i];
+                    }
+                    final float zonalWind = needsWinds ? zonalWinds[i] : 0.0f;
+                    final float meridWind = needsWinds ? meridWinds[i] : 0.0f;
 
-                        // 1.b.2 Calculation of transmission
-                        final float aatsrTrans37 = solarPart37.computeTransmission(37, waterVapourColumn,
-                                                                                   90.0f - aatsrSunElevation,
-                                                                                   90.0f - aatsrViewElevation);
-                        final float aatsrTrans16 = solarPart37.computeTransmission(16, waterVapourColumn,
-                                                                                   90.0f - aatsrSunElevation,
-                                                                                   90.0f - aatsrViewElevation);
-                        if (targetBand.getName().equals(STEP_1b2_RESULT1_NAME)) {
-                            targetTile.setSample(x, y, aatsrTrans37);
-                        }
-                        if (targetBand.getName().equals(STEP_1b2_RESULT2_NAME)) {
-                            targetTile.setSample(x, y, aatsrTrans16);
+                    // 1.b.2 Calculation of transmission (computed for the whole row above)
+                    float aatsrTrans37 = 0.0f;
+                    if (doTransmission) {
+                        aatsrTrans37 = rowTrans37[k - rowStart];
+                    }
+                    if (doTransmission16) {
+                        final float aatsrTrans16 = rowTrans16[k - rowStart];
+
+                        // the 1.6um transmission is only used for the reflectance in the 'transmission_16' band
+                        // and the (disabled) additional cloud mask
+                        final float aatsrRefl16 = aatsrReflNadir1600[i];
+                        final float aatsrRefl16T = aatsrRefl16 / aatsrTrans16;
+                        if (trans16Data != null) {
+                            trans16Data[i] = (float) (aatsrRefl16T / 0.79);
                         }
+                    }
+                    if (trans37Data != null) {
+                        trans37Data[i] = aatsrTrans37;
+                    }
 
-                        // 1.c Conversion of BT to normalized radiance
-                        final float aatsrRad37 = solarPart37.convertBT2Radiance(aatsrBt37) / solarIrradiance37;
-                        final float aatsrRadianceThermalPart37 = solarPart37.convertBT2Radiance(
+                    // 1.c Conversion of BT to normalized radiance
+                    float aatsrRad37 = 0.0f;
+                    float aatsrRadianceThermalPart37 = 0.0f;
+                    if (doBTConversion) {
+                        aatsrRad37 = solarPart37.convertBT2Radiance(aatsrBt37) / solarIrradiance37;
+                        aatsrRadianceThermalPart37 = solarPart37.convertBT2Radiance(
                                 aatsrBTThermalPart37) / solarIrradiance37;
-                        if (targetBand.getName().equals(STEP_1c_RESULT1_NAME)) {
-                            targetTile.setSample(x, y, aatsrRad37);
-                        }
-                        if (targetBand.getName().equals(STEP_1c_RESULT2_NAME)) {
-                            targetTile.setSample(x, y, aatsrRadianceThermalPart37);
+                        if (radThermalPart37Data != null) {
+                            radThermalPart37Data[i] = aatsrRadianceThermalPart37;
                         }
+                    }
 
-                        // 1.d Compute the solar part
-                        final float aatsrSolarPart37 =
+                    // 1.d Compute the solar part
+                    float aatsrSolarPart37 = 0.0f;
+                    if (doSolarPart) {
+                        aatsrSolarPart37 =
                                 solarPart37.computeSolarPart(aatsrRad37, aatsrRadianceThermalPart37, aatsrTrans37);
+                    }
+
+                    // 1.e Simple additional cloud mask
+//                    boolean cloud = solarPart37.computeAdditionalCloudMask(aatsrSolarPart37a, aatsrRefl16T);
+                    boolean cloud = false; // perhaps activate if needed
+
+                    // output of part 1:
+                    if (solarPart37Data != null) {
+                        solarPart37Data[i] = !cloud ? aatsrSolarPart37 : -1.0f;
+                    }
+                    if (solarPart37AatsrUnitsData != null) {
                         final float aatsrSolarPart37a =
                                 solarPart37.convertToAatsrUnits(aatsrSolarPart37, aatsrSunElevation);
+                        solarPart37AatsrUnitsData[i] = !cloud ? aatsrSolarPart37a : -1.0f;
+                    }
 
-                        // 1.e Simple additional cloud mask
-                        final float aatsrRefl16 = aatsrReflNadir1600Tile.getSampleFloat(x, y);
-                        final float aatsrRefl16T = aatsrRefl16 / aatsrTrans16;
+                    // 2. The geometrical conversion
+                    if (!cloud && doGeometricalConversion) {
+                        // 2.a AATSR - MERIS conversion
+                        float aatsrViewAzimuth = vaAatsrNadirBlock.getSample(x, y);
+                        float aatsrSunAzimuth = saAatsrNadir[i];
 
-//                        boolean cloud = solarPart37.computeAdditionalCloudMask(aatsrSolarPart37a, aatsrRefl16T);
-                        boolean cloud = false; // perhaps activate if needed
+                        float aatsrAzimuthDifference = preparation.removeAzimuthDifferenceAmbiguity(
+                                aatsrViewAzimuth,
+                                aatsrSunAzimuth);
 
-                        if (targetBand.getName().equals(STEP_1b2_RESULT2_NAME)) {
-                            targetTile.setSample(x, y, aatsrRefl16T / 0.79);
-                        }
-                        if (targetBand.getName().equals(STEP_1e_RESULT_NAME)) {
-                            if (cloud) {
-                                targetTile.setSample(x, y, 1);
-                            } else {
-                                targetTile.setSample(x, y, 0);
-                            }
-                        }
 
-                        // output of part 1:
-                        if (targetBand.getName().equals(STEP_1d_RESULT1_NAME)) {
-                            if (!cloud) {
-                                targetTile.setSample(x, y, aatsrSolarPart37);
-                            } else {
-                                targetTile.setSample(x, y, -1.0f);
-                            }
-                        }
-                        if (targetBand.getName().equals(STEP_1d_RESULT2_NAME)) {
-                            if (!cloud) {
-                                targetTile.setSample(x, y, aatsrSolarPart37a);
+                        // pixels outside of the inversion table are converted as without table
+                        final boolean tabulated =
+                                inversionTable != null &&
+                                inversionTable.convertAatsrRad37ToMerisRad(aatsrSolarPart37, merisSunZenith,
+                                                                           merisViewZenith,
+                                                                           180.0f - aatsrAzimuthDifference,
+                                                                           180.0f - merisAzimuthDifference,
+                                                                           merisNormalizedRadianceResultMatrix);
+                        if (!tabulated) {
+                            if (radianceCurveGrid != null && radianceCurveGrid.interpolateCurve(x, y, radianceCurve)) {
+                                geometricalConversion.convertAatsrRad37ToMerisRad(radianceCurve, aatsrSolarPart37,
+                                                                                  merisSunZenith, merisViewZenith,
+                                                                                  180.0f - aatsrAzimuthDifference,
+                                                                                  180.0f - merisAzimuthDifference,
+                                                                                  merisNormalizedRadianceResultMatrix);
                             } else {
-                                targetTile.setSample(x, y, -1.0f);
+                                geometricalConversion.convertAatsrRad37ToMerisRad(aatsrSolarPart37, merisSunZenith,
+                                                                                  merisViewZenith,
+                                                                                  180.0f - aatsrAzimuthDifference,
+                                                                                  180.0f - merisAzimuthDifference,
+                                                                                  merisNormalizedRadianceResultMatrix);
                             }
                         }
 
-                        if (targetBand.getName().equals("va_aatsr_corr")) {
-                            targetTile.setSample(x, y, vaAatsrNadirTileComplete.getSampleFloat(x, y));
+                        final int numberWindspeeds = FlintGeometricalConversion.windspeedFound(
+                                merisNormalizedRadianceResultMatrix);
+                        if (numberWindspeedsData != null) {
+                            numberWindspeedsData[i] = numberWindspeeds;
                         }
-                        if (targetBand.getName().equals("va_meris_corr")) {
-                            targetTile.setSample(x, y, vaMerisTileComplete.getSampleFloat(x, y));
-                        }
-
-                        // 2. The geometrical conversion
-                        if (!cloud && targetBand.getName().startsWith("result_")) {
-                            // 2.a AATSR - MERIS conversion
-                            float aatsrViewAzimuth = vaAatsrNadirTileComplete.getSampleFloat(x, y);
-                            float aatsrSunAzimuth = saAatsrNadirTile.getSampleFloat(x, y);
-
-                            float aatsrAzimuthDifference = preparation.removeAzimuthDifferenceAmbiguity(
-                                    aatsrViewAzimuth,
-                                    aatsrSunAzimuth);
 
-
-                            final float[][] merisNormalizedRadianceResultMatrix =
-                                    conversion.convertAatsrRad37ToMerisRad(aatsrSolarPart37, merisSunZenith,
-                                                                           merisViewZenith,
-                                                                           180.0f - aatsrAzimuthDifference,
-                                                                           180.0f - merisAzimuthDifference);
-
-                            if (targetBand.getName().equals(RESULT_NUMBERWINDSPEEDS_NAME)) {
-                                int numberWindspeeds = FlintGeometricalConversion.windspeedFound(
-                                        merisNormalizedRadianceResultMatrix);
-                                targetTile.setSample(x, y, numberWindspeeds);
+                        // 2.b Ambiuguity reduction and final output
+                        if (numberWindspeeds > 0) {
+                            if (radiance1Data != null) {
+                                radiance1Data[i] = merisNormalizedRadianceResultMatrix[0][1];
+                            }
+                            if (windspeed1Data != null) {
+                                windspeed1Data[i] = merisNormalizedRadianceResultMatrix[0][0];
+                            }
+                            if (radiance2Data != null) {
+                                radiance2Data[i] = merisNormalizedRadianceResultMatrix[1][1];
+                            }
+                            if (windspeed2Data != null) {
+                                windspeed2Data[i] = merisNormalizedRadianceResultMatrix[1][0];
                             }
 
-                            // 2.b Ambiuguity reduction and final output
-                            if (FlintGeometricalConversion.windspeedFound(merisNormalizedRadianceResultMatrix) > 0) {
-                                final float[] finalResultWindspeedRadiance = FlintGeometricalConversion.getAmbiguityReducedRadiance
-                                        (merisNormalizedRadianceResultMatrix, zonalWind, meridWind);
-                                if (targetBand.getName().equals(RESULT_RADIANCE1_NAME)) {
-                                    targetTile.setSample(x, y, merisNormalizedRadianceResultMatrix[0][1]);
-                                }
-                                if (targetBand.getName().equals(RESULT_WINDSPEED1_NAME)) {
-                                    targetTile.setSample(x, y, merisNormalizedRadianceResultMatrix[0][0]);
-                                }
-                                if (targetBand.getName().equals(RESULT_RADIANCE2_NAME)) {
-                                    targetTile.setSample(x, y, merisNormalizedRadianceResultMatrix[1][1]);
-                                }
-                                if (targetBand.getName().equals(RESULT_WINDSPEED2_NAME)) {
-                                    targetTile.setSample(x, y, merisNormalizedRadianceResultMatrix[1][0]);
-                                }
-
-                                // these are the final results
-                                if (targetBand.getName().equals(RESULT_WINDSPEED_FINAL_NAME)) {
-                                    targetTile.setSample(x, y, finalResultWindspeedRadiance[0]);
+                            // these are the final results
+                            if (doAmbiguityReduction) {
+                                FlintGeometricalConversion.getAmbiguityReducedRadiance(
+                                        merisNormalizedRadianceResultMatrix, zonalWind, meridWind,
+                                        finalResultWindspeedRadiance);
+                                if (windspeedFinalData != null) {
+                                    windspeedFinalData[i] = finalResultWindspeedRadiance[0];
                                 }
-                                if (targetBand.getName().equals(RESULT_RADIANCE_FINAL_NAME)) {
-                                    targetTile.setSample(x, y, finalResultWindspeedRadiance[1]);
+                                if (radianceFinalData != null) {
+                                    radianceFinalData[i] = finalResultWindspeedRadiance[1];
                                 }
                             }
                         }
@@ -491,6 +765,12 @@ public class FlintOp extends Operator {
                 }
                 pm.worked(1);
             }
+
+            for (int slot = 0; slot < outputBands.length; slot++) {
+                if (outputs[slot] != null) {
+                    targetTiles.get(outputBands[slot]).setSamples(outputs[slot]);
+                }
+            }
         } catch (Exception e) {
             throw new OperatorException("Failed to process Flint algorithm:\n" + e.getMessage(), e);
         } finally {
@@ -498,6 +778,57 @@ public class FlintOp extends Operator {
         }
     }
 
+    private FlintRadianceCurveGrid createRadianceCurveGrid(final Rectangle rectangle, final float[] szMeris,
+                                                           final float[] vzMeris, final float[] saAatsrNadir) {
+        final FlintRadianceCurveGrid.GeometrySource geometrySource = new FlintRadianceCurveGrid.GeometrySource() {
+            @Override
+            public float getSunZenith(int x, int y) {
+                return szMeris[(y - rectangle.y) * rectangle.width + x - rectangle.x];
+            }
+
+            @Override
+            public float getViewZenith(int x, int y) {
+                return vzMeris[(y - rectangle.y) * rectangle.width + x - rectangle.x];
+            }
+
+            @Override
+            public float getAatsrAzimuthDifference(int x, int y) {
+                final float aatsrViewAzimuth = aatsrViewAzimuthCorrection.getBlock(y).getSample(x, y);
+                final float aatsrSunAzimuth = saAatsrNadir[(y - rectangle.y) * rectangle.width + x - rectangle.x];
+                return 180.0f - preparation.removeAzimuthDifferenceAmbiguity(aatsrViewAzimuth, aatsrSunAzimuth);
+            }
+        };
+        return new FlintRadianceCurveGrid(geometricalConversion, geometrySource, rectangle, radianceCurveCellSize);
+    }
+
+    private FlintWaterVapourGrid createWaterVapourGrid(final Rectangle rectangle, final float[] zonalWinds,
+                                                       final float[] meridWinds, final float[] saMeris,
+                                                       final float[] vzMeris, final float[] szMeris,
+                                                       final float[] merisRad14, final float[] merisRad15) {
+        final FlintWaterVapourGrid.PixelSource pixelSource = new FlintWaterVapourGrid.PixelSource() {
+            @Override
+            public float computeWaterVapour(int x, int y) {
+                final int i = (y - rectangle.y) * rectangle.width + x - rectangle.x;
+                final float merisViewAzimuth = merisViewAzimuthCorrection.getSample(x, y);
+                final float merisAzimuthDifference =
+                        preparation.removeAzimuthDifferenceAmbiguity(merisViewAzimuth, saMeris[i]);
+                return solarPart37WaterVapour.computeWaterVapour(zonalWinds[i], meridWinds[i], merisAzimuthDifference,
+                                                                 vzMeris[i], szMeris[i], merisRad14[i], merisRad15[i]);
+            }
+
+            @Override
+            public double getRadianceRatio(int x, int y) {
+                final int i = (y - rectangle.y) * rectangle.width + x - rectangle.x;
+                return FlintSolarPart37WaterVapour.getRadianceRatio(merisRad14[i], merisRad15[i]);
+            }
+        };
+        return new FlintWaterVapourGrid(pixelSource, rectangle, waterVapourCellSize);
+    }
+
+    private float[] getSourceSamples(RasterDataNode rasterDataNode, Rectangle rectangle) {
+        return getSourceTile(rasterDataNode, rectangle).getSamplesFloat();
+    }
+
     /**
      * The Service Provider Interface (SPI) for the operator.
      * It provides operator meta-data and is a factory for new operator instances.
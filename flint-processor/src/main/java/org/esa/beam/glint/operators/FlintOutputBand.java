@@ -0,0 +1,72 @@
+package org.esa.beam.glint.operators;
+
+import org.esa.beam.framework.datamodel.ProductData;
+
+/**
+ * The target bands which can be written by the Flint operator, together with the algorithm step
+ * which computes them (see {@link FlintProcessingPlan}).
+ * The ordinal of a constant is used as output slot index in {@link FlintOp}.
+ */
+enum FlintOutputBand {
+
+    // 'debug' bands: intermediate results part 1
+    WATER_VAPOUR(FlintOp.STEP_1b1_RESULT_NAME, ProductData.TYPE_FLOAT32, "1/sr",
+                 FlintProcessingPlan.Step.WATER_VAPOUR),
+    TRANSMISSION_37(FlintOp.STEP_1b2_RESULT1_NAME, ProductData.TYPE_FLOAT32, null,
+                    FlintProcessingPlan.Step.TRANSMISSION_37),
+    TRANSMISSION_16(FlintOp.STEP_1b2_RESULT2_NAME, ProductData.TYPE_FLOAT32, null,
+                    FlintProcessingPlan.Step.TRANSMISSION_16),
+    RADIANCE_THERMAL_PART_37(FlintOp.STEP_1c_RESULT2_NAME, ProductData.TYPE_FLOAT32, "1/sr",
+                             FlintProcessingPlan.Step.BT_CONVERSION),
+    SOLAR_PART_37(FlintOp.STEP_1d_RESULT1_NAME, ProductData.TYPE_FLOAT32, "1/sr",
+                  FlintProcessingPlan.Step.SOLAR_PART),
+    SOLAR_PART_37_AATSR_UNITS(FlintOp.STEP_1d_RESULT2_NAME, ProductData.TYPE_FLOAT32, "%",
+                              FlintProcessingPlan.Step.SOLAR_PART),
+
+    // 'debug' bands: intermediate results part 2
+    RADIANCE1(FlintOp.RESULT_RADIANCE1_NAME, ProductData.TYPE_FLOAT32, "1/sr",
+              FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION),
+    RADIANCE2(FlintOp.RESULT_RADIANCE2_NAME, ProductData.TYPE_FLOAT32, "1/sr",
+              FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION),
+    WINDSPEED1(FlintOp.RESULT_WINDSPEED1_NAME, ProductData.TYPE_FLOAT32, "m/s",
+               FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION),
+    WINDSPEED2(FlintOp.RESULT_WINDSPEED2_NAME, ProductData.TYPE_FLOAT32, "m/s",
+               FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION),
+    NUMBER_WINDSPEEDS(FlintOp.RESULT_NUMBERWINDSPEEDS_NAME, ProductData.TYPE_INT16, null,
+                      FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION),
+
+    // final result bands
+    WINDSPEED_FINAL(FlintOp.RESULT_WINDSPEED_FINAL_NAME, ProductData.TYPE_FLOAT32, "m/s",
+                    FlintProcessingPlan.Step.AMBIGUITY_REDUCTION),
+    RADIANCE_FINAL(FlintOp.RESULT_RADIANCE_FINAL_NAME, ProductData.TYPE_FLOAT32, "1/sr",
+                   FlintProcessingPlan.Step.AMBIGUITY_REDUCTION);
+
+    private final String bandName;
+    private final int dataType;
+    private final String unit;
+    private final FlintProcessingPlan.Step step;
+
+    FlintOutputBand(String bandName, int dataType, String unit, FlintProcessingPlan.Step step) {
+        this.bandName = bandName;
+        this.dataType = dataType;
+        this.unit = unit;
+        this.step = step;
+    }
+
+    String getBandName() {
+        return bandName;
+    }
+
+    int getDataType() {
+        return dataType;
+    }
+
+    // may be null
+    String getUnit() {
+        return unit;
+    }
+
+    FlintProcessingPlan.Step getStep() {
+        return step;
+    }
+}
@@ -0,0 +1,306 @@
+package org.esa.beam.glint.operators;
+
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * This class holds the pixel correspondence of a MERIS/AATSR scene pair: for each MERIS pixel the AATSR pixel
+ * at its centre (nearest neighbour, as the default resampling of the collocation).
+ * <p/>
+ * The geolocation search is done once per scene pair. Any AATSR raster is then collocated onto a MERIS tile by
+ * a single indexed copy from the AATSR source rectangle (see {@link #getSourceRectangle} and {@link #gather}).
+ * <p/>
+ * The mapping file holds int32 values in little-endian byte order:
+ * <pre>
+ *   int32   magic number 'FLPM'
+ *   int32   format version
+ *   int32   MERIS width, MERIS height, AATSR width, AATSR height
+ *   2 x     product name: int32 length, UTF-8 bytes (MERIS, AATSR)
+ *   int64   CRC32 checksum of the indices
+ *   int32   indices[MERIS width * MERIS height]: AATSR pixel y * AATSR width + x, -1 if there is none
+ * </pre>
+ * The file is memory-mapped, so the mapping does not use heap memory and can be shared between threads.
+ */
+final class FlintPixelMapping {
+
+    static final int MAGIC = 0x4D504C46;     // 'F', 'L', 'P', 'M' in little-endian byte order
+    static final int VERSION = 1;
+    static final int NO_SOURCE_PIXEL = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Provides the AATSR pixel position at the centre of a MERIS pixel.
+     */
+    interface Locator {
+        //
+        // returns false if there is no AATSR pixel position
+        //
+        boolean locate(int merisX, int merisY, PixelPos aatsrPixelPos);
+    }
+
+    private final String merisProductName;
+    private final String aatsrProductName;
+    private final int width;
+    private final int height;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final IntBuffer indices;
+
+    private FlintPixelMapping(String merisProductName, String aatsrProductName, int width, int height,
+                              int sourceWidth, int sourceHeight, IntBuffer indices) {
+        this.merisProductName = merisProductName;
+        this.aatsrProductName = aatsrProductName;
+        this.width = width;
+        this.height = height;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.indices = indices;
+    }
+
+    //
+    // This method computes the mapping of all MERIS pixels.
+    //
+    static FlintPixelMapping create(String merisProductName, String aatsrProductName, int merisWidth,
+                                    int merisHeight, int aatsrWidth, int aatsrHeight, Locator locator) {
+        final IntBuffer indices = ByteBuffer.allocate(merisWidth * merisHeight * 4).order(
+                ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        final PixelPos aatsrPixelPos = new PixelPos();
+        int i = 0;
+        for (int y = 0; y < merisHeight; y++) {
+            for (int x = 0; x < merisWidth; x++) {
+                int index = NO_SOURCE_PIXEL;
+                if (locator.locate(x, y, aatsrPixelPos)) {
+                    final int aatsrX = (int) Math.floor(aatsrPixelPos.x);
+                    final int aatsrY = (int) Math.floor(aatsrPixelPos.y);
+                    if (aatsrX >= 0 && aatsrX < aatsrWidth && aatsrY >= 0 && aatsrY < aatsrHeight) {
+                        index = aatsrY * aatsrWidth + aatsrX;
+                    }
+                }
+                indices.put(i++, index);
+            }
+        }
+        return new FlintPixelMapping(merisProductName, aatsrProductName, merisWidth, merisHeight,
+                                     aatsrWidth, aatsrHeight, indices);
+    }
+
+    //
+    // This method provides a locator using the geo-codings of the MERIS and the AATSR product.
+    //
+    static Locator createLocator(final GeoCoding merisGeoCoding, final GeoCoding aatsrGeoCoding) {
+        return new Locator() {
+            private final PixelPos merisPixelPos = new PixelPos();
+            private final GeoPos geoPos = new GeoPos();
+
+            @Override
+            public boolean locate(int merisX, int merisY, PixelPos aatsrPixelPos) {
+                merisPixelPos.x = merisX + 0.5f;
+                merisPixelPos.y = merisY + 0.5f;
+                merisGeoCoding.getGeoPos(merisPixelPos, geoPos);
+                if (!geoPos.isValid()) {
+                    return false;
+                }
+                aatsrGeoCoding.getPixelPos(geoPos, aatsrPixelPos);
+                return aatsrPixelPos.isValid();
+            }
+        };
+    }
+
+    //
+    // This method writes the mapping to the given file.
+    //
+    void write(File file) throws IOException {
+        final byte[] merisName = merisProductName.getBytes(UTF_8);
+        final byte[] aatsrName = aatsrProductName.getBytes(UTF_8);
+        final ByteBuffer payload = ByteBuffer.allocate(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        payload.asIntBuffer().put(indices.duplicate());
+
+        final ByteBuffer header = ByteBuffer.allocate(getHeaderSize(merisName.length, aatsrName.length)).order(
+                ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(width);
+        header.putInt(height);
+        header.putInt(sourceWidth);
+        header.putInt(sourceHeight);
+        header.putInt(merisName.length);
+        header.put(merisName);
+        header.putInt(aatsrName.length);
+        header.put(aatsrName);
+        header.putLong(computeChecksum(payload.duplicate()));
+
+        final OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(header.array());
+            outputStream.write(payload.array());
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    //
+    // This method memory-maps a mapping file and checks its header and checksum.
+    //
+    static FlintPixelMapping open(File file) throws IOException {
+        final ByteBuffer buffer;
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            // the mapping remains valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < getHeaderSize(0, 0)) {
+            throw new IOException("Invalid pixel mapping " + file + " - file too short.");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Invalid pixel mapping " + file + " - wrong magic number.");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Invalid pixel mapping " + file + " - unsupported version " + version + ".");
+        }
+        final int width = buffer.getInt();
+        final int height = buffer.getInt();
+        final int sourceWidth = buffer.getInt();
+        final int sourceHeight = buffer.getInt();
+        if (width < 1 || height < 1 || sourceWidth < 1 || sourceHeight < 1) {
+            throw new IOException("Invalid pixel mapping " + file + " - invalid raster size.");
+        }
+        final String merisProductName = getName(buffer, file);
+        final String aatsrProductName = getName(buffer, file);
+        if (buffer.remaining() < 8) {
+            throw new IOException("Invalid pixel mapping " + file + " - file too short.");
+        }
+        final long checksum = buffer.getLong();
+        if (buffer.remaining() != (long) width * height * 4) {
+            throw new IOException("Invalid pixel mapping " + file + " - wrong file size.");
+        }
+        if (computeChecksum(buffer.duplicate()) != checksum) {
+            throw new IOException("Invalid pixel mapping " + file + " - checksum mismatch.");
+        }
+        return new FlintPixelMapping(merisProductName, aatsrProductName, width, height, sourceWidth, sourceHeight,
+                                     buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+    }
+
+    //
+    // This method checks if the mapping was created for the given scene pair.
+    //
+    boolean isMappingOf(String merisProductName, String aatsrProductName, int merisWidth, int merisHeight,
+                        int aatsrWidth, int aatsrHeight) {
+        return this.merisProductName.equals(merisProductName) && this.aatsrProductName.equals(aatsrProductName) &&
+               width == merisWidth && height == merisHeight &&
+               sourceWidth == aatsrWidth && sourceHeight == aatsrHeight;
+    }
+
+    //
+    // This method provides the AATSR pixel index y * AATSR width + x of MERIS pixel (x, y), or NO_SOURCE_PIXEL.
+    //
+    int getSourceIndex(int x, int y) {
+        return indices.get(y * width + x);
+    }
+
+    //
+    // This method provides the bounding rectangle of the AATSR pixels of a MERIS rectangle,
+    // null if none of its pixels has an AATSR pixel.
+    //
+    Rectangle getSourceRectangle(Rectangle rectangle) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                final int index = indices.get(y * width + x);
+                if (index != NO_SOURCE_PIXEL) {
+                    final int sourceX = index % sourceWidth;
+                    final int sourceY = index / sourceWidth;
+                    minX = Math.min(minX, sourceX);
+                    maxX = Math.max(maxX, sourceX);
+                    minY = Math.min(minY, sourceY);
+                    maxY = Math.max(maxY, sourceY);
+                }
+            }
+        }
+        if (maxX < 0) {
+            return null;
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    //
+    // These methods collocate the samples of an AATSR raster onto a MERIS rectangle (row-major).
+    // sourceSamples: the AATSR samples of sourceRectangle (see getSourceRectangle)
+    // Pixels without AATSR pixel get the given no-data value.
+    //
+    void gather(Rectangle rectangle, float[] sourceSamples, Rectangle sourceRectangle, float noDataValue,
+                float[] samples) {
+        int i = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                final int index = indices.get(y * width + x);
+                samples[i++] = index != NO_SOURCE_PIXEL ?
+                               sourceSamples[getSourceSampleIndex(index, sourceRectangle)] : noDataValue;
+            }
+        }
+    }
+
+    void gather(Rectangle rectangle, int[] sourceSamples, Rectangle sourceRectangle, int noDataValue,
+                int[] samples) {
+        int i = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                final int index = indices.get(y * width + x);
+                samples[i++] = index != NO_SOURCE_PIXEL ?
+                               sourceSamples[getSourceSampleIndex(index, sourceRectangle)] : noDataValue;
+            }
+        }
+    }
+
+    private int getSourceSampleIndex(int index, Rectangle sourceRectangle) {
+        final int sourceY = index / sourceWidth;
+        final int sourceX = index - sourceY * sourceWidth;
+        return (sourceY - sourceRectangle.y) * sourceRectangle.width + sourceX - sourceRectangle.x;
+    }
+
+    private static int getHeaderSize(int merisNameLength, int aatsrNameLength) {
+        return 8 + 16 + 4 + merisNameLength + 4 + aatsrNameLength + 8;
+    }
+
+    private static String getName(ByteBuffer buffer, File file) throws IOException {
+        final int length = buffer.remaining() >= 4 ? buffer.getInt() : -1;
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid pixel mapping " + file + " - invalid product name.");
+        }
+        final byte[] name = new byte[length];
+        buffer.get(name);
+        return new String(name, UTF_8);
+    }
+
+    private static long computeChecksum(ByteBuffer buffer) {
+        final CRC32 crc32 = new CRC32();
+        final byte[] chunk = new byte[8192];
+        while (buffer.hasRemaining()) {
+            final int n = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, n);
+            crc32.update(chunk, 0, n);
+        }
+        return crc32.getValue();
+    }
+}
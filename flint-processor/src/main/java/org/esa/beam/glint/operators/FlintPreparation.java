@@ -2,11 +2,9 @@ package org.esa.beam.glint.operators;
 
 import Jama.Matrix;
 import org.esa.beam.framework.gpf.OperatorException;
-import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.glint.util.GlintHelpers;
 import org.jfree.data.statistics.Regression;
 
-import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.Calendar;
 
@@ -17,6 +15,12 @@ import java.util.Calendar;
  * @version $Revision: 7907 $ $Date: 2010-01-12 11:59:36 +0100 (Di, 12 Jan 2010) $
  */
 public class FlintPreparation {
+
+    /* AATSR L1 Cloud Flags (just the ones needed) */
+    static final int AATSR_L1_CF_LAND = 0;
+    static final int AATSR_L1_CF_CLOUDY = 1;
+    static final int AATSR_L1_CF_SUNGLINT = 2;
+
     private double[] wlSpectralResponse;
     private double[] spectralResponse;
     private double[] sox;
@@ -24,15 +28,18 @@ public class FlintPreparation {
 
     public FlintPreparation() {
         try {
-            wlSpectralResponse = FlintAuxData.getInstance().createAatsrSpectralResponse37Table().getWavelength();
-            spectralResponse = FlintAuxData.getInstance().createAatsrSpectralResponse37Table().getResponse();
+            final FlintAuxData.AatsrSpectralResponse37Table spectralResponseTable =
+                    FlintAuxData.getInstance().createAatsrSpectralResponse37Table();
+            wlSpectralResponse = spectralResponseTable.getWavelength();
+            spectralResponse = spectralResponseTable.getResponse();
         } catch (IOException e) {
             throw new OperatorException("Failed to read spectral response table:\n" + e.getMessage(), e);
         }
 
         try {
-            sox = FlintAuxData.getInstance().createCahalanTable().getX();
-            soy = FlintAuxData.getInstance().createCahalanTable().getY();
+            final FlintAuxData.CahalanTable cahalanTable = FlintAuxData.getInstance().createCahalanTable();
+            sox = cahalanTable.getX();
+            soy = cahalanTable.getY();
         } catch (IOException e) {
             throw new OperatorException("Failed to read Cahalan table:\n" + e.getMessage(), e);
         }
@@ -120,67 +127,165 @@ public class FlintPreparation {
                           (aatsrViewElevation > 0.0) && (aatsrBT37 > 270.0) );
     }
 
-    /**
-     *
-     * This method reestablishes the viewing azimuth discontinuity at nadir.
-     * Computation by first order polynominal fit on 'good' pixel left and right
-     * of sub-satellite point.
-     * A method like this should be integrated in BEAM later.
-     * Discuss other choices of fitting (second order as in breadboard?)
-     *
-     * @param viewAzimuthRaster  - va input tile
-     * @param rect - underlying rectangle
-     */
-    public void correctViewAzimuthLinear(Tile viewAzimuthRaster, Rectangle rect) {
-
-        double[] yArray;
-        for (int y=0; y<rect.height; y++) {
-           int startIndex = 0;
-           int endIndex = rect.width-1;
-
-           //
-           for (int x=1; x<rect.width; x++) {
-               if (viewAzimuthRaster.getSampleDouble(x, y) != 0.0 &&
-                   viewAzimuthRaster.getSampleDouble(x-1, y) == 0.0) {
-                   startIndex = x;
-                   break;
-               }
-           }
-
-           for (int x=0; x<rect.width-1; x++) {
-               if (viewAzimuthRaster.getSampleDouble(x, y) != 0.0 &&
-                   viewAzimuthRaster.getSampleDouble(x+1, y) == 0.0) {
-                   endIndex = x;
-                   break;
-               }
-           }
-
-           int arrayLength = endIndex - startIndex + 1;
-
-           if (startIndex < endIndex)  {
-               // if not, no correction is needed
-               yArray = new double[arrayLength];
-
-               for (int x=startIndex; x<=endIndex; x++) {
-                    yArray[x-startIndex] = viewAzimuthRaster.getSampleDouble(x, y);
-               }
-
-               final double minValue = GlintHelpers.getMinimumValueInDoubleArray(yArray);
-               final double maxValue = GlintHelpers.getMinimumValueInDoubleArray(yArray);
-
-               if (minValue != 0.0 || maxValue != 0.0) {
-                   double[] correctedResult = getViewAzimuthCorrectionProfile(yArray);
-                   for (int x=startIndex; x<endIndex; x++) {
-                       viewAzimuthRaster.setSample(x, y, correctedResult[x-startIndex]);
-                   }
-               }
-           }
+    //
+    // This method applies isUsefulPixel and the invalid mask to all pixels of a tile (row-major,
+    // width x height) and collects the indices of the pixels to be processed into pixelIndices.
+    // The pixels of tile row r are pixelIndices[rowStarts[r]] ... pixelIndices[rowStarts[r + 1] - 1].
+    // Returns the number of useful pixels.
+    //
+    protected int collectUsefulPixels(int[] aatsrCloudFlagsNadir, float[] aatsrViewElevations, float[] aatsrBT37s,
+                                      int[] invalid, int width, int height, int[] pixelIndices, int[] rowStarts) {
+        int n = 0;
+        for (int r = 0; r < height; r++) {
+            rowStarts[r] = n;
+            for (int i = r * width; i < (r + 1) * width; i++) {
+                final int cloudFlagsNadir = aatsrCloudFlagsNadir[i];
+                if (invalid[i] == 0 &&
+                    isUsefulPixel((cloudFlagsNadir & (1 << AATSR_L1_CF_LAND)) != 0,
+                                  (cloudFlagsNadir & (1 << AATSR_L1_CF_CLOUDY)) != 0,
+                                  (cloudFlagsNadir & (1 << AATSR_L1_CF_SUNGLINT)) != 0,
+                                  aatsrViewElevations[i], aatsrBT37s[i])) {
+                    pixelIndices[n++] = i;
+                }
+            }
+        }
+        rowStarts[height] = n;
+        return n;
+    }
+
+    //
+    // This method reestablishes the viewing azimuth discontinuity at nadir of one image row in place.
+    // Computation by first order polynominal fit on 'good' pixel left and right of sub-satellite point.
+    // The row consists of samples[offset] ... samples[offset+width-1]. The swath between the no-data margins
+    // is corrected as by getViewAzimuthCorrectionProfile, except for its last sample.
+    //
+    public void correctViewAzimuthLinear(float[] samples, int offset, int width) {
+        final int startIndex = getSwathStartIndex(samples, offset, width);
+        final int endIndex = getSwathEndIndex(samples, offset, width);
+        if (isCorrectableSwath(samples, offset, startIndex, endIndex)) {
+            correctViewAzimuthProfile(samples, offset + startIndex, endIndex - startIndex + 1);
+        }
+    }
+
+    //
+    // These methods provide the first and the last index of the swath in samples[offset] ... samples[offset+width-1],
+    // i.e. of the non-zero samples between the no-data margins.
+    //
+    static int getSwathStartIndex(float[] samples, int offset, int width) {
+        for (int x=1; x<width; x++) {
+            if (samples[offset + x] != 0.0 && samples[offset + x - 1] == 0.0) {
+                return x;
+            }
+        }
+        return 0;
+    }
+
+    static int getSwathEndIndex(float[] samples, int offset, int width) {
+        for (int x=0; x<width-1; x++) {
+            if (samples[offset + x] != 0.0 && samples[offset + x + 1] == 0.0) {
+                return x;
+            }
+        }
+        return width-1;
+    }
+
+    //
+    // The swath [startIndex, endIndex] contains no zeros unless the whole row is zero, so only rows with
+    // a swath of at least two samples are corrected.
+    //
+    static boolean isCorrectableSwath(float[] samples, int offset, int startIndex, int endIndex) {
+        return startIndex < endIndex && samples[offset + startIndex] != 0.0;
+    }
+
+    //
+    // This method corrects the view azimuth profile samples[start] ... samples[start+length-1] in place.
+    // The result is identical to getViewAzimuthCorrectionProfile, except that the last sample is not modified.
+    //
+    static void correctViewAzimuthProfile(float[] samples, int start, int length) {
+        final ProfileFit fit = fitViewAzimuthProfile(samples, start, length);
+        final int discontIndex = fit.getDiscontIndex();
+        for (int x=fit.discontLeftIndex; x<=discontIndex && x<fit.discontRightIndex; x++) {
+            samples[start + x] = (float) fit.getLeftValue(x);
+        }
+        for (int x=discontIndex+1; x<fit.discontRightIndex; x++) {
+            samples[start + x] = (float) fit.getRightValue(x);
         }
     }
 
+    //
+    // This method provides the discontinuity and the linear fits left and right of it for the view azimuth
+    // profile samples[start] ... samples[start+length-1], as used by getViewAzimuthCorrectionProfile.
+    // The discontinuity search and the sums of the left and right OLS fits are done in a single pass without
+    // intermediate arrays. The left discontinuity side is the first, the right side the last index matching
+    // the discontinuity criterion, so the right sums are restarted at each match. All sums are accumulated
+    // in the same order as by Regression.getOLSRegression.
+    //
+    static ProfileFit fitViewAzimuthProfile(float[] samples, int start, int length) {
+        int discontLeftIndex = length;
+        int discontRightIndex = 0;
+        double leftSumX = 0.0;
+        double leftSumY = 0.0;
+        double leftSumXX = 0.0;
+        double leftSumXY = 0.0;
+        double rightSumX = 0.0;
+        double rightSumY = 0.0;
+        double rightSumXX = 0.0;
+        double rightSumXY = 0.0;
+
+        for (int i=0; i<length; i++) {
+            final double y = samples[start + i];
+            if (i >= 2 && i < length-2) {
+                final double yArrayDiffQuot = (samples[start + i + 2] - y) / (y - samples[start + i - 2]);
+                if (yArrayDiffQuot < 0.1 || yArrayDiffQuot > 10.0) {
+                    if (discontLeftIndex == length) {
+                        discontLeftIndex = i;
+                    }
+                    discontRightIndex = i;
+                    rightSumX = 0.0;
+                    rightSumY = 0.0;
+                    rightSumXX = 0.0;
+                    rightSumXY = 0.0;
+                }
+            }
+            final double x = i*1.0;
+            final double xx = x*x;
+            final double xy = x*y;
+            if (i <= discontLeftIndex) {
+                leftSumX += x;
+                leftSumY += y;
+                leftSumXX += xx;
+                leftSumXY += xy;
+            }
+            rightSumX += x;
+            rightSumY += y;
+            rightSumXX += xx;
+            rightSumXY += xy;
+        }
+
+        // if no discontinuity is found, the left part contains an additional (0, 0) point
+        // (see getViewAzimuthCorrectionProfile)
+        final int leftCount = discontLeftIndex + 1;
+        final double leftSlope = getOLSSlope(leftSumX, leftSumY, leftSumXX, leftSumXY, leftCount);
+        final double leftIntercept = leftSumY/leftCount - leftSlope*(leftSumX/leftCount);
+
+        final int rightCount = length - discontRightIndex;
+        final double rightSlope = getOLSSlope(rightSumX, rightSumY, rightSumXX, rightSumXY, rightCount);
+        final double rightIntercept = rightSumY/rightCount - rightSlope*(rightSumX/rightCount);
+
+        return new ProfileFit(discontLeftIndex, discontRightIndex, leftIntercept, leftSlope,
+                              rightIntercept, rightSlope);
+    }
+
+    private static double getOLSSlope(double sumX, double sumY, double sumXX, double sumXY, int n) {
+        final double sxx = sumXX - (sumX*sumX)/n;
+        final double sxy = sumXY - (sumX*sumY)/n;
+        return sxy/sxx;
+    }
+
     //
     // This method provides a corrected view azmiuth profile
-    // (currently with simple linear regression)
+    // (currently with simple linear regression).
+    // Reference implementation, the image rows are corrected by correctViewAzimuthProfile.
     protected double[] getViewAzimuthCorrectionProfile(double[] yArray) {
         double[] result = new double[yArray.length];
 
@@ -360,4 +465,45 @@ public class FlintPreparation {
 //                  return y;
 //         }
 //    }
+
+    /**
+     * The discontinuity of a view azimuth profile and the linear fits left and right of it
+     * (see fitViewAzimuthProfile). Profile indices are relative to the first swath sample.
+     */
+    static final class ProfileFit {
+
+        final int discontLeftIndex;
+        final int discontRightIndex;
+        private final double leftIntercept;
+        private final double leftSlope;
+        private final double rightIntercept;
+        private final double rightSlope;
+
+        private ProfileFit(int discontLeftIndex, int discontRightIndex, double leftIntercept, double leftSlope,
+                           double rightIntercept, double rightSlope) {
+            this.discontLeftIndex = discontLeftIndex;
+            this.discontRightIndex = discontRightIndex;
+            this.leftIntercept = leftIntercept;
+            this.leftSlope = leftSlope;
+            this.rightIntercept = rightIntercept;
+            this.rightSlope = rightSlope;
+        }
+
+        boolean isDiscontinuityFound() {
+            return discontLeftIndex <= discontRightIndex;
+        }
+
+        // the last index left of the discontinuity
+        int getDiscontIndex() {
+            return (discontLeftIndex + discontRightIndex)/2;
+        }
+
+        double getLeftValue(int x) {
+            return leftIntercept + leftSlope*x;
+        }
+
+        double getRightValue(int x) {
+            return rightIntercept + rightSlope*x;
+        }
+    }
 }
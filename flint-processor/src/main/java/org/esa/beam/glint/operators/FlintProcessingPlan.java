@@ -0,0 +1,113 @@
+package org.esa.beam.glint.operators;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * This class holds the steps of the Flint algorithm which have to be executed for a given set of
+ * requested outputs. The plan contains the requested steps plus all steps they depend on.
+ * <p/>
+ * Steps (FUB MERIS/AATSR Synergy ATBD (Draft)):
+ * <pre>
+ *   1a  thermal extrapolation of 11/12um to 3.7um
+ *   1b1 water vapour (MERIS)
+ *   1b2 transmission at 3.7um and 1.6um
+ *   1c  conversion of BT to normalized radiance
+ *   1d  solar part of 3.7um
+ *   1e  additional cloud mask
+ *   2a  AATSR - MERIS geometrical conversion
+ *   2b  ambiguity reduction
+ * </pre>
+ */
+class FlintProcessingPlan {
+
+    enum Step {
+        THERMAL_EXTRAPOLATION("1a"),
+        WATER_VAPOUR("1b1"),
+        TRANSMISSION_37("1b2"),
+        TRANSMISSION_16("1b2"),
+        BT_CONVERSION("1c"),
+        SOLAR_PART("1d"),
+        ADDITIONAL_CLOUD_MASK("1e"),
+        GEOMETRICAL_CONVERSION("2a"),
+        AMBIGUITY_REDUCTION("2b");
+
+        private final String id;
+
+        Step(String id) {
+            this.id = id;
+        }
+
+        String getId() {
+            return id;
+        }
+    }
+
+    private final Set<Step> steps;
+
+    private FlintProcessingPlan(Set<Step> steps) {
+        this.steps = steps;
+    }
+
+    //
+    // This method creates the plan for the given requested steps, including all their prerequisites.
+    //
+    static FlintProcessingPlan create(Set<Step> requestedSteps) {
+        final Set<Step> steps = EnumSet.noneOf(Step.class);
+        for (Step step : requestedSteps) {
+            addWithPrerequisites(step, steps);
+        }
+        return new FlintProcessingPlan(steps);
+    }
+
+    boolean contains(Step step) {
+        return steps.contains(step);
+    }
+
+    boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Step step : steps) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(step.getId()).append(' ').append(step.name());
+        }
+        return "[" + sb + "]";
+    }
+
+    private static void addWithPrerequisites(Step step, Set<Step> steps) {
+        if (steps.add(step)) {
+            for (Step prerequisite : getPrerequisites(step)) {
+                addWithPrerequisites(prerequisite, steps);
+            }
+        }
+    }
+
+    //
+    // This method provides the steps whose results are direct input of the given step.
+    //
+    static Step[] getPrerequisites(Step step) {
+        switch (step) {
+            case TRANSMISSION_37:
+            case TRANSMISSION_16:
+                return new Step[]{Step.WATER_VAPOUR};
+            case BT_CONVERSION:
+                return new Step[]{Step.THERMAL_EXTRAPOLATION};
+            case SOLAR_PART:
+                return new Step[]{Step.TRANSMISSION_37, Step.BT_CONVERSION};
+            case ADDITIONAL_CLOUD_MASK:
+                return new Step[]{Step.SOLAR_PART, Step.TRANSMISSION_16};
+            case GEOMETRICAL_CONVERSION:
+                return new Step[]{Step.SOLAR_PART};
+            case AMBIGUITY_REDUCTION:
+                return new Step[]{Step.GEOMETRICAL_CONVERSION};
+            default:
+                return new Step[0];
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.esa.beam.glint.operators;
+
+import java.awt.Rectangle;
+
+/**
+ * This class provides the simulated AATSR normalized radiance curves of the geometrical conversion
+ * (breadboard step 2.a.1) for the pixels of a tile by bilinear interpolation between geometry nodes.
+ * <p/>
+ * The nodes are placed as described in {@link FlintNodeGrid}. The curve of a node is computed on first access
+ * and kept for the tile, so the neural net work scales with the number of nodes instead of the number of pixels.
+ * A cell is not interpolated if the AATSR azimuth differences of its nodes spread by more than
+ * {@link #MAXIMUM_AZIMUTH_DIFFERENCE_SPREAD} degrees (e.g. near nadir), the curves of these pixels have
+ * to be computed exactly.
+ * <p/>
+ * Instances are not thread-safe, one instance is used per tile computation.
+ */
+class FlintRadianceCurveGrid {
+
+    static final double MAXIMUM_AZIMUTH_DIFFERENCE_SPREAD = 10.0;
+
+    private static final byte CELL_UNKNOWN = 0;
+    private static final byte CELL_INTERPOLATED = 1;
+    private static final byte CELL_EXACT = 2;
+
+    /**
+     * Provides the geometry of the geometrical conversion at an image pixel.
+     */
+    interface GeometrySource {
+        float getSunZenith(int x, int y);
+
+        float getViewZenith(int x, int y);
+
+        // as passed to FlintGeometricalConversion.convertAatsrRad37ToMerisRad
+        float getAatsrAzimuthDifference(int x, int y);
+    }
+
+    private final FlintGeometricalConversion geometricalConversion;
+    private final GeometrySource geometrySource;
+    private final FlintNodeGrid nodeGrid;
+
+    private final double[][] nodeCurves;
+    private final float[] nodeAzimuthDifferences;
+    private final boolean[] nodeAzimuthDifferenceKnown;
+    private final byte[] cellStates;
+    private int numberOfNodeCurves;
+
+    FlintRadianceCurveGrid(FlintGeometricalConversion geometricalConversion, GeometrySource geometrySource,
+                           Rectangle rectangle, int cellSize) {
+        this.geometricalConversion = geometricalConversion;
+        this.geometrySource = geometrySource;
+        nodeGrid = new FlintNodeGrid(rectangle, cellSize);
+
+        final int numberOfNodes = nodeGrid.getNumberOfNodes();
+        nodeCurves = new double[numberOfNodes][];
+        nodeAzimuthDifferences = new float[numberOfNodes];
+        nodeAzimuthDifferenceKnown = new boolean[numberOfNodes];
+        cellStates = new byte[nodeGrid.getNumberOfCells()];
+    }
+
+    //
+    // This method interpolates the radiance curve (one value per LUT windspeed) for image pixel (x, y).
+    // Returns false if the pixel lies in a cell which must not be interpolated, curve is not modified then.
+    //
+    boolean interpolateCurve(int x, int y, double[] curve) {
+        final int cellIndex = nodeGrid.getCell(x, y);
+        final int n00 = nodeGrid.getCellNode(x, y, 0);
+        final int n10 = nodeGrid.getCellNode(x, y, 1);
+        final int n01 = nodeGrid.getCellNode(x, y, 2);
+        final int n11 = nodeGrid.getCellNode(x, y, 3);
+
+        if (cellStates[cellIndex] == CELL_UNKNOWN) {
+            cellStates[cellIndex] = isInterpolationAllowed(n00, n10, n01, n11) ? CELL_INTERPOLATED : CELL_EXACT;
+        }
+        if (cellStates[cellIndex] == CELL_EXACT) {
+            return false;
+        }
+
+        final double wx = nodeGrid.getWeightX(x);
+        final double wy = nodeGrid.getWeightY(y);
+        final double[] c00 = getNodeCurve(n00);
+        final double[] c10 = getNodeCurve(n10);
+        final double[] c01 = getNodeCurve(n01);
+        final double[] c11 = getNodeCurve(n11);
+        for (int i = 0; i < curve.length; i++) {
+            curve[i] = (1.0 - wy) * ((1.0 - wx) * c00[i] + wx * c10[i]) + wy * ((1.0 - wx) * c01[i] + wx * c11[i]);
+        }
+        return true;
+    }
+
+    // the number of node curves computed so far
+    int getNumberOfNodeCurves() {
+        return numberOfNodeCurves;
+    }
+
+    private boolean isInterpolationAllowed(int n00, int n10, int n01, int n11) {
+        final float a00 = getNodeAzimuthDifference(n00);
+        final float a10 = getNodeAzimuthDifference(n10);
+        final float a01 = getNodeAzimuthDifference(n01);
+        final float a11 = getNodeAzimuthDifference(n11);
+        final float min = Math.min(Math.min(a00, a10), Math.min(a01, a11));
+        final float max = Math.max(Math.max(a00, a10), Math.max(a01, a11));
+        // false for NaN geometry
+        return max - min <= MAXIMUM_AZIMUTH_DIFFERENCE_SPREAD;
+    }
+
+    private float getNodeAzimuthDifference(int node) {
+        // the geometry itself may be NaN, so it is not used as marker
+        if (!nodeAzimuthDifferenceKnown[node]) {
+            nodeAzimuthDifferences[node] = geometrySource.getAatsrAzimuthDifference(nodeGrid.getNodeX(node),
+                                                                                     nodeGrid.getNodeY(node));
+            nodeAzimuthDifferenceKnown[node] = true;
+        }
+        return nodeAzimuthDifferences[node];
+    }
+
+    private double[] getNodeCurve(int node) {
+        if (nodeCurves[node] == null) {
+            final int x = nodeGrid.getNodeX(node);
+            final int y = nodeGrid.getNodeY(node);
+            final double[] curve = new double[FlintGeometricalConversion.NUMBER_OF_LUT_WINDSPEEDS];
+            geometricalConversion.createNormalizedRadianceCurve(geometrySource.getSunZenith(x, y),
+                                                                geometrySource.getViewZenith(x, y),
+                                                                getNodeAzimuthDifference(node), curve);
+            nodeCurves[node] = curve;
+            numberOfNodeCurves++;
+        }
+        return nodeCurves[node];
+    }
+}
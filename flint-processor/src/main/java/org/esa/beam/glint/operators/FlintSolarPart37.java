@@ -1,7 +1,6 @@
 package org.esa.beam.glint.operators;
 
 import org.esa.beam.framework.gpf.OperatorException;
-import org.esa.beam.glint.util.GlintHelpers;
 import org.esa.beam.util.logging.BeamLogManager;
 
 import java.io.IOException;
@@ -18,16 +17,11 @@ import java.util.logging.Logger;
  */
 public class FlintSolarPart37 {
 
-    private float[][] aCoeff37;
-    private float[][] hCoeff37;
-    private float[] hWeight37;
-    private float[][] aCoeff16;
-    private float[][] hCoeff16;
-    private float[] hWeight16;
+    private FlintTransmission transmission;
+    private FlintTransmissionLut transmissionLut;
 
     private Logger logger;
-    private double[] tempFromTable;
-    private double[] radianceFromTable;
+    private FlintBT2RadianceConverter bt2RadianceConverter;
 
 
 
@@ -35,8 +29,10 @@ public class FlintSolarPart37 {
         logger = BeamLogManager.getSystemLogger();
 
         try {
-            tempFromTable = FlintAuxData.getInstance().createTemp2RadianceTable().getTemp();
-            radianceFromTable = FlintAuxData.getInstance().createTemp2RadianceTable().getRad();
+            final FlintAuxData.Temp2RadianceTable temp2RadianceTable =
+                    FlintAuxData.getInstance().createTemp2RadianceTable();
+            bt2RadianceConverter = new FlintBT2RadianceConverter(temp2RadianceTable.getTemp(),
+                                                                 temp2RadianceTable.getRad());
         } catch (IOException e) {
              throw new OperatorException("Failed to read BT to radiance conversion table:\n" + e.getMessage(), e);
         }
@@ -46,13 +42,25 @@ public class FlintSolarPart37 {
     // This method loads required Flint Auxdata
     //
     protected void loadFlintAuxData() throws IOException {
-        aCoeff37 = FlintAuxData.getInstance().readWaterVapourCoefficients(37, "A");
-        hCoeff37 = FlintAuxData.getInstance().readWaterVapourCoefficients(37, "H");
-        aCoeff16 = FlintAuxData.getInstance().readWaterVapourCoefficients(16, "A");
-        hCoeff16 = FlintAuxData.getInstance().readWaterVapourCoefficients(16, "H");
+        final float[][] aCoeff37 = FlintAuxData.getInstance().readWaterVapourCoefficients(37, "A");
+        final float[][] hCoeff37 = FlintAuxData.getInstance().readWaterVapourCoefficients(37, "H");
+        final float[][] aCoeff16 = FlintAuxData.getInstance().readWaterVapourCoefficients(16, "A");
+        final float[][] hCoeff16 = FlintAuxData.getInstance().readWaterVapourCoefficients(16, "H");
 
-        hWeight37 = FlintAuxData.getInstance().readTransmissionWeights(37, "H");
-        hWeight16 = FlintAuxData.getInstance().readTransmissionWeights(16, "H");
+        final float[] hWeight37 = FlintAuxData.getInstance().readTransmissionWeights(37, "H");
+        final float[] hWeight16 = FlintAuxData.getInstance().readTransmissionWeights(16, "H");
+
+        transmission = new FlintTransmission(aCoeff37, hCoeff37, hWeight37, aCoeff16, hCoeff16, hWeight16);
+    }
+
+    //
+    // This method creates the 2D transmission LUT over (water vapour, airmass) with lutSize nodes per axis.
+    // Once created, the transmissions in both channels are interpolated from this LUT.
+    // Must be called after loadFlintAuxData().
+    //
+    protected FlintTransmissionLut createTransmissionLut(int lutSize) {
+        transmissionLut = new FlintTransmissionLut(transmission, lutSize);
+        return transmissionLut;
     }
 
     //
@@ -75,34 +83,12 @@ public class FlintSolarPart37 {
                                      float aatsrSunElevation, float aatsrViewElevation) {
         float transmission = 1.0f;
 
-        double am = 1.0/Math.cos(Math.toRadians(aatsrSunElevation)) + 1.0/Math.cos(Math.toRadians(aatsrViewElevation));
+        final double am = FlintTransmission.computeAirmass(aatsrSunElevation, aatsrViewElevation);
 
         if (channel == 37) {
-            final int numLayers = aCoeff37[0].length;
-            final int numSpectralIntervals = aCoeff37.length;
-            double weightedIntegral = 0.0;
-            for (int i=0; i<numSpectralIntervals; i++) {
-                double layerIntegral = 0.0f;
-                for (int j=0; j<numLayers; j++) {
-                    double sumCoeffsWv = aCoeff37[i][j] + hCoeff37[i][j] * waterVapourColumn / 2.7872;
-                    layerIntegral += sumCoeffsWv;
-                }
-                weightedIntegral += hWeight37[i] * Math.exp(-am * layerIntegral);
-            }
-            transmission = (float) weightedIntegral;
+            transmission = this.transmission.computeTransmission37(waterVapourColumn, am);
         } else if (channel == 16) {
-            final int numLayers = aCoeff16[0].length;
-            final int numSpectralIntervals = aCoeff16.length;
-            double weightedIntegral = 0.0f;
-            for (int i=0; i<numSpectralIntervals; i++) {
-                double layerIntegral = 0.0f;
-                for (int j=0; j<numLayers; j++) {
-                    double sumCoeffsWv = aCoeff16[i][j] + hCoeff16[i][j] * waterVapourColumn / 2.7872;
-                    layerIntegral += sumCoeffsWv;
-                }
-                weightedIntegral += hWeight16[i] * Math.exp(-am * layerIntegral);
-            }
-            transmission = (float) weightedIntegral;
+            transmission = this.transmission.computeTransmission16(waterVapourColumn, am);
         }  else {
             logger.log(Level.ALL,
                         "Wrong channel " + channel + " provided to 'computeTransmission' - transmission kept to zero.");
@@ -110,21 +96,29 @@ public class FlintSolarPart37 {
         return transmission;
     }
 
+    //
+    //  This method computes the transmissions in 3.7um and 1.6um channel for n pixels (e.g. a tile row)
+    // from a common airmass per pixel. trans16 may be null if not needed.
+    // (breadboard step 1.b.2)
+    //
+    protected void computeTransmissions(float[] waterVapourColumn, float[] aatsrSunZenith, float[] aatsrViewZenith,
+                                        int n, float[] trans37, float[] trans16) {
+        if (transmissionLut != null) {
+            transmissionLut.computeTransmissions(waterVapourColumn, aatsrSunZenith, aatsrViewZenith, n,
+                                                 trans37, trans16);
+        } else {
+            transmission.computeTransmissions(waterVapourColumn, aatsrSunZenith, aatsrViewZenith, n,
+                                              trans37, trans16);
+        }
+    }
+
     //
     //  This method converts the units of 3.7um from BT(K) to real normalized radiance units (1/sr).
     // Computation by interpolation.
     // (breadboard step 1.c)
     //
     protected float convertBT2Radiance(float brightnessTemp) {
-        float radiance = 0.0f;
-
-        final int index = FlintAuxData.getInstance().getNearestTemp2RadianceTableIndex(brightnessTemp, tempFromTable);
-        if (index >= 0 && index < radianceFromTable.length-1) {
-            radiance = (float) GlintHelpers.linearInterpol(brightnessTemp, tempFromTable[index],
-                tempFromTable[index+1], radianceFromTable[index], radianceFromTable[index+1]);
-        }
-
-        return radiance;
+        return bt2RadianceConverter.convertBT2Radiance(brightnessTemp);
     }
 
     //
@@ -16,27 +16,45 @@
 
 package org.esa.beam.glint.operators;
 
-import com.bc.jnn.JnnException;
-import com.bc.jnn.JnnNet;
-
 import java.io.IOException;
 
 
 class FlintSolarPart37WaterVapour {
 
-    private static final float WATER_VAPOUR_STANDARD_VALUE = 2.8f;
+    // used if the NN input is outside of its range
+    static final float WATER_VAPOUR_STANDARD_VALUE = 2.8f;
 
-    private JnnNet neuralNetWv;
+    private static final float[][] NN_LIMITS = new float[][]{{3.75e-02f, 1.84e+01f},
+                                                             {-6.33e-01f, 6.31e-01f},
+                                                             {7.73e-01f, 1.00e+00f},
+                                                             {1.60e-01f, 9.26e-01f},
+                                                             {-6.98e-01f, 7.62e+00f}};
 
-    @Override
-    protected FlintSolarPart37WaterVapour clone()  {
-        FlintSolarPart37WaterVapour waterVapour = new FlintSolarPart37WaterVapour();
-        waterVapour.neuralNetWv = neuralNetWv.clone();
-        return waterVapour;
-    }
+    // the compiled net is immutable, so one instance of this class can be shared by all tile computations.
+    // Only the NN input/output buffers are held per thread.
+    private FlintNeuralNet neuralNetWv;
+
+    private static final int NUMBER_OF_NN_INPUTS = 5;
+    // number of pixels per batch NN evaluation
+    static final int BATCH_SIZE = 256;
+
+    private final ThreadLocal<double[][]> nnBuffers = new ThreadLocal<double[][]>() {
+        @Override
+        protected double[][] initialValue() {
+            return new double[][]{new double[NUMBER_OF_NN_INPUTS], new double[1]};
+        }
+    };
+
+    // batch NN inputs/outputs and the tile pixel index of each batch entry
+    private final ThreadLocal<BatchBuffers> batchBuffers = new ThreadLocal<BatchBuffers>() {
+        @Override
+        protected BatchBuffers initialValue() {
+            return new BatchBuffers();
+        }
+    };
 
-    void loadFlintAuxData() throws IOException, JnnException {
-        neuralNetWv = FlintAuxData.getInstance().loadNeuralNet(FlintAuxData.NEURAL_NET_WV_OCEAN_MERIS_FILE_NAME);
+    void loadFlintAuxData() throws IOException {
+        neuralNetWv = FlintAuxData.getInstance().loadCompiledNeuralNet(FlintAuxData.NEURAL_NET_WV_OCEAN_MERIS_FILE_NAME);
     }
 
     //
@@ -50,8 +68,9 @@ class FlintSolarPart37WaterVapour {
                                      float merisRadiance14, float merisRadiance15) {
         float waterVapour = WATER_VAPOUR_STANDARD_VALUE;   // standard value
 
-        final double[] nnIn = new double[5];
-        final double[] nnOut = new double[1];
+        final double[][] buffers = nnBuffers.get();
+        final double[] nnIn = buffers[0];
+        final double[] nnOut = buffers[1];
 
         double windSpeed = Math.sqrt(zonalWind*zonalWind + meridionalWind*meridionalWind);
 
@@ -61,22 +80,86 @@ class FlintSolarPart37WaterVapour {
                   Math.sin(Math.toRadians(merisViewZenith));  // angles in degree!
         nnIn[2] = Math.cos(Math.toRadians(merisViewZenith));  // angle in degree!
         nnIn[3] = Math.cos(Math.toRadians(merisSunZenith));  // angle in degree!
-        nnIn[4] = Math.log(Math.max(merisRadiance15, 1.0E-4)/Math.max(merisRadiance14, 1.0E-4));
-
-        float[][] nnLimits = new float[][]{{3.75e-02f, 1.84e+01f},
-                                           {-6.33e-01f, 6.31e-01f},
-                                           {7.73e-01f, 1.00e+00f},
-                                           {1.60e-01f, 9.26e-01f},
-                                           {-6.98e-01f, 7.62e+00f}};
-
-        for (int i=0; i<nnIn.length; i++) {
-            if (nnIn[i] >= nnLimits[i][0] && nnIn[i] >= nnLimits[i][1]) {
-                // otherwise do not apply NN, keep WV to standard value
-                neuralNetWv.process(nnIn, nnOut);
-                waterVapour = (float) nnOut[0];
-            }
+        nnIn[4] = getRadianceRatio(merisRadiance14, merisRadiance15);
+
+        if (isNeuralNetApplicable(nnIn, 0)) {
+            // otherwise do not apply NN, keep WV to standard value
+            neuralNetWv.process(nnIn, nnOut);
+            waterVapour = (float) nnOut[0];
         }
 
         return waterVapour;
     }
+
+    //
+    // Batch version of computeWaterVapour for the tile pixels pixelIndices[start..end).
+    // The input arrays are indexed by tile pixel index, the water vapour of pixel i is written to waterVapours[i].
+    // The NN inputs are prepared in contiguous arrays, and the NN is evaluated once per batch of pixels
+    // within the NN range. The results are identical to computeWaterVapour.
+    //
+    void computeWaterVapour(float[] zonalWinds, float[] meridionalWinds, float[] merisAzimuthDifferences,
+                            float[] merisViewZeniths, float[] merisSunZeniths,
+                            float[] merisRadiances14, float[] merisRadiances15,
+                            int[] pixelIndices, int start, int end, float[] waterVapours) {
+        final BatchBuffers buffers = batchBuffers.get();
+        final double[] nnIn = buffers.nnIn;
+        int n = 0;
+        for (int k = start; k < end; k++) {
+            final int i = pixelIndices[k];
+            final int offset = n * NUMBER_OF_NN_INPUTS;
+            final double viewZenith = Math.toRadians(merisViewZeniths[i]);
+            nnIn[offset] = Math.sqrt(zonalWinds[i] * zonalWinds[i] + meridionalWinds[i] * meridionalWinds[i]);
+            nnIn[offset + 1] = Math.cos(Math.toRadians(merisAzimuthDifferences[i])) * Math.sin(viewZenith);
+            nnIn[offset + 2] = Math.cos(viewZenith);
+            nnIn[offset + 3] = Math.cos(Math.toRadians(merisSunZeniths[i]));
+            nnIn[offset + 4] = getRadianceRatio(merisRadiances14[i], merisRadiances15[i]);
+
+            if (isNeuralNetApplicable(nnIn, offset)) {
+                buffers.pixelIndices[n++] = i;
+                if (n == BATCH_SIZE) {
+                    processBatch(buffers, n, waterVapours);
+                    n = 0;
+                }
+            } else {
+                waterVapours[i] = WATER_VAPOUR_STANDARD_VALUE;
+            }
+        }
+        if (n > 0) {
+            processBatch(buffers, n, waterVapours);
+        }
+    }
+
+    private void processBatch(BatchBuffers buffers, int n, float[] waterVapours) {
+        neuralNetWv.process(buffers.nnIn, buffers.nnOut, n);
+        for (int j = 0; j < n; j++) {
+            waterVapours[buffers.pixelIndices[j]] = (float) buffers.nnOut[j];
+        }
+    }
+
+    //
+    // The NN is applied if any of its inputs passes the range check (as in the breadboard, the check compares
+    // against both the lower and the upper limit).
+    //
+    private static boolean isNeuralNetApplicable(double[] nnIn, int offset) {
+        for (int i = 0; i < NUMBER_OF_NN_INPUTS; i++) {
+            final double value = nnIn[offset + i];
+            if (value >= NN_LIMITS[i][0] && value >= NN_LIMITS[i][1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //
+    // This method provides the (logarithmic) MERIS radiance ratio 15/14 used as water vapour NN input.
+    //
+    static double getRadianceRatio(float merisRadiance14, float merisRadiance15) {
+        return Math.log(Math.max(merisRadiance15, 1.0E-4)/Math.max(merisRadiance14, 1.0E-4));
+    }
+
+    private static class BatchBuffers {
+        private final double[] nnIn = new double[BATCH_SIZE * NUMBER_OF_NN_INPUTS];
+        private final double[] nnOut = new double[BATCH_SIZE];
+        private final int[] pixelIndices = new int[BATCH_SIZE];
+    }
 }
@@ -0,0 +1,120 @@
+package org.esa.beam.glint.operators;
+
+import org.esa.beam.framework.datamodel.TiePointGrid;
+
+/**
+ * This class provides the MERIS view azimuth corrected for the nadir discontinuity
+ * (see {@link FlintPreparation#correctViewAzimuthLinear(float[], int, int)}) at tie-point resolution.
+ * <p/>
+ * The discontinuity and the linear fits left and right of it are determined for each row of tie-points.
+ * Bilinear interpolation across the discontinuity would smear it over a whole tie-point cell, therefore two
+ * corrected grids are provided: the left grid continues the left fit right of the discontinuity, the right grid
+ * continues the right fit left of it. The view azimuth of an image pixel is interpolated on demand from the grid
+ * on its side of the discontinuity, which is interpolated between the tie-point rows.
+ * <p/>
+ * The result differs from the correction of the interpolated full-resolution rows (as by
+ * {@link FlintPreparation#correctViewAzimuthLinear(float[], int, int)}) near the discontinuity: both place it
+ * inside the same tie-point cell, but not necessarily at the same pixel, so pixels up to half a cell away from
+ * it may be assigned to different sides.
+ * Instances are immutable.
+ */
+class FlintTiePointViewAzimuthCorrection {
+
+    private final TiePointGrid leftGrid;
+    private final TiePointGrid rightGrid;
+    // per tie-point row: tie-point column coordinate of the discontinuity, NaN if no discontinuity was found
+    private final float[] discontinuityColumns;
+    private final float offsetX;
+    private final float offsetY;
+    private final float subSamplingX;
+    private final float subSamplingY;
+
+    FlintTiePointViewAzimuthCorrection(TiePointGrid viewAzimuthGrid) {
+        final int gridWidth = viewAzimuthGrid.getGridWidth();
+        final int gridHeight = viewAzimuthGrid.getGridHeight();
+        final float[] tiePoints = viewAzimuthGrid.getTiePoints();
+        final float[] leftTiePoints = tiePoints.clone();
+        final float[] rightTiePoints = tiePoints.clone();
+        discontinuityColumns = new float[gridHeight];
+        correctTiePoints(tiePoints, gridWidth, gridHeight, leftTiePoints, rightTiePoints, discontinuityColumns);
+
+        offsetX = viewAzimuthGrid.getOffsetX();
+        offsetY = viewAzimuthGrid.getOffsetY();
+        subSamplingX = viewAzimuthGrid.getSubSamplingX();
+        subSamplingY = viewAzimuthGrid.getSubSamplingY();
+        leftGrid = createGrid(viewAzimuthGrid, "left", leftTiePoints);
+        rightGrid = createGrid(viewAzimuthGrid, "right", rightTiePoints);
+    }
+
+    //
+    // This method provides the corrected view azimuth of image pixel (x, y).
+    //
+    float getSample(int x, int y) {
+        return isLeftOfDiscontinuity(x, y) ? leftGrid.getPixelFloat(x, y) : rightGrid.getPixelFloat(x, y);
+    }
+
+    boolean isLeftOfDiscontinuity(int x, int y) {
+        final float column = (x + 0.5f - offsetX) / subSamplingX;
+        final float row = (y + 0.5f - offsetY) / subSamplingY;
+        final int row0 = Math.max(0, Math.min((int) Math.floor(row), discontinuityColumns.length - 2));
+        final int row1 = Math.min(row0 + 1, discontinuityColumns.length - 1);
+        final float column0 = discontinuityColumns[row0];
+        final float column1 = discontinuityColumns[row1];
+        final float discontinuityColumn;
+        if (Float.isNaN(column0)) {
+            discontinuityColumn = column1;
+        } else if (Float.isNaN(column1)) {
+            discontinuityColumn = column0;
+        } else {
+            final float weight = Math.max(0.0f, Math.min(row - row0, 1.0f));
+            discontinuityColumn = column0 + weight * (column1 - column0);
+        }
+        // no discontinuity in either row: both grids are uncorrected there
+        return Float.isNaN(discontinuityColumn) || column < discontinuityColumn;
+    }
+
+    //
+    // This method corrects each row of tie-points like an image row in correctViewAzimuthLinear, with the
+    // left fit continued to the end and the right fit continued to the start of the swath in the left
+    // and right tie-points, respectively.
+    // leftTiePoints, rightTiePoints: initialised with the tie-points
+    //
+    static void correctTiePoints(float[] tiePoints, int gridWidth, int gridHeight,
+                                 float[] leftTiePoints, float[] rightTiePoints, float[] discontinuityColumns) {
+        for (int j = 0; j < gridHeight; j++) {
+            final int offset = j * gridWidth;
+            discontinuityColumns[j] = Float.NaN;
+            final int startIndex = FlintPreparation.getSwathStartIndex(tiePoints, offset, gridWidth);
+            final int endIndex = FlintPreparation.getSwathEndIndex(tiePoints, offset, gridWidth);
+            if (!FlintPreparation.isCorrectableSwath(tiePoints, offset, startIndex, endIndex)) {
+                continue;
+            }
+            final int length = endIndex - startIndex + 1;
+            final FlintPreparation.ProfileFit fit =
+                    FlintPreparation.fitViewAzimuthProfile(tiePoints, offset + startIndex, length);
+            if (!fit.isDiscontinuityFound()) {
+                continue;
+            }
+            for (int i = fit.discontLeftIndex; i < length; i++) {
+                leftTiePoints[offset + startIndex + i] = (float) fit.getLeftValue(i);
+            }
+            for (int i = 0; i < fit.discontRightIndex; i++) {
+                rightTiePoints[offset + startIndex + i] = (float) fit.getRightValue(i);
+            }
+            // between the last tie-point left and the first tie-point right of the discontinuity
+            discontinuityColumns[j] = startIndex + fit.getDiscontIndex() + 0.5f;
+        }
+    }
+
+    //
+    // The corrected tie-points are continuous, but the continued fits may exceed +-180 degrees, so the grids
+    // are interpolated linearly. Interpolation via sine and cosine (as for the source grid) would wrap them.
+    //
+    private static TiePointGrid createGrid(TiePointGrid viewAzimuthGrid, String side, float[] tiePoints) {
+        return new TiePointGrid(viewAzimuthGrid.getName() + "_" + side,
+                                viewAzimuthGrid.getGridWidth(), viewAzimuthGrid.getGridHeight(),
+                                viewAzimuthGrid.getOffsetX(), viewAzimuthGrid.getOffsetY(),
+                                viewAzimuthGrid.getSubSamplingX(), viewAzimuthGrid.getSubSamplingY(),
+                                tiePoints, TiePointGrid.DISCONT_NONE);
+    }
+}
@@ -0,0 +1,113 @@
+package org.esa.beam.glint.operators;
+
+/**
+ * This class provides the computation of the transmissions in the AATSR 3.7um and 1.6um channels
+ * by a weighted sum of k-terms (breadboard step 1.b.2).
+ * <p/>
+ * The layer coefficients are reduced at construction time: for each spectral interval i the sum over all layers
+ * of A[i][j] + H[i][j]*wv/2.7872 equals A_i + H_i*wv with A_i = sum_j A[i][j] and H_i = sum_j H[i][j]/2.7872.
+ * Both channels are computed from one airmass, which depends on sun and view zenith only.
+ * Instances are immutable and can be shared between threads.
+ */
+class FlintTransmission {
+
+    private static final double WATER_VAPOUR_NORMALIZATION = 2.7872;
+
+    private final double[] aSum37;
+    private final double[] hSum37;
+    private final double[] weight37;
+    private final double[] aSum16;
+    private final double[] hSum16;
+    private final double[] weight16;
+
+    FlintTransmission(float[][] aCoeff37, float[][] hCoeff37, float[] hWeight37,
+                      float[][] aCoeff16, float[][] hCoeff16, float[] hWeight16) {
+        aSum37 = sumOverLayers(aCoeff37, 1.0);
+        hSum37 = sumOverLayers(hCoeff37, WATER_VAPOUR_NORMALIZATION);
+        weight37 = toDouble(hWeight37);
+        aSum16 = sumOverLayers(aCoeff16, 1.0);
+        hSum16 = sumOverLayers(hCoeff16, WATER_VAPOUR_NORMALIZATION);
+        weight16 = toDouble(hWeight16);
+    }
+
+    //
+    // This method computes the airmass for the given AATSR sun and view zenith angles (in degree)
+    //
+    static double computeAirmass(float sunZenith, float viewZenith) {
+        return 1.0 / Math.cos(Math.toRadians(sunZenith)) + 1.0 / Math.cos(Math.toRadians(viewZenith));
+    }
+
+    float computeTransmission37(float waterVapourColumn, double airmass) {
+        return computeTransmission(aSum37, hSum37, weight37, waterVapourColumn, airmass);
+    }
+
+    float computeTransmission16(float waterVapourColumn, double airmass) {
+        return computeTransmission(aSum16, hSum16, weight16, waterVapourColumn, airmass);
+    }
+
+    //
+    // This method computes the transmissions in both channels for n pixels, both from one airmass per pixel.
+    // For each spectral interval, the exponentials of all pixels are computed in one tight loop.
+    // trans16 may be null if the transmission at 1.6um is not needed.
+    //
+    void computeTransmissions(float[] waterVapourColumn, float[] sunZenith, float[] viewZenith, int n,
+                              float[] trans37, float[] trans16) {
+        final double[] airmass = new double[n];
+        for (int p = 0; p < n; p++) {
+            airmass[p] = computeAirmass(sunZenith[p], viewZenith[p]);
+        }
+        final double[] weightedIntegral = new double[n];
+        computeTransmissions(aSum37, hSum37, weight37, waterVapourColumn, airmass, n, weightedIntegral, trans37);
+        if (trans16 != null) {
+            computeTransmissions(aSum16, hSum16, weight16, waterVapourColumn, airmass, n, weightedIntegral, trans16);
+        }
+    }
+
+    private static float computeTransmission(double[] aSum, double[] hSum, double[] weight,
+                                             float waterVapourColumn, double airmass) {
+        double weightedIntegral = 0.0;
+        for (int i = 0; i < weight.length; i++) {
+            weightedIntegral += weight[i] * Math.exp(-airmass * (aSum[i] + hSum[i] * waterVapourColumn));
+        }
+        return (float) weightedIntegral;
+    }
+
+    private static void computeTransmissions(double[] aSum, double[] hSum, double[] weight,
+                                             float[] waterVapourColumn, double[] airmass, int n,
+                                             double[] weightedIntegral, float[] transmission) {
+        for (int p = 0; p < n; p++) {
+            weightedIntegral[p] = 0.0;
+        }
+        for (int i = 0; i < weight.length; i++) {
+            final double a = aSum[i];
+            final double h = hSum[i];
+            final double w = weight[i];
+            for (int p = 0; p < n; p++) {
+                weightedIntegral[p] += w * Math.exp(-airmass[p] * (a + h * waterVapourColumn[p]));
+            }
+        }
+        for (int p = 0; p < n; p++) {
+            transmission[p] = (float) weightedIntegral[p];
+        }
+    }
+
+    private static double[] sumOverLayers(float[][] coeffs, double normalization) {
+        final double[] sums = new double[coeffs.length];
+        for (int i = 0; i < coeffs.length; i++) {
+            double sum = 0.0;
+            for (int j = 0; j < coeffs[i].length; j++) {
+                sum += coeffs[i][j];
+            }
+            sums[i] = sum / normalization;
+        }
+        return sums;
+    }
+
+    private static double[] toDouble(float[] values) {
+        final double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,121 @@
+package org.esa.beam.glint.operators;
+
+/**
+ * This class provides the transmissions in the AATSR 3.7um and 1.6um channels from a precomputed
+ * 2D LUT over (water vapour column, airmass) with bilinear interpolation.
+ * Outside of the LUT domain the exact k-term sum of {@link FlintTransmission} is used.
+ * Instances are immutable and can be shared between threads.
+ */
+class FlintTransmissionLut {
+
+    static final int DEFAULT_SIZE = 101;
+
+    // the FUB water vapour net provides values up to ~8.6
+    static final double MIN_WATER_VAPOUR = 0.0;
+    static final double MAX_WATER_VAPOUR = 9.0;
+    // sun zenith up to ~80deg, AATSR nadir view zenith up to ~22deg
+    static final double MIN_AIRMASS = 2.0;
+    static final double MAX_AIRMASS = 8.0;
+
+    private final FlintTransmission transmission;
+    private final int size;
+    private final double waterVapourStep;
+    private final double airmassStep;
+
+    // layout: [waterVapourIndex * size + airmassIndex]
+    private final double[] lut37;
+    private final double[] lut16;
+
+    private final double maximumInterpolationError37;
+    private final double maximumInterpolationError16;
+
+    FlintTransmissionLut(FlintTransmission transmission, int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("LUT size must be at least 2.");
+        }
+        this.transmission = transmission;
+        this.size = size;
+        waterVapourStep = (MAX_WATER_VAPOUR - MIN_WATER_VAPOUR) / (size - 1);
+        airmassStep = (MAX_AIRMASS - MIN_AIRMASS) / (size - 1);
+
+        lut37 = new double[size * size];
+        lut16 = new double[size * size];
+        for (int i = 0; i < size; i++) {
+            final float waterVapour = (float) (MIN_WATER_VAPOUR + i * waterVapourStep);
+            for (int j = 0; j < size; j++) {
+                final double airmass = MIN_AIRMASS + j * airmassStep;
+                lut37[i * size + j] = transmission.computeTransmission37(waterVapour, airmass);
+                lut16[i * size + j] = transmission.computeTransmission16(waterVapour, airmass);
+            }
+        }
+
+        // the interpolation error of a bilinear interpolation is largest in the cell centres
+        double maxError37 = 0.0;
+        double maxError16 = 0.0;
+        for (int i = 0; i < size - 1; i++) {
+            final float waterVapour = (float) (MIN_WATER_VAPOUR + (i + 0.5) * waterVapourStep);
+            for (int j = 0; j < size - 1; j++) {
+                final double airmass = MIN_AIRMASS + (j + 0.5) * airmassStep;
+                maxError37 = Math.max(maxError37, Math.abs(interpolate(lut37, waterVapour, airmass) -
+                                                           transmission.computeTransmission37(waterVapour, airmass)));
+                maxError16 = Math.max(maxError16, Math.abs(interpolate(lut16, waterVapour, airmass) -
+                                                           transmission.computeTransmission16(waterVapour, airmass)));
+            }
+        }
+        maximumInterpolationError37 = maxError37;
+        maximumInterpolationError16 = maxError16;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    double getMaximumInterpolationError37() {
+        return maximumInterpolationError37;
+    }
+
+    double getMaximumInterpolationError16() {
+        return maximumInterpolationError16;
+    }
+
+    //
+    // trans16 may be null if the transmission at 1.6um is not needed.
+    //
+    void computeTransmissions(float[] waterVapourColumn, float[] sunZenith, float[] viewZenith, int n,
+                              float[] trans37, float[] trans16) {
+        for (int p = 0; p < n; p++) {
+            final float waterVapour = waterVapourColumn[p];
+            final double airmass = FlintTransmission.computeAirmass(sunZenith[p], viewZenith[p]);
+            if (isInsideLut(waterVapour, airmass)) {
+                trans37[p] = (float) interpolate(lut37, waterVapour, airmass);
+                if (trans16 != null) {
+                    trans16[p] = (float) interpolate(lut16, waterVapour, airmass);
+                }
+            } else {
+                trans37[p] = transmission.computeTransmission37(waterVapour, airmass);
+                if (trans16 != null) {
+                    trans16[p] = transmission.computeTransmission16(waterVapour, airmass);
+                }
+            }
+        }
+    }
+
+    private static boolean isInsideLut(double waterVapour, double airmass) {
+        return waterVapour >= MIN_WATER_VAPOUR && waterVapour <= MAX_WATER_VAPOUR &&
+               airmass >= MIN_AIRMASS && airmass <= MAX_AIRMASS;
+    }
+
+    private double interpolate(double[] lut, double waterVapour, double airmass) {
+        final double wvPos = (waterVapour - MIN_WATER_VAPOUR) / waterVapourStep;
+        final double amPos = (airmass - MIN_AIRMASS) / airmassStep;
+        final int i = Math.min((int) wvPos, size - 2);
+        final int j = Math.min((int) amPos, size - 2);
+        final double wi = wvPos - i;
+        final double wj = amPos - j;
+
+        final int index = i * size + j;
+        final double lower = lut[index] + wj * (lut[index + 1] - lut[index]);
+        final double upper = lut[index + size] + wj * (lut[index + size + 1] - lut[index + size]);
+        return lower + wi * (upper - lower);
+    }
+}
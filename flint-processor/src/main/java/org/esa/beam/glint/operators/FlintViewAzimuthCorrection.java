@@ -0,0 +1,133 @@
+package org.esa.beam.glint.operators;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class provides the view azimuth of a scene corrected for the nadir discontinuity
+ * (see {@link FlintPreparation#correctViewAzimuthLinear(float[], int, int)}).
+ * <p/>
+ * The correction is done lazily for blocks of image rows on first access. Corrected blocks are kept in a
+ * bounded LRU cache, so the memory needed scales with the block height instead of the scene size.
+ * A block is corrected on the calling thread, the tile threads of GPF already use all cores.
+ * All methods are thread-safe. If two threads request the same uncached block at the same time, it may be
+ * corrected twice, but both get identical values.
+ */
+class FlintViewAzimuthCorrection {
+
+    static final int DEFAULT_BLOCK_HEIGHT = 64;
+    static final int DEFAULT_MAX_CACHED_BLOCKS = 16;
+
+    /**
+     * Provides the uncorrected view azimuths of a block of full-width image rows.
+     */
+    interface RowSource {
+        //
+        // samples: height x width values in row-major order
+        //
+        void readRows(int y, int height, float[] samples);
+    }
+
+    private final RowSource rowSource;
+    private final FlintPreparation preparation;
+    private final int width;
+    private final int height;
+    private final int blockHeight;
+    private final Map<Integer, Block> cache;
+
+    FlintViewAzimuthCorrection(RowSource rowSource, FlintPreparation preparation, int width, int height,
+                               int blockHeight, final int maxCachedBlocks) {
+        if (blockHeight < 1 || maxCachedBlocks < 1) {
+            throw new IllegalArgumentException("Block height and cache size must be at least 1.");
+        }
+        this.rowSource = rowSource;
+        this.preparation = preparation;
+        this.width = width;
+        this.height = height;
+        this.blockHeight = blockHeight;
+        cache = new LinkedHashMap<Integer, Block>(maxCachedBlocks + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+                return size() > maxCachedBlocks;
+            }
+        };
+    }
+
+    //
+    // This method provides the block of corrected rows containing image row y.
+    //
+    Block getBlock(int y) {
+        final Block cachedBlock = getCachedBlock(y);
+        if (cachedBlock != null) {
+            return cachedBlock;
+        }
+        return cacheBlock(correctBlock(y));
+    }
+
+    int getNumberOfCachedBlocks() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private Block getCachedBlock(int y) {
+        if (y < 0 || y >= height) {
+            throw new IllegalArgumentException("Row " + y + " is outside of the scene.");
+        }
+        synchronized (cache) {
+            return cache.get(y / blockHeight);
+        }
+    }
+
+    //
+    // This method caches a new block, unless another thread has cached the same block meanwhile.
+    //
+    private Block cacheBlock(Block block) {
+        final int blockIndex = block.y / blockHeight;
+        synchronized (cache) {
+            final Block cachedBlock = cache.get(blockIndex);
+            if (cachedBlock != null) {
+                return cachedBlock;
+            }
+            cache.put(blockIndex, block);
+        }
+        return block;
+    }
+
+    private Block correctBlock(int y) {
+        final int y0 = (y / blockHeight) * blockHeight;
+        final int rows = Math.min(blockHeight, height - y0);
+        final float[] samples = new float[rows * width];
+        rowSource.readRows(y0, rows, samples);
+        for (int r = 0; r < rows; r++) {
+            preparation.correctViewAzimuthLinear(samples, r * width, width);
+        }
+        return new Block(y0, rows, width, samples);
+    }
+
+    /**
+     * A block of corrected full-width image rows. Blocks are immutable.
+     */
+    static final class Block {
+
+        private final int y;
+        private final int height;
+        private final int width;
+        private final float[] samples;
+
+        private Block(int y, int height, int width, float[] samples) {
+            this.y = y;
+            this.height = height;
+            this.width = width;
+            this.samples = samples;
+        }
+
+        boolean containsRow(int y) {
+            return y >= this.y && y < this.y + height;
+        }
+
+        float getSample(int x, int y) {
+            return samples[(y - this.y) * width + x];
+        }
+    }
+}
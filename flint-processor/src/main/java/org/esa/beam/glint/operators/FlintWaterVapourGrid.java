@@ -0,0 +1,107 @@
+package org.esa.beam.glint.operators;
+
+import java.awt.Rectangle;
+
+/**
+ * This class provides the water vapour column (breadboard step 1.b.1) for the pixels of a tile
+ * by bilinear interpolation between nodes of a subsampled grid (see {@link FlintNodeGrid}).
+ * <p/>
+ * The NN inputs wind, geometry and MERIS radiance ratio 15/14 are smooth over most of a scene, so the
+ * water vapour is computed only at the nodes (on first access). The water vapour of a pixel is computed
+ * exactly if
+ * <ul>
+ * <li>its radiance ratio deviates by more than {@link #MAXIMUM_RADIANCE_RATIO_DEVIATION} from the ratio
+ * interpolated between the nodes (e.g. at cloud or coast edges), or</li>
+ * <li>the NN was applied at some, but not all nodes of its cell.</li>
+ * </ul>
+ * Instances are not thread-safe, one instance is used per tile computation.
+ */
+class FlintWaterVapourGrid {
+
+    // in units of the logarithmic radiance ratio (NN input)
+    static final double MAXIMUM_RADIANCE_RATIO_DEVIATION = 0.02;
+
+    /**
+     * Provides the exact water vapour and the radiance ratio at an image pixel.
+     */
+    interface PixelSource {
+        float computeWaterVapour(int x, int y);
+
+        // see FlintSolarPart37WaterVapour.getRadianceRatio
+        double getRadianceRatio(int x, int y);
+    }
+
+    private final PixelSource pixelSource;
+    private final FlintNodeGrid nodeGrid;
+
+    private final float[] nodeWaterVapours;
+    private final double[] nodeRadianceRatios;
+    private final boolean[] nodeComputed;
+    private int numberOfComputations;
+
+    FlintWaterVapourGrid(PixelSource pixelSource, Rectangle rectangle, int cellSize) {
+        this.pixelSource = pixelSource;
+        nodeGrid = new FlintNodeGrid(rectangle, cellSize);
+        final int numberOfNodes = nodeGrid.getNumberOfNodes();
+        nodeWaterVapours = new float[numberOfNodes];
+        nodeRadianceRatios = new double[numberOfNodes];
+        nodeComputed = new boolean[numberOfNodes];
+    }
+
+    //
+    // This method provides the water vapour of image pixel (x, y).
+    //
+    float getWaterVapour(int x, int y) {
+        final int n00 = nodeGrid.getCellNode(x, y, 0);
+        final int n10 = nodeGrid.getCellNode(x, y, 1);
+        final int n01 = nodeGrid.getCellNode(x, y, 2);
+        final int n11 = nodeGrid.getCellNode(x, y, 3);
+        computeNode(n00);
+        computeNode(n10);
+        computeNode(n01);
+        computeNode(n11);
+
+        final double wx = nodeGrid.getWeightX(x);
+        final double wy = nodeGrid.getWeightY(y);
+        final double radianceRatio = interpolate(nodeRadianceRatios, n00, n10, n01, n11, wx, wy);
+        if (Math.abs(pixelSource.getRadianceRatio(x, y) - radianceRatio) > MAXIMUM_RADIANCE_RATIO_DEVIATION ||
+            !isSameNeuralNetUsage(n00, n10, n01, n11)) {
+            numberOfComputations++;
+            return pixelSource.computeWaterVapour(x, y);
+        }
+        final float[] wv = nodeWaterVapours;
+        return (float) ((1.0 - wy) * ((1.0 - wx) * wv[n00] + wx * wv[n10]) + wy * ((1.0 - wx) * wv[n01] + wx * wv[n11]));
+    }
+
+    // the number of exact water vapour computations (nodes and pixels) so far
+    int getNumberOfComputations() {
+        return numberOfComputations;
+    }
+
+    private void computeNode(int node) {
+        if (!nodeComputed[node]) {
+            final int x = nodeGrid.getNodeX(node);
+            final int y = nodeGrid.getNodeY(node);
+            nodeWaterVapours[node] = pixelSource.computeWaterVapour(x, y);
+            nodeRadianceRatios[node] = pixelSource.getRadianceRatio(x, y);
+            nodeComputed[node] = true;
+            numberOfComputations++;
+        }
+    }
+
+    private boolean isSameNeuralNetUsage(int n00, int n10, int n01, int n11) {
+        final boolean standard00 = isStandardValue(nodeWaterVapours[n00]);
+        return isStandardValue(nodeWaterVapours[n10]) == standard00 &&
+               isStandardValue(nodeWaterVapours[n01]) == standard00 &&
+               isStandardValue(nodeWaterVapours[n11]) == standard00;
+    }
+
+    private static boolean isStandardValue(float waterVapour) {
+        return waterVapour == FlintSolarPart37WaterVapour.WATER_VAPOUR_STANDARD_VALUE;
+    }
+
+    private static double interpolate(double[] values, int n00, int n10, int n01, int n11, double wx, double wy) {
+        return (1.0 - wy) * ((1.0 - wx) * values[n00] + wx * values[n10]) +
+               wy * ((1.0 - wx) * values[n01] + wx * values[n11]);
+    }
+}
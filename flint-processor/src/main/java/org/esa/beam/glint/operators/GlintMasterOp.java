@@ -1,7 +1,10 @@
 package org.esa.beam.glint.operators;
 
 import org.esa.beam.collocation.CollocateOp;
+import org.esa.beam.framework.dataio.ProductSubsetDef;
+import org.esa.beam.framework.datamodel.GeoCoding;
 import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGeoCoding;
 import org.esa.beam.framework.gpf.GPF;
 import org.esa.beam.framework.gpf.Operator;
 import org.esa.beam.framework.gpf.OperatorException;
@@ -11,8 +14,14 @@ import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.framework.gpf.annotations.Parameter;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * GLINT main operator setting up:
@@ -94,17 +103,80 @@ public class GlintMasterOp extends Operator {
                label = "Normalized Radiance (Final Result)")
     boolean writeNormalizedRadianceFinal;
 
+    @Parameter(defaultValue = "false",
+               label = "Use precomputed windspeed/Gauss parameter grid")
+    boolean useGaussParsGrid;
+
+    @Parameter(defaultValue = "false",
+               label = "Use precomputed transmission LUT")
+    boolean useTransmissionLut;
+
+    @Parameter(defaultValue = "101", interval = "[21,401]",
+               label = "Transmission LUT size")
+    int transmissionLutSize;
+
+    @Parameter(defaultValue = "false",
+               label = "Use adaptive windspeed search")
+    boolean useAdaptiveWindspeedSearch;
+
+    @Parameter(defaultValue = "10", interval = "[1,150]",
+               label = "Adaptive windspeed search step")
+    int adaptiveWindspeedSearchStep;
+
+    @Parameter(defaultValue = "false",
+               label = "Interpolate radiance curves between geometry nodes")
+    boolean useRadianceCurveGrid;
+
+    @Parameter(defaultValue = "0", interval = "[0,1024]",
+               label = "Radiance curve cell size")
+    int radianceCurveCellSize;
+
+    @Parameter(defaultValue = "false",
+               label = "Compute water vapour at reduced resolution")
+    boolean useReducedResolutionWaterVapour;
+
+    @Parameter(defaultValue = "0", interval = "[0,1024]",
+               label = "Water vapour cell size")
+    int waterVapourCellSize;
+
+    @Parameter(label = "Geometrical conversion inversion table")
+    File inversionTableFile;
+
+    @Parameter(defaultValue = "false",
+               label = "Collocate with precomputed pixel mapping")
+    boolean usePixelMapping;
+
+    @Parameter(label = "Collocation pixel mapping file")
+    File pixelMappingFile;
+
+    // suffixes of the MERIS and AATSR raster names in the collocation product (CollocateOp default)
+    static final String MASTER_SUFFIX = "_M";
+    static final String SLAVE_SUFFIX = "_S";
+
     public void initialize() throws OperatorException {
         // create collocation product...
+        // only the rasters read by FlintOp for the requested outputs are collocated
+        final FlintProcessingPlan processingPlan = FlintOp.createProcessingPlan(getSelectedOutputBands());
         Map<String, Product> collocateInput = new HashMap<String, Product>(2);
-        collocateInput.put("masterProduct", merisSourceProduct);
-        collocateInput.put("slaveProduct", aatsrSourceProduct);
-        Product collocateProduct =
-                GPF.createProduct(OperatorSpi.getOperatorAlias(CollocateOp.class), GPF.NO_PARAMS, collocateInput);
+        collocateInput.put("masterProduct",
+                           createSourceSubset(merisSourceProduct, processingPlan, MASTER_SUFFIX, true));
+        collocateInput.put("slaveProduct",
+                           createSourceSubset(aatsrSourceProduct, processingPlan, SLAVE_SUFFIX, false));
+        Product collocateProduct;
+        if (usePixelMapping) {
+            // the pixel mapping is computed once per scene pair (and reused from pixelMappingFile, if given)
+            Map<String, Object> collocateParameters = new HashMap<String, Object>(1);
+            collocateParameters.put("pixelMappingFile", pixelMappingFile);
+            collocateProduct = GPF.createProduct(OperatorSpi.getOperatorAlias(FlintCollocateOp.class),
+                                                 collocateParameters, collocateInput);
+        } else {
+            collocateProduct =
+                    GPF.createProduct(OperatorSpi.getOperatorAlias(CollocateOp.class), GPF.NO_PARAMS, collocateInput);
+        }
 
         Map<String, Product> flintInput = new HashMap<String, Product>(1);
         flintInput.put("l1bCollocate", collocateProduct);
-        Map<String, Object> flintParameters = new HashMap<String, Object>(13);
+        Map<String, Object> flintParameters = new HashMap<String, Object>(24);
         flintParameters.put("writeWaterVapour", writeWaterVapour);
         flintParameters.put("writeTransmission37", writeTransmission37);
         flintParameters.put("writeTransmission16", writeTransmission16);
@@ -118,11 +190,86 @@ public class GlintMasterOp extends Operator {
         flintParameters.put("writeRadiance2", writeRadiance2);
         flintParameters.put("writeEffectiveWindspeedFinal", writeEffectiveWindspeedFinal);
         flintParameters.put("writeNormalizedRadianceFinal", writeNormalizedRadianceFinal);
+        flintParameters.put("useGaussParsGrid", useGaussParsGrid);
+        flintParameters.put("useTransmissionLut", useTransmissionLut);
+        flintParameters.put("transmissionLutSize", transmissionLutSize);
+        flintParameters.put("useAdaptiveWindspeedSearch", useAdaptiveWindspeedSearch);
+        flintParameters.put("adaptiveWindspeedSearchStep", adaptiveWindspeedSearchStep);
+        flintParameters.put("useRadianceCurveGrid", useRadianceCurveGrid);
+        flintParameters.put("radianceCurveCellSize", radianceCurveCellSize);
+        flintParameters.put("useReducedResolutionWaterVapour", useReducedResolutionWaterVapour);
+        flintParameters.put("waterVapourCellSize", waterVapourCellSize);
+        flintParameters.put("inversionTableFile", inversionTableFile);
         Product flintProduct = GPF.createProduct(OperatorSpi.getOperatorAlias(FlintOp.class), flintParameters, flintInput);
 
         targetProduct = flintProduct;
     }
 
+    //
+    // This method provides the output bands selected by the write* parameters (as passed to FlintOp)
+    //
+    Set<FlintOutputBand> getSelectedOutputBands() {
+        final Set<FlintOutputBand> outputBands = EnumSet.noneOf(FlintOutputBand.class);
+        FlintOp.addIf(writeWaterVapour, FlintOutputBand.WATER_VAPOUR, outputBands);
+        FlintOp.addIf(writeTransmission37, FlintOutputBand.TRANSMISSION_37, outputBands);
+        FlintOp.addIf(writeTransmission16, FlintOutputBand.TRANSMISSION_16, outputBands);
+        FlintOp.addIf(writeThermalPart37, FlintOutputBand.RADIANCE_THERMAL_PART_37, outputBands);
+        FlintOp.addIf(writeSolarPart37, FlintOutputBand.SOLAR_PART_37, outputBands);
+        FlintOp.addIf(writeSolarPart37AatsrUnits, FlintOutputBand.SOLAR_PART_37_AATSR_UNITS, outputBands);
+        FlintOp.addIf(writeRadiance1, FlintOutputBand.RADIANCE1, outputBands);
+        FlintOp.addIf(writeRadiance2, FlintOutputBand.RADIANCE2, outputBands);
+        FlintOp.addIf(writeEffectiveWindspeed1, FlintOutputBand.WINDSPEED1, outputBands);
+        FlintOp.addIf(writeEffectiveWindspeed2, FlintOutputBand.WINDSPEED2, outputBands);
+        FlintOp.addIf(writeNumberEffectiveWindspeeds, FlintOutputBand.NUMBER_WINDSPEEDS, outputBands);
+        FlintOp.addIf(writeEffectiveWindspeedFinal, FlintOutputBand.WINDSPEED_FINAL, outputBands);
+        FlintOp.addIf(writeNormalizedRadianceFinal, FlintOutputBand.RADIANCE_FINAL, outputBands);
+        return outputBands;
+    }
+
+    //
+    // This method provides a subset of a source product with the rasters read by FlintOp for the given plan
+    // (see FlintOp.getRequiredSourceRasterNames), i.e. those with the given suffix in the collocation product.
+    // The tie-point grids of a tie-point geo-coding are always kept, all tie-point grids if
+    // allTiePointGrids is set (the master tie-point grids are not resampled, but copied to the target product).
+    //
+    static Product createSourceSubset(Product sourceProduct, FlintProcessingPlan processingPlan, String suffix,
+                                      boolean allTiePointGrids) {
+        final ProductSubsetDef subsetDef = new ProductSubsetDef();
+        subsetDef.addNodeNames(getRequiredSourceRasterNames(processingPlan, suffix, allTiePointGrids));
+        if (allTiePointGrids) {
+            subsetDef.addNodeNames(sourceProduct.getTiePointGridNames());
+        }
+        final GeoCoding geoCoding = sourceProduct.getGeoCoding();
+        if (geoCoding instanceof TiePointGeoCoding) {
+            subsetDef.addNodeName(((TiePointGeoCoding) geoCoding).getLatGrid().getName());
+            subsetDef.addNodeName(((TiePointGeoCoding) geoCoding).getLonGrid().getName());
+        }
+        try {
+            return sourceProduct.createSubset(subsetDef, sourceProduct.getName(), sourceProduct.getDescription());
+        } catch (IOException e) {
+            throw new OperatorException("Failed to create subset of product " + sourceProduct.getName() + ":\n" +
+                                        e.getMessage(), e);
+        }
+    }
+
+    //
+    // This method provides the source product names of the rasters read by FlintOp for the given plan which
+    // have the given suffix in the collocation product. Names without suffix (master tie-point grids) are
+    // included if requested.
+    //
+    static String[] getRequiredSourceRasterNames(FlintProcessingPlan processingPlan, String suffix,
+                                                 boolean unsuffixedNames) {
+        final List<String> rasterNames = new ArrayList<String>();
+        for (String rasterName : FlintOp.getRequiredSourceRasterNames(processingPlan)) {
+            if (rasterName.endsWith(suffix)) {
+                rasterNames.add(rasterName.substring(0, rasterName.length() - suffix.length()));
+            } else if (unsuffixedNames && !rasterName.endsWith(MASTER_SUFFIX) && !rasterName.endsWith(SLAVE_SUFFIX)) {
+                rasterNames.add(rasterName);
+            }
+        }
+        return rasterNames.toArray(new String[rasterNames.size()]);
+    }
+
     /**
      * This method creates the target product
      */
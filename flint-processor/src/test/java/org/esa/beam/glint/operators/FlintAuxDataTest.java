@@ -7,6 +7,7 @@ import org.esa.beam.glint.operators.FlintOp;
 import org.esa.beam.glint.operators.FlintAuxData;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Unit test for simple App.
@@ -249,4 +250,64 @@ public class FlintAuxDataTest
             fail("Could not read water vapour coefficients: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    public void testAuxDataIsParsedOnce() throws Exception {
+        final FlintAuxData auxData = FlintAuxData.getInstance();
+        assertSame(auxData, FlintAuxData.getInstance());
+        assertSame(auxData.createCahalanTable(), auxData.createCahalanTable());
+        assertSame(auxData.createTemp2RadianceTable(), auxData.createTemp2RadianceTable());
+        assertSame(auxData.createAatsrSpectralResponse37Table(), auxData.createAatsrSpectralResponse37Table());
+        assertTrue(Arrays.deepEquals(auxData.readWaterVapourCoefficients(37, "A"),
+                                     auxData.readWaterVapourCoefficients(37, "a")));
+        assertFalse(Arrays.deepEquals(auxData.readWaterVapourCoefficients(37, "A"),
+                                      auxData.readWaterVapourCoefficients(37, "H")));
+        assertSame(auxData.loadCompiledNeuralNet(FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME),
+                   auxData.loadCompiledNeuralNet(FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME));
+    }
+
+    public void testSharedAuxDataCannotBeModified() throws Exception {
+        final FlintAuxData auxData = FlintAuxData.getInstance();
+        final FlintAuxData.CahalanTable cahalanTable = auxData.createCahalanTable();
+        final double x0 = cahalanTable.getX()[0];
+        cahalanTable.getX()[0] = -1.0;
+        assertEquals(x0, cahalanTable.getX()[0], 0.0);
+        assertEquals(x0, auxData.createCahalanTable().getX()[0], 0.0);
+
+        final float[][] coeffs = auxData.readWaterVapourCoefficients(16, "H");
+        final float coeff0 = coeffs[0][0];
+        coeffs[0][0] = -1.0f;
+        assertEquals(coeff0, auxData.readWaterVapourCoefficients(16, "H")[0][0], 0.0f);
+
+        final float[] weights = auxData.readTransmissionWeights(16, "H");
+        final float weight0 = weights[0];
+        weights[0] = -1.0f;
+        assertEquals(weight0, auxData.readTransmissionWeights(16, "H")[0], 0.0f);
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final FlintAuxData auxData = new FlintAuxData();
+        final int numThreads = 8;
+        final Object[] tables = new Object[numThreads];
+        final Exception[] failures = new Exception[numThreads];
+        final Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int threadIndex = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        tables[threadIndex] = auxData.createCahalanTable();
+                    } catch (Exception e) {
+                        failures[threadIndex] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < numThreads; i++) {
+            threads[i].join();
+            assertNull(failures[i]);
+            assertSame(tables[0], tables[i]);
+        }
+    }
+}
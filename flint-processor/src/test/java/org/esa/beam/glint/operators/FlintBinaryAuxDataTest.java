@@ -0,0 +1,118 @@
+package org.esa.beam.glint.operators;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+
+public class FlintBinaryAuxDataTest extends TestCase {
+
+    private File outputDir;
+    private FlintAuxData textAuxData;
+
+    protected void setUp() throws IOException {
+        outputDir = File.createTempFile("flint-auxdata", "");
+        assertTrue(outputDir.delete());
+        assertTrue(outputDir.mkdir());
+        textAuxData = new FlintAuxData(false);
+    }
+
+    protected void tearDown() {
+        final File[] files = outputDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        outputDir.delete();
+    }
+
+    public void testConvertedTablesAreIdenticalToTextTables() throws IOException {
+        FlintBinaryAuxData.convert(outputDir);
+
+        final double[] temp2Rad = read(FlintAuxData.TEMP2RAD_FILE_NAME, 200, 2);
+        final FlintAuxData.Temp2RadianceTable temp2RadianceTable = textAuxData.createTemp2RadianceTable();
+        for (int i = 0; i < 200; i++) {
+            assertEquals(temp2RadianceTable.getTemp()[i], temp2Rad[2 * i], 0.0);
+            assertEquals(temp2RadianceTable.getRad()[i], temp2Rad[2 * i + 1], 0.0);
+        }
+
+        final double[] cahalan = read(FlintAuxData.CAHALAN_FILE_NAME, 2496, 2);
+        final FlintAuxData.CahalanTable cahalanTable = textAuxData.createCahalanTable();
+        for (int i = 0; i < 2496; i++) {
+            assertEquals(cahalanTable.getX()[i], cahalan[2 * i], 0.0);
+            assertEquals(cahalanTable.getY()[i], cahalan[2 * i + 1], 0.0);
+        }
+
+        final double[] coeffs = read(FlintAuxData.getWaterVapourCoefficientsFileName(16, "H"), 54, 8);
+        final float[][] textCoeffs = textAuxData.readWaterVapourCoefficients(16, "H");
+        for (int j = 0; j < 54; j++) {
+            for (int i = 0; i < 8; i++) {
+                assertEquals(textCoeffs[j][i], (float) coeffs[j * 8 + i], 0.0f);
+            }
+        }
+
+        final double[] weights = read(FlintAuxData.getTransmissionWeightsFileName(37, "A"), 45, 1);
+        final float[] textWeights = textAuxData.readTransmissionWeights(37, "A");
+        for (int j = 0; j < 45; j++) {
+            assertEquals(textWeights[j], (float) weights[j], 0.0f);
+        }
+    }
+
+    public void testConvertedNeuralNetIsIdenticalToTextNet() throws IOException {
+        FlintBinaryAuxData.convert(outputDir);
+
+        final FlintNeuralNet textNet = textAuxData.loadCompiledNeuralNet(FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME);
+        final FlintNeuralNet binaryNet =
+                FlintNeuralNet.fromArray(read(FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME, -1, 1));
+        assertEquals(textNet.getNumInputs(), binaryNet.getNumInputs());
+        assertEquals(textNet.getNumOutputs(), binaryNet.getNumOutputs());
+
+        final double[] in = new double[]{10.0133, 1.37, 0.891719};
+        final double[] textOut = new double[4];
+        final double[] binaryOut = new double[4];
+        textNet.process(in, textOut);
+        binaryNet.process(in, binaryOut);
+        for (int k = 0; k < 4; k++) {
+            assertEquals(textOut[k], binaryOut[k], 0.0);
+        }
+    }
+
+    public void testInvalidFilesAreRejected() throws IOException {
+        final File file = new File(outputDir, "test.bin");
+        FlintBinaryAuxData.write(new double[]{1.0, 2.0, 3.0, 4.0, 5.0, 6.0}, 3, 2, file);
+        final URL url = file.toURI().toURL();
+        final double[] values = FlintBinaryAuxData.read(url, 3, 2);
+        assertEquals(6, values.length);
+        assertEquals(5.0, values[4], 0.0);
+
+        try {
+            FlintBinaryAuxData.read(url, 2, 3);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("expected"));
+        }
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(FlintBinaryAuxData.HEADER_SIZE + 3);
+            randomAccessFile.write(0x7f);
+        } finally {
+            randomAccessFile.close();
+        }
+        try {
+            FlintBinaryAuxData.read(url, 3, 2);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("checksum"));
+        }
+    }
+
+    private double[] read(String resourceName, int rows, int columns) throws IOException {
+        final File file = new File(outputDir, resourceName + FlintBinaryAuxData.FILE_EXTENSION);
+        assertTrue(file.exists());
+        return FlintBinaryAuxData.read(file.toURI().toURL(), rows, columns);
+    }
+}
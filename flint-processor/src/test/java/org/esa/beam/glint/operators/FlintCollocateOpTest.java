@@ -0,0 +1,229 @@
+package org.esa.beam.glint.operators;
+
+import junit.framework.TestCase;
+import org.esa.beam.collocation.CollocateOp;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.CrsGeoCoding;
+import org.esa.beam.framework.datamodel.FlagCoding;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class FlintCollocateOpTest extends TestCase {
+
+    private static final int MERIS_WIDTH = 16;
+    private static final int MERIS_HEIGHT = 12;
+    private static final int AATSR_WIDTH = 8;
+    private static final int AATSR_HEIGHT = 12;
+
+    private Product flintProduct;
+    private Product collocateProduct;
+
+    protected void setUp() throws Exception {
+        final Product merisProduct = createMerisProduct();
+        final Product aatsrProduct = createAatsrProduct();
+
+        final FlintCollocateOp flintCollocateOp = new FlintCollocateOp();
+        flintCollocateOp.setSourceProduct("masterProduct", merisProduct);
+        flintCollocateOp.setSourceProduct("slaveProduct", aatsrProduct);
+        flintProduct = flintCollocateOp.getTargetProduct();
+
+        final CollocateOp collocateOp = new CollocateOp();
+        collocateOp.setSourceProduct("masterProduct", merisProduct);
+        collocateOp.setSourceProduct("slaveProduct", aatsrProduct);
+        collocateProduct = collocateOp.getTargetProduct();
+    }
+
+    public void testBandNames() {
+        for (Band band : flintProduct.getBands()) {
+            assertTrue(band.getName(), collocateProduct.containsBand(band.getName()));
+        }
+        for (Band band : collocateProduct.getBands()) {
+            final String name = band.getName();
+            if (name.endsWith(GlintMasterOp.MASTER_SUFFIX) || name.endsWith(GlintMasterOp.SLAVE_SUFFIX)) {
+                assertTrue(name, flintProduct.containsBand(name));
+            }
+        }
+        assertEquals(6, flintProduct.getNumBands());
+        assertTrue(flintProduct.containsTiePointGrid("sun_zenith"));
+    }
+
+    public void testBandProperties() {
+        for (Band band : flintProduct.getBands()) {
+            final Band expected = collocateProduct.getBand(band.getName());
+            assertEquals(band.getName(), expected.getDataType(), band.getDataType());
+            assertEquals(band.getName(), expected.getScalingFactor(), band.getScalingFactor(), 0.0);
+            assertEquals(band.getName(), expected.getScalingOffset(), band.getScalingOffset(), 0.0);
+            assertEquals(band.getName(), expected.getSpectralWavelength(), band.getSpectralWavelength(), 0.0f);
+            assertEquals(band.getName(), expected.getUnit(), band.getUnit());
+        }
+        assertEquals(ProductData.TYPE_UINT16, flintProduct.getBand("radiance_14_M").getDataType());
+        assertEquals(0.01, flintProduct.getBand("radiance_14_M").getScalingFactor(), 0.0);
+        assertEquals(885.0f, flintProduct.getBand("radiance_14_M").getSpectralWavelength(), 0.0f);
+        assertEquals(ProductData.TYPE_INT16, flintProduct.getBand("btemp_nadir_0370_S").getDataType());
+        assertEquals(ProductData.TYPE_FLOAT32, flintProduct.getBand("view_elev_nadir_S").getDataType());
+    }
+
+    public void testNoDataValues() {
+        for (Band band : flintProduct.getBands()) {
+            if (band.getName().endsWith(GlintMasterOp.SLAVE_SUFFIX)) {
+                // pixels outside of the AATSR swath are marked
+                assertTrue(band.getName(), band.isNoDataValueUsed());
+                assertEquals(band.getName(), collocateProduct.getBand(band.getName()).getGeophysicalNoDataValue(),
+                             band.getGeophysicalNoDataValue(), 1.0e-6);
+            }
+        }
+        // defined by the source band
+        assertEquals(-2.0, flintProduct.getBand("btemp_nadir_0370_S").getNoDataValue(), 0.0);
+        assertEquals(199.98, flintProduct.getBand("btemp_nadir_0370_S").getGeophysicalNoDataValue(), 1.0e-6);
+        assertEquals(0.0, flintProduct.getBand("reflec_nadir_1600_S").getNoDataValue(), 0.0);
+        assertFalse(flintProduct.getBand("radiance_14_M").isNoDataValueUsed());
+    }
+
+    public void testValidPixelExpressions() {
+        assertEquals("!l1_flags_M.INVALID", flintProduct.getBand("radiance_14_M").getValidPixelExpression());
+        assertEquals("!cloud_flags_nadir_S.LAND",
+                     flintProduct.getBand("reflec_nadir_1600_S").getValidPixelExpression());
+    }
+
+    public void testFlagCodings() {
+        for (Band band : flintProduct.getBands()) {
+            final FlagCoding flagCoding = band.getFlagCoding();
+            final FlagCoding expected = collocateProduct.getBand(band.getName()).getFlagCoding();
+            if (expected == null) {
+                assertNull(band.getName(), flagCoding);
+                continue;
+            }
+            assertNotNull(band.getName(), flagCoding);
+            assertEquals(expected.getName(), flagCoding.getName());
+            assertEquals(Arrays.asList(expected.getFlagNames()), Arrays.asList(flagCoding.getFlagNames()));
+            for (String flagName : flagCoding.getFlagNames()) {
+                assertEquals(expected.getFlagMask(flagName), flagCoding.getFlagMask(flagName));
+            }
+        }
+        assertNotNull(flintProduct.getBand("l1_flags_M").getFlagCoding());
+        assertNotNull(flintProduct.getBand("cloud_flags_nadir_S").getFlagCoding());
+    }
+
+    public void testGeophysicalValues() throws IOException {
+        for (Band band : flintProduct.getBands()) {
+            final float[] samples = readPixels(band);
+            final float[] expectedSamples = readPixels(collocateProduct.getBand(band.getName()));
+            final boolean isAatsrBand = band.getName().endsWith(GlintMasterOp.SLAVE_SUFFIX);
+            for (int y = 0; y < MERIS_HEIGHT; y++) {
+                for (int x = 0; x < MERIS_WIDTH; x++) {
+                    final int i = y * MERIS_WIDTH + x;
+                    if (!isAatsrBand || isInAatsrSwath(x, y)) {
+                        assertEquals(band.getName() + " (" + x + ", " + y + ")",
+                                     expectedSamples[i], samples[i], 1.0e-4f);
+                    } else {
+                        assertEquals(band.getName() + " (" + x + ", " + y + ")",
+                                     (float) band.getGeophysicalNoDataValue(), samples[i], 1.0e-4f);
+                    }
+                }
+            }
+        }
+        // AATSR pixel (0, 2) at MERIS pixel (4, 0)
+        assertEquals(252.0f, readPixels(flintProduct.getBand("btemp_nadir_0370_S"))[4], 1.0e-4f);
+    }
+
+    //
+    // The AATSR pixel of MERIS pixel (x, y) is ((x + 0.5) / 2 - 1.9, y + 2.3), see the geo-codings.
+    //
+    private static boolean isInAatsrSwath(int x, int y) {
+        return x >= 4 && y < AATSR_HEIGHT - 2;
+    }
+
+    private static float[] readPixels(Band band) throws IOException {
+        return band.readPixels(0, 0, MERIS_WIDTH, MERIS_HEIGHT, new float[MERIS_WIDTH * MERIS_HEIGHT]);
+    }
+
+    private static Product createMerisProduct() throws Exception {
+        final Product product = new Product("MERIS", "MER_RR__1P", MERIS_WIDTH, MERIS_HEIGHT);
+        product.setGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, MERIS_WIDTH, MERIS_HEIGHT,
+                                              10.0, 50.0, 0.01, 0.01, 0.0, 0.0));
+
+        final short[] radiances = new short[MERIS_WIDTH * MERIS_HEIGHT];
+        final short[] flags = new short[radiances.length];
+        for (int i = 0; i < radiances.length; i++) {
+            radiances[i] = (short) (1000 + i);
+            flags[i] = (short) (i % 4);
+        }
+        final Band radianceBand = product.addBand("radiance_14", ProductData.TYPE_UINT16);
+        radianceBand.setScalingFactor(0.01);
+        radianceBand.setSpectralWavelength(885.0f);
+        radianceBand.setUnit("mW/(m^2*sr*nm)");
+        radianceBand.setValidPixelExpression("!l1_flags.INVALID");
+        radianceBand.setRasterData(ProductData.createUnsignedInstance(radiances));
+
+        final FlagCoding flagCoding = new FlagCoding("l1_flags");
+        flagCoding.addFlag("INVALID", 1, null);
+        flagCoding.addFlag("LAND_OCEAN", 2, null);
+        product.getFlagCodingGroup().add(flagCoding);
+        final Band flagBand = product.addBand("l1_flags", ProductData.TYPE_UINT16);
+        flagBand.setSampleCoding(flagCoding);
+        flagBand.setRasterData(ProductData.createUnsignedInstance(flags));
+
+        product.addTiePointGrid(createTiePointGrid("sun_zenith", MERIS_WIDTH, MERIS_HEIGHT, 40.0f));
+        return product;
+    }
+
+    private static Product createAatsrProduct() throws Exception {
+        final Product product = new Product("AATSR", "ATS_TOA_1P", AATSR_WIDTH, AATSR_HEIGHT);
+        // pixels are twice as wide as MERIS pixels, shifted by 1.9 pixels in x and 2.3 pixels in y
+        product.setGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, AATSR_WIDTH, AATSR_HEIGHT,
+                                              10.038, 50.018, 0.02, 0.01, 0.0, 0.0));
+
+        final short[] temperatures = new short[AATSR_WIDTH * AATSR_HEIGHT];
+        final short[] reflectances = new short[temperatures.length];
+        final short[] flags = new short[temperatures.length];
+        for (int y = 0; y < AATSR_HEIGHT; y++) {
+            for (int x = 0; x < AATSR_WIDTH; x++) {
+                final int i = y * AATSR_WIDTH + x;
+                temperatures[i] = (short) (5000 + 100 * y + x);
+                reflectances[i] = (short) (10 * y + x + 1);
+                flags[i] = (short) ((x + y) % 4);
+            }
+        }
+        final Band temperatureBand = product.addBand("btemp_nadir_0370", ProductData.TYPE_INT16);
+        temperatureBand.setScalingFactor(0.01);
+        temperatureBand.setScalingOffset(200.0);
+        temperatureBand.setUnit("K");
+        temperatureBand.setNoDataValue(-2.0);
+        temperatureBand.setNoDataValueUsed(true);
+        temperatureBand.setRasterData(ProductData.createInstance(temperatures));
+
+        final Band reflectanceBand = product.addBand("reflec_nadir_1600", ProductData.TYPE_INT16);
+        reflectanceBand.setScalingFactor(0.01);
+        reflectanceBand.setUnit("%");
+        reflectanceBand.setValidPixelExpression("!cloud_flags_nadir.LAND");
+        reflectanceBand.setRasterData(ProductData.createInstance(reflectances));
+
+        final FlagCoding flagCoding = new FlagCoding("cloud_flags_nadir");
+        flagCoding.addFlag("LAND", 1, null);
+        flagCoding.addFlag("CLOUDY", 2, null);
+        product.getFlagCodingGroup().add(flagCoding);
+        final Band flagBand = product.addBand("cloud_flags_nadir", ProductData.TYPE_UINT16);
+        flagBand.setSampleCoding(flagCoding);
+        flagBand.setRasterData(ProductData.createUnsignedInstance(flags));
+
+        product.addTiePointGrid(createTiePointGrid("view_elev_nadir", AATSR_WIDTH, AATSR_HEIGHT, 60.0f));
+        return product;
+    }
+
+    private static TiePointGrid createTiePointGrid(String name, int width, int height, float value) {
+        final int gridWidth = width / 4 + 1;
+        final int gridHeight = height / 4 + 1;
+        final float[] tiePoints = new float[gridWidth * gridHeight];
+        for (int j = 0; j < gridHeight; j++) {
+            for (int i = 0; i < gridWidth; i++) {
+                tiePoints[j * gridWidth + i] = value + i + 0.5f * j;
+            }
+        }
+        return new TiePointGrid(name, gridWidth, gridHeight, 0.5f, 0.5f, 4.0f, 4.0f, tiePoints);
+    }
+}
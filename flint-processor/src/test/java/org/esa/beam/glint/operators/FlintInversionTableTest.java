@@ -0,0 +1,119 @@
+package org.esa.beam.glint.operators;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class FlintInversionTableTest extends TestCase {
+
+    private static final FlintInversionTable.Axis[] AXES = new FlintInversionTable.Axis[]{
+            // node values exactly representable as float
+            new FlintInversionTable.Axis(0.0, 0.0625, 5),
+            new FlintInversionTable.Axis(10.0, 12.0, 2),
+            new FlintInversionTable.Axis(6.0, 18.0, 3),
+            new FlintInversionTable.Axis(30.0, 150.0, 3),
+            new FlintInversionTable.Axis(30.0, 150.0, 3)
+    };
+
+    private FlintGeometricalConversion geometricalConversion;
+    private File file;
+
+    protected void setUp() throws IOException {
+        geometricalConversion = new FlintGeometricalConversion();
+        geometricalConversion.loadFlintAuxData();
+        file = File.createTempFile("flint-inversion", ".bin");
+        FlintInversionTable.write(geometricalConversion, AXES, file);
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testTableNodesAreExact() throws IOException {
+        final FlintInversionTable table = FlintInversionTable.open(file);
+        final float[][] expected = new float[2][2];
+        final float[][] result = new float[2][2];
+        int numberOfAmbiguousNodes = 0;
+        for (int iRad = 0; iRad < 5; iRad++) {
+            final float rad = 0.015625f * iRad;
+            for (float vz = 6.0f; vz <= 18.0f; vz += 6.0f) {
+                for (float az = 30.0f; az <= 150.0f; az += 60.0f) {
+                    geometricalConversion.convertAatsrRad37ToMerisRad(rad, 10.0f, vz, az, 180.0f - az, expected);
+                    assertTrue(table.convertAatsrRad37ToMerisRad(rad, 10.0f, vz, az, 180.0f - az, result));
+                    for (int i = 0; i < 2; i++) {
+                        assertEquals(expected[i][0], result[i][0], 1.E-5f);
+                        assertEquals(expected[i][1], result[i][1], 1.E-5f);
+                    }
+                    if (FlintGeometricalConversion.windspeedFound(result) == 2) {
+                        numberOfAmbiguousNodes++;
+                    }
+                }
+            }
+        }
+        assertTrue(numberOfAmbiguousNodes > 0);
+    }
+
+    public void testInterpolation() throws IOException {
+        final FlintInversionTable table = FlintInversionTable.open(file);
+        final float[][] result = new float[2][2];
+        result[0][0] = 5.0f;
+        assertFalse(table.convertAatsrRad37ToMerisRad(0.07f, 10.0f, 6.0f, 30.0f, 150.0f, result));
+        assertFalse(table.convertAatsrRad37ToMerisRad(0.03f, 9.0f, 6.0f, 30.0f, 150.0f, result));
+        assertEquals(5.0f, result[0][0], 0.0f);
+
+        // the results are interpolated if both neighbouring nodes found the same windspeeds,
+        // otherwise the nearest node is used
+        final float[][] lower = new float[2][2];
+        final float[][] upper = new float[2][2];
+        int numberOfInterpolations = 0;
+        for (int iRad = 0; iRad < 5; iRad++) {
+            final float rad = 0.015625f * iRad;
+            assertTrue(table.convertAatsrRad37ToMerisRad(rad, 10.0f, 12.0f, 90.0f, 90.0f, lower));
+            assertTrue(table.convertAatsrRad37ToMerisRad(rad, 12.0f, 12.0f, 90.0f, 90.0f, upper));
+            assertTrue(table.convertAatsrRad37ToMerisRad(rad, 10.5f, 12.0f, 90.0f, 90.0f, result));
+            final boolean sameWindspeedsFound = (lower[0][0] != -1.0f) == (upper[0][0] != -1.0f) &&
+                                                (lower[1][0] != -1.0f) == (upper[1][0] != -1.0f);
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < 2; j++) {
+                    if (sameWindspeedsFound && lower[i][0] != -1.0f) {
+                        assertEquals(0.75f * lower[i][j] + 0.25f * upper[i][j], result[i][j], 1.E-5f);
+                        numberOfInterpolations++;
+                    } else {
+                        assertEquals(lower[i][j], result[i][j], 0.0f);
+                    }
+                }
+            }
+        }
+        assertTrue(numberOfInterpolations > 0);
+
+        final FlintInversionTable.InterpolationError error = table.getInterpolationError(geometricalConversion, 200);
+        assertEquals(200, error.getNumberOfSamples());
+        assertTrue(error.getNumberOfWindspeedMismatches() < 200);
+        assertTrue(error.getMaxWindspeedError() <= 13.0);
+    }
+
+    public void testInvalidFilesAreRejected() throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(FlintInversionTable.HEADER_SIZE + 5);
+            randomAccessFile.write(0x7f);
+        } finally {
+            randomAccessFile.close();
+        }
+        try {
+            FlintInversionTable.open(file);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("checksum"));
+        }
+
+        try {
+            FlintInversionTable.Axis.parse("0:1");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.esa.beam.glint.operators;
+
+import com.bc.jnn.JnnException;
+import com.bc.jnn.JnnNet;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+public class FlintNeuralNetTest extends TestCase {
+
+    private static final double JNN_TOLERANCE = 1.0E-6;
+
+    // input ranges of the nets (see header of the .nna files)
+    private static final double[][] WV_INPUT_RANGES = new double[][]{
+            {3.75e-02, 1.84e+01}, {-6.33e-01, 6.31e-01}, {7.73e-01, 1.00e+00}, {1.60e-01, 9.26e-01}, {-6.98e-01, -1.25e-01}
+    };
+    private static final double[][] WINDSPEED_INPUT_RANGES = new double[][]{
+            {1.0, 15.0}, {1.3, 1.4}, {6.04e-01, 9.93e-01}
+    };
+
+    public void testCompiledNetsAgreeWithJnn() throws IOException, JnnException {
+        assertAgreesWithJnn(FlintAuxData.NEURAL_NET_WV_OCEAN_MERIS_FILE_NAME, WV_INPUT_RANGES, 1);
+        assertAgreesWithJnn(FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME, WINDSPEED_INPUT_RANGES, 4);
+    }
+
+    public void testWsToGaussAgainstBreadboard() throws IOException {
+        // test results according to FUB IDL breadboard results
+        final FlintNeuralNet net = FlintAuxData.getInstance().loadCompiledNeuralNet(
+                FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME);
+        double[] gaussPars = new double[4];
+        net.process(new double[]{10.0133, 1.37, 0.891719}, gaussPars);
+        assertEquals(0.0426205, gaussPars[0], 1.E-5);
+        assertEquals(0.310001, gaussPars[1], 1.E-5);
+        assertEquals(0.347387, gaussPars[2], 1.E-5);
+        assertEquals(0.519014, gaussPars[3], 1.E-5);
+    }
+
+    public void testBatchProcessingIsIdenticalToSingleProcessing() throws IOException {
+        final FlintNeuralNet net = FlintAuxData.getInstance().loadCompiledNeuralNet(
+                FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME);
+        final int n = 100;
+        final double[] batchIn = createInputs(WINDSPEED_INPUT_RANGES, n, new Random(42));
+        final double[] batchOut = new double[n * 4];
+        net.process(batchIn, batchOut, n);
+
+        final double[] in = new double[3];
+        final double[] out = new double[4];
+        final double[] scratch = net.createScratch();
+        for (int j = 0; j < n; j++) {
+            System.arraycopy(batchIn, j * 3, in, 0, 3);
+            net.process(in, out, scratch);
+            for (int k = 0; k < 4; k++) {
+                assertEquals(out[k], batchOut[j * 4 + k], 0.0);
+            }
+        }
+    }
+
+    public void testUnsupportedActivationFunction() {
+        final String nna = "[Net]\n NumLayers= 2\n" +
+                           "[Layer(1)]\n NumUnits= 1\n ActFunc = Identity\n" +
+                           "[Layer(2)]\n NumUnits= 1\n ActFunc = Tanh\n" +
+                           "[Unit(1,1)]\n NumConns = 0\n" +
+                           "[Unit(2,1)]\n NumConns = 1\n C(1) = 1 , 1 , 1.0\n";
+        try {
+            FlintNeuralNet.compile(new StringReader(nna));
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("Tanh"));
+        }
+    }
+
+    private void assertAgreesWithJnn(String fileName, double[][] inputRanges, int numOutputs)
+            throws IOException, JnnException {
+        final JnnNet jnnNet = FlintAuxData.getInstance().loadNeuralNet(fileName);
+        final FlintNeuralNet compiledNet = FlintAuxData.getInstance().loadCompiledNeuralNet(fileName);
+        assertEquals(inputRanges.length, compiledNet.getNumInputs());
+        assertEquals(numOutputs, compiledNet.getNumOutputs());
+
+        final Random random = new Random(5451);
+        final double[] in = new double[inputRanges.length];
+        final double[] jnnOut = new double[numOutputs];
+        final double[] compiledOut = new double[numOutputs];
+        for (int j = 0; j < 1000; j++) {
+            System.arraycopy(createInputs(inputRanges, 1, random), 0, in, 0, in.length);
+            jnnNet.process(in, jnnOut);
+            compiledNet.process(in, compiledOut);
+            for (int k = 0; k < numOutputs; k++) {
+                assertEquals(jnnOut[k], compiledOut[k], JNN_TOLERANCE);
+            }
+        }
+    }
+
+    private static double[] createInputs(double[][] inputRanges, int n, Random random) {
+        final double[] inputs = new double[n * inputRanges.length];
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < inputRanges.length; i++) {
+                final double min = inputRanges[i][0];
+                final double max = inputRanges[i][1];
+                inputs[j * inputRanges.length + i] = min + random.nextDouble() * (max - min);
+            }
+        }
+        return inputs;
+    }
+}
@@ -1,12 +1,15 @@
 package org.esa.beam.glint.operators;
 
-import com.bc.jnn.JnnException;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import org.esa.beam.glint.util.GlintHelpers;
 import org.jfree.data.statistics.Regression;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Unit test for simple App.
@@ -34,8 +37,6 @@ public class FlintOpTest
             flintGeometricalConversionUnderTest.loadFlintAuxData();
         } catch (IOException e) {
             fail("Auxdata cloud not be loaded: " + e.getMessage());
-        } catch (JnnException e) {
-            fail("Neural net cloud not be loaded: " + e.getMessage());
         }
     }
 
@@ -232,6 +233,44 @@ public class FlintOpTest
         assertEquals(0.127856f, radiance, 1.E-6);
     }
 
+    public void testBT2RadianceConverterIndex() throws IOException {
+        final FlintAuxData.Temp2RadianceTable table = FlintAuxData.getInstance().createTemp2RadianceTable();
+        final double[] temps = table.getTemp();
+        final FlintBT2RadianceConverter converter = new FlintBT2RadianceConverter(temps, table.getRad());
+        assertTrue(converter.isUniform());
+        assertNearestIndexAsLinearScan(converter, temps);
+
+        // irregular table: binary search
+        final double[] irregularTemps = new double[]{250.0, 251.0, 255.0, 255.5, 270.0, 271.0, 300.0};
+        final FlintBT2RadianceConverter irregularConverter =
+                new FlintBT2RadianceConverter(irregularTemps, new double[irregularTemps.length]);
+        assertFalse(irregularConverter.isUniform());
+        assertNearestIndexAsLinearScan(irregularConverter, irregularTemps);
+    }
+
+    public void testConvertBT2RadianceOutsideTable() {
+        assertEquals(0.0f, flintSolarPart37UnderTest.convertBT2Radiance(400.0f), 0.0);
+        assertEquals(0.0f, flintSolarPart37UnderTest.convertBT2Radiance(Float.NaN), 0.0);
+    }
+
+    private static void assertNearestIndexAsLinearScan(FlintBT2RadianceConverter converter, double[] temps) {
+        final double min = temps[0] - 10.0;
+        final double max = temps[temps.length - 1] + 10.0;
+        for (int i = 0; i <= 100000; i++) {
+            final double x = min + i * (max - min) / 100000;
+            assertEquals(GlintHelpers.getNearestValueIndexInAscendingDoubleArray(x, temps),
+                         converter.getNearestIndex(x));
+        }
+        for (int i = 0; i < temps.length; i++) {
+            assertEquals(GlintHelpers.getNearestValueIndexInAscendingDoubleArray(temps[i], temps),
+                         converter.getNearestIndex(temps[i]));
+            final double mid = i > 0 ? 0.5 * (temps[i - 1] + temps[i]) : temps[0];
+            assertEquals(GlintHelpers.getNearestValueIndexInAscendingDoubleArray(mid, temps),
+                         converter.getNearestIndex(mid));
+        }
+        assertEquals(-1, converter.getNearestIndex(Double.NaN));
+    }
+
     public void testIsUsefulPixel() {
         // land
          boolean  aatsrCloudFlagNadirLand = true;
@@ -323,6 +362,38 @@ public class FlintOpTest
                 aatsrCloudFlagNadirGlint, aatsrViewElevation, aatsrBT37));
     }
 
+    public void testCollectUsefulPixels() {
+        // 3 x 2 tile
+        final int[] cloudFlags = new int[]{0, 1 << FlintPreparation.AATSR_L1_CF_LAND, 0,
+                                           1 << FlintPreparation.AATSR_L1_CF_CLOUDY, 0, 0};
+        final float[] viewElevations = new float[]{10.0f, 10.0f, 10.0f, 10.0f, -1.0f, 10.0f};
+        final float[] bt37s = new float[]{280.0f, 280.0f, 260.0f, 280.0f, 280.0f, 280.0f};
+        final int[] invalid = new int[]{0, 0, 0, 0, 0, 1};
+        final int[] pixelIndices = new int[6];
+        final int[] rowStarts = new int[3];
+
+        final int n = flintPreparationUnderTest.collectUsefulPixels(cloudFlags, viewElevations, bt37s, invalid,
+                                                                    3, 2, pixelIndices, rowStarts);
+        for (int i = 0; i < 6; i++) {
+            final boolean useful = invalid[i] == 0 && flintPreparationUnderTest.isUsefulPixel(
+                    (cloudFlags[i] & (1 << FlintPreparation.AATSR_L1_CF_LAND)) != 0,
+                    (cloudFlags[i] & (1 << FlintPreparation.AATSR_L1_CF_CLOUDY)) != 0,
+                    (cloudFlags[i] & (1 << FlintPreparation.AATSR_L1_CF_SUNGLINT)) != 0,
+                    viewElevations[i], bt37s[i]);
+            boolean collected = false;
+            for (int k = 0; k < n; k++) {
+                collected |= pixelIndices[k] == i;
+            }
+            assertEquals(useful, collected);
+        }
+        assertEquals(2, n);
+        assertEquals(0, pixelIndices[0]);
+        assertEquals(3, pixelIndices[1]);
+        assertEquals(0, rowStarts[0]);
+        assertEquals(1, rowStarts[1]);
+        assertEquals(2, rowStarts[2]);
+    }
+
     public void testCalcTrans() {
         // test results according to FUB IDL breadboard results
         int channel = 37;
@@ -335,6 +406,322 @@ public class FlintOpTest
 
     }
 
+    public void testCalcTransmissions() throws IOException {
+        final float[][] aCoeff37 = FlintAuxData.getInstance().readWaterVapourCoefficients(37, "A");
+        final float[][] hCoeff37 = FlintAuxData.getInstance().readWaterVapourCoefficients(37, "H");
+        final float[] hWeight37 = FlintAuxData.getInstance().readTransmissionWeights(37, "H");
+        final float[][] aCoeff16 = FlintAuxData.getInstance().readWaterVapourCoefficients(16, "A");
+        final float[][] hCoeff16 = FlintAuxData.getInstance().readWaterVapourCoefficients(16, "H");
+        final float[] hWeight16 = FlintAuxData.getInstance().readTransmissionWeights(16, "H");
+
+        final float[] waterVapourColumns = new float[]{0.5f, 2.05317f, 2.8f, 4.3f, 7.9f};
+        final float[] sunZeniths = new float[]{26.9514f, 35.2f, 12.0f, 60.7f, 45.0f};
+        final float[] viewZeniths = new float[]{21.1147f, 3.5f, 40.1f, 10.0f, 0.2f};
+        final int n = waterVapourColumns.length;
+
+        final float[] trans37 = new float[n];
+        final float[] trans16 = new float[n];
+        flintSolarPart37UnderTest.computeTransmissions(waterVapourColumns, sunZeniths, viewZeniths, n,
+                                                       trans37, trans16);
+        for (int p = 0; p < n; p++) {
+            final float expected37 = computeTransmissionPerLayer(aCoeff37, hCoeff37, hWeight37, waterVapourColumns[p],
+                                                                 sunZeniths[p], viewZeniths[p]);
+            final float expected16 = computeTransmissionPerLayer(aCoeff16, hCoeff16, hWeight16, waterVapourColumns[p],
+                                                                 sunZeniths[p], viewZeniths[p]);
+            assertEquals(expected37, flintSolarPart37UnderTest.computeTransmission(37, waterVapourColumns[p],
+                                                                                  sunZeniths[p], viewZeniths[p]),
+                         1.E-6);
+            assertEquals(expected16, flintSolarPart37UnderTest.computeTransmission(16, waterVapourColumns[p],
+                                                                                  sunZeniths[p], viewZeniths[p]),
+                         1.E-6);
+            assertEquals(expected37, trans37[p], 1.E-6);
+            assertEquals(expected16, trans16[p], 1.E-6);
+        }
+    }
+
+    public void testTransmissionLut() {
+        final float[] waterVapourColumns = new float[]{0.5f, 2.05317f, 2.8f, 4.3f, 7.9f, 9.5f, -0.2f};
+        final float[] sunZeniths = new float[]{26.9514f, 35.2f, 12.0f, 60.7f, 45.0f, 30.0f, 30.0f};
+        final float[] viewZeniths = new float[]{21.1147f, 3.5f, 40.1f, 10.0f, 0.2f, 10.0f, 10.0f};
+        final int n = waterVapourColumns.length;
+
+        final float[] expected37 = new float[n];
+        final float[] expected16 = new float[n];
+        flintSolarPart37UnderTest.computeTransmissions(waterVapourColumns, sunZeniths, viewZeniths, n,
+                                                       expected37, expected16);
+
+        final FlintTransmissionLut lut =
+                flintSolarPart37UnderTest.createTransmissionLut(FlintTransmissionLut.DEFAULT_SIZE);
+        final double maxError37 = lut.getMaximumInterpolationError37();
+        final double maxError16 = lut.getMaximumInterpolationError16();
+        assertTrue(maxError37 > 0.0 && maxError37 < 1.E-3);
+        assertTrue(maxError16 > 0.0 && maxError16 < 1.E-3);
+
+        final float[] trans37 = new float[n];
+        final float[] trans16 = new float[n];
+        flintSolarPart37UnderTest.computeTransmissions(waterVapourColumns, sunZeniths, viewZeniths, n,
+                                                       trans37, trans16);
+        for (int p = 0; p < n; p++) {
+            assertEquals(expected37[p], trans37[p], maxError37 + 1.E-6);
+            assertEquals(expected16[p], trans16[p], maxError16 + 1.E-6);
+        }
+        // outside of the LUT domain the exact values are used
+        assertEquals(expected37[5], trans37[5], 0.0);
+        assertEquals(expected37[6], trans37[6], 0.0);
+        assertEquals(expected16[6], trans16[6], 0.0);
+    }
+
+    public void testTransmission37Only() {
+        assertTransmission37OnlyAsWithTransmission16();
+
+        flintSolarPart37UnderTest.createTransmissionLut(21);
+        assertTransmission37OnlyAsWithTransmission16();
+    }
+
+    private void assertTransmission37OnlyAsWithTransmission16() {
+        final float[] waterVapourColumns = new float[]{1.5f, 9.5f};
+        final float[] sunZeniths = new float[]{30.0f, 30.0f};
+        final float[] viewZeniths = new float[]{20.0f, 10.0f};
+        final float[] trans37 = new float[2];
+        final float[] trans16 = new float[2];
+        flintSolarPart37UnderTest.computeTransmissions(waterVapourColumns, sunZeniths, viewZeniths, 2,
+                                                       trans37, trans16);
+        final float[] trans37Only = new float[2];
+        flintSolarPart37UnderTest.computeTransmissions(waterVapourColumns, sunZeniths, viewZeniths, 2,
+                                                       trans37Only, null);
+        assertEquals(trans37[0], trans37Only[0], 0.0f);
+        assertEquals(trans37[1], trans37Only[1], 0.0f);
+    }
+
+    public void testProcessingPlan() {
+        // final normalized radiance only (the default) - needs everything except the 1.6um transmission
+        flintOpUnderTest.writeNormalizedRadianceFinal = true;
+        FlintProcessingPlan plan = flintOpUnderTest.createProcessingPlan();
+        assertFalse(plan.contains(FlintProcessingPlan.Step.TRANSMISSION_16));
+        assertFalse(plan.contains(FlintProcessingPlan.Step.ADDITIONAL_CLOUD_MASK));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.THERMAL_EXTRAPOLATION));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.WATER_VAPOUR));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.TRANSMISSION_37));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.BT_CONVERSION));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.SOLAR_PART));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.AMBIGUITY_REDUCTION));
+
+        // water vapour only
+        flintOpUnderTest.writeNormalizedRadianceFinal = false;
+        flintOpUnderTest.writeWaterVapour = true;
+        plan = flintOpUnderTest.createProcessingPlan();
+        for (FlintProcessingPlan.Step step : FlintProcessingPlan.Step.values()) {
+            assertEquals(step == FlintProcessingPlan.Step.WATER_VAPOUR, plan.contains(step));
+        }
+
+        // thermal part only
+        flintOpUnderTest.writeWaterVapour = false;
+        flintOpUnderTest.writeThermalPart37 = true;
+        plan = flintOpUnderTest.createProcessingPlan();
+        assertTrue(plan.contains(FlintProcessingPlan.Step.THERMAL_EXTRAPOLATION));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.BT_CONVERSION));
+        assertFalse(plan.contains(FlintProcessingPlan.Step.WATER_VAPOUR));
+        assertFalse(plan.contains(FlintProcessingPlan.Step.SOLAR_PART));
+
+        // transmission at 1.6um needs the water vapour
+        flintOpUnderTest.writeThermalPart37 = false;
+        flintOpUnderTest.writeTransmission16 = true;
+        plan = flintOpUnderTest.createProcessingPlan();
+        assertTrue(plan.contains(FlintProcessingPlan.Step.TRANSMISSION_16));
+        assertTrue(plan.contains(FlintProcessingPlan.Step.WATER_VAPOUR));
+        assertFalse(plan.contains(FlintProcessingPlan.Step.TRANSMISSION_37));
+
+        flintOpUnderTest.writeTransmission16 = false;
+        assertTrue(flintOpUnderTest.createProcessingPlan().isEmpty());
+    }
+
+    public void testRequiredSourceRasterNames() {
+        // final normalized radiance: all rasters except the 1.6um reflectance
+        flintOpUnderTest.writeNormalizedRadianceFinal = true;
+        FlintProcessingPlan plan = flintOpUnderTest.createProcessingPlan();
+        final List<String> merisNames =
+                Arrays.asList(GlintMasterOp.getRequiredSourceRasterNames(plan, GlintMasterOp.MASTER_SUFFIX, true));
+        final List<String> aatsrNames =
+                Arrays.asList(GlintMasterOp.getRequiredSourceRasterNames(plan, GlintMasterOp.SLAVE_SUFFIX, false));
+        assertTrue(merisNames.contains("radiance_14"));
+        assertTrue(merisNames.contains("l1_flags"));
+        assertTrue(merisNames.contains("view_azimuth"));
+        assertTrue(merisNames.contains("zonal_wind"));
+        assertFalse(merisNames.contains("radiance_13"));
+        assertTrue(aatsrNames.contains("btemp_nadir_0370"));
+        assertTrue(aatsrNames.contains("btemp_nadir_1100"));
+        assertTrue(aatsrNames.contains("cloud_flags_nadir"));
+        assertTrue(aatsrNames.contains("view_azimuth_nadir"));
+        assertFalse(aatsrNames.contains("reflec_nadir_1600"));
+        assertFalse(aatsrNames.contains("view_azimuth"));
+        assertFalse(aatsrNames.contains("btemp_fward_0370"));
+        // each raster read by FlintOp is taken from one of the source products
+        assertEquals(FlintOp.getRequiredSourceRasterNames(plan).length, merisNames.size() + aatsrNames.size());
+
+        // thermal part only: no MERIS bands apart from the flags, no geometry
+        flintOpUnderTest.writeNormalizedRadianceFinal = false;
+        flintOpUnderTest.writeThermalPart37 = true;
+        plan = flintOpUnderTest.createProcessingPlan();
+        List<String> names = Arrays.asList(FlintOp.getRequiredSourceRasterNames(plan));
+        assertTrue(names.contains("l1_flags_M"));
+        assertTrue(names.contains("btemp_nadir_1100_S"));
+        assertFalse(names.contains("radiance_14_M"));
+        assertFalse(names.contains("sun_zenith"));
+        assertFalse(names.contains("view_azimuth"));
+        assertFalse(names.contains("zonal_wind"));
+        assertFalse(names.contains("view_azimuth_nadir_S"));
+
+        // 1.6um transmission: MERIS geometry and radiances for the water vapour, but no AATSR azimuths
+        flintOpUnderTest.writeThermalPart37 = false;
+        flintOpUnderTest.writeTransmission16 = true;
+        plan = flintOpUnderTest.createProcessingPlan();
+        names = Arrays.asList(FlintOp.getRequiredSourceRasterNames(plan));
+        assertTrue(names.contains("reflec_nadir_1600_S"));
+        assertTrue(names.contains("radiance_15_M"));
+        assertTrue(names.contains("view_azimuth"));
+        assertTrue(names.contains("merid_wind"));
+        assertFalse(names.contains("btemp_nadir_1200_S"));
+        assertFalse(names.contains("sun_azimuth_nadir_S"));
+    }
+
+    public void testMasterOperatorSelectsSameOutputBands() {
+        final GlintMasterOp masterOp = new GlintMasterOp();
+        masterOp.writeWaterVapour = true;
+        masterOp.writeEffectiveWindspeed2 = true;
+        flintOpUnderTest.writeWaterVapour = true;
+        flintOpUnderTest.writeEffectiveWindspeed2 = true;
+        assertEquals(flintOpUnderTest.getSelectedOutputBands(), masterOp.getSelectedOutputBands());
+        assertEquals(Arrays.asList(FlintOp.getRequiredSourceRasterNames(flintOpUnderTest.createProcessingPlan())),
+                     Arrays.asList(FlintOp.getRequiredSourceRasterNames(
+                             FlintOp.createProcessingPlan(masterOp.getSelectedOutputBands()))));
+    }
+
+    public void testSelectedOutputBands() {
+        flintOpUnderTest.writeNormalizedRadianceFinal = true;
+        flintOpUnderTest.writeWaterVapour = true;
+        flintOpUnderTest.writeNumberEffectiveWindspeeds = true;
+        final Set<FlintOutputBand> outputBands = flintOpUnderTest.getSelectedOutputBands();
+        assertEquals(3, outputBands.size());
+        assertTrue(outputBands.contains(FlintOutputBand.RADIANCE_FINAL));
+        assertTrue(outputBands.contains(FlintOutputBand.WATER_VAPOUR));
+        assertTrue(outputBands.contains(FlintOutputBand.NUMBER_WINDSPEEDS));
+
+        assertEquals(FlintOp.RESULT_RADIANCE_FINAL_NAME, FlintOutputBand.RADIANCE_FINAL.getBandName());
+        assertEquals(FlintProcessingPlan.Step.AMBIGUITY_REDUCTION, FlintOutputBand.RADIANCE_FINAL.getStep());
+        assertEquals(FlintProcessingPlan.Step.GEOMETRICAL_CONVERSION, FlintOutputBand.NUMBER_WINDSPEEDS.getStep());
+
+        // bands which are never created have no output slot
+        for (FlintOutputBand outputBand : FlintOutputBand.values()) {
+            assertFalse(FlintOp.STEP_1c_RESULT1_NAME.equals(outputBand.getBandName()));
+            assertFalse(FlintOp.STEP_1e_RESULT_NAME.equals(outputBand.getBandName()));
+        }
+    }
+
+    public void testWaterVapourWithSharedInstance() throws Exception {
+        final FlintSolarPart37WaterVapour waterVapour = new FlintSolarPart37WaterVapour();
+        waterVapour.loadFlintAuxData();
+
+        final int n = 200;
+        final float[] expected = new float[n];
+        for (int p = 0; p < n; p++) {
+            // wind speeds above 18.4 m/s activate the NN, below the standard value is kept
+            expected[p] = waterVapour.computeWaterVapour(0.1f * p, 5.0f, 30.0f + 0.1f * p, 20.0f, 40.0f,
+                                                         50.0f + p, 40.0f);
+        }
+        assertEquals(2.8f, expected[0], 0.0f);
+        assertTrue(expected[n - 1] != 2.8f);
+
+        // one instance is used by several threads concurrently
+        final Thread[] threads = new Thread[4];
+        final boolean[] identical = new boolean[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int threadIndex = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    boolean same = true;
+                    for (int k = 0; k < 20; k++) {
+                        for (int p = 0; p < n; p++) {
+                            same &= expected[p] == waterVapour.computeWaterVapour(0.1f * p, 5.0f, 30.0f + 0.1f * p,
+                                                                                  20.0f, 40.0f, 50.0f + p, 40.0f);
+                        }
+                    }
+                    identical[threadIndex] = same;
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            assertTrue(identical[t]);
+        }
+    }
+
+    // the original per-layer k-term sum (breadboard step 1.b.2)
+    public void testWaterVapourBatch() throws Exception {
+        final FlintSolarPart37WaterVapour waterVapour = new FlintSolarPart37WaterVapour();
+        waterVapour.loadFlintAuxData();
+
+        // more pixels than one batch, every third pixel is skipped
+        final int n = 3 * FlintSolarPart37WaterVapour.BATCH_SIZE;
+        final float[] zonalWinds = new float[n];
+        final float[] meridWinds = new float[n];
+        final float[] azimuthDifferences = new float[n];
+        final float[] viewZeniths = new float[n];
+        final float[] sunZeniths = new float[n];
+        final float[] radiances14 = new float[n];
+        final float[] radiances15 = new float[n];
+        final int[] pixelIndices = new int[n];
+        int numPixels = 0;
+        for (int p = 0; p < n; p++) {
+            // wind speeds above 18.4 m/s activate the NN
+            zonalWinds[p] = 0.05f * p;
+            meridWinds[p] = 5.0f;
+            azimuthDifferences[p] = 30.0f + 0.1f * (p % 100);
+            viewZeniths[p] = p % 7 == 0 ? 0.0f : 20.0f + 0.01f * p;
+            sunZeniths[p] = 40.0f;
+            radiances14[p] = 50.0f + 0.1f * p;
+            radiances15[p] = 40.0f;
+            if (p % 3 != 0) {
+                pixelIndices[numPixels++] = p;
+            }
+        }
+
+        final float[] waterVapours = new float[n];
+        waterVapours[0] = -1.0f;
+        waterVapour.computeWaterVapour(zonalWinds, meridWinds, azimuthDifferences, viewZeniths, sunZeniths,
+                                       radiances14, radiances15, pixelIndices, 0, numPixels, waterVapours);
+        int numberOfStandardValues = 0;
+        for (int k = 0; k < numPixels; k++) {
+            final int p = pixelIndices[k];
+            final float expected = waterVapour.computeWaterVapour(zonalWinds[p], meridWinds[p],
+                                                                  azimuthDifferences[p], viewZeniths[p],
+                                                                  sunZeniths[p], radiances14[p], radiances15[p]);
+            assertEquals(expected, waterVapours[p], 0.0f);
+            if (expected == FlintSolarPart37WaterVapour.WATER_VAPOUR_STANDARD_VALUE) {
+                numberOfStandardValues++;
+            }
+        }
+        assertTrue(numberOfStandardValues > 0 && numberOfStandardValues < numPixels);
+        // skipped pixels are not modified
+        assertEquals(-1.0f, waterVapours[0], 0.0f);
+    }
+
+    private static float computeTransmissionPerLayer(float[][] aCoeff, float[][] hCoeff, float[] hWeight,
+                                                     float waterVapourColumn, float sunZenith, float viewZenith) {
+        double am = 1.0/Math.cos(Math.toRadians(sunZenith)) + 1.0/Math.cos(Math.toRadians(viewZenith));
+        double weightedIntegral = 0.0;
+        for (int i=0; i<aCoeff.length; i++) {
+            double layerIntegral = 0.0;
+            for (int j=0; j<aCoeff[i].length; j++) {
+                layerIntegral += aCoeff[i][j] + hCoeff[i][j] * waterVapourColumn / 2.7872;
+            }
+            weightedIntegral += hWeight[i] * Math.exp(-am * layerIntegral);
+        }
+        return (float) weightedIntegral;
+    }
+
     public void testWsToGauss() {
         // test results according to FUB IDL breadboard results
         double[] nnIn = new double[]{1.0, 1.37, 0.891719};
@@ -396,4 +783,176 @@ public class FlintOpTest
         assertEquals(0.0380782, result, 1.E-5);
     }
 
+    public void testConvertAatsrRad37ToMerisRadIntoBuffer() {
+        final float[][] result = new float[][]{{5.0f, 5.0f}, {5.0f, 5.0f}};
+        int numberOfAmbiguousCases = 0;
+        for (int k = 0; k < 40; k++) {
+            // geometries near the specular direction give two LUT solutions
+            final float merisSunZenith = 10.0f + 0.5f * (k % 4);
+            final float merisViewZenith = 6.0f + 0.3f * k;
+            final float aatsrAzimuthDifference = 30.0f + 3.0f * k;
+            final float merisAzimuthDifference = 180.0f - aatsrAzimuthDifference;
+            final float aatsrRad = 0.02f + 0.002f * (k % 10);
+
+            final float[][] expected = convertAatsrRad37ToMerisRadReference(aatsrRad, merisSunZenith,
+                                                                            merisViewZenith, aatsrAzimuthDifference,
+                                                                            merisAzimuthDifference);
+            flintGeometricalConversionUnderTest.convertAatsrRad37ToMerisRad(aatsrRad, merisSunZenith,
+                                                                            merisViewZenith,
+                                                                            aatsrAzimuthDifference,
+                                                                            merisAzimuthDifference, result);
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < 2; j++) {
+                    assertEquals(expected[i][j], result[i][j], 0.0f);
+                }
+            }
+            if (FlintGeometricalConversion.windspeedFound(result) == 2) {
+                numberOfAmbiguousCases++;
+            }
+        }
+        assertTrue(numberOfAmbiguousCases > 0);
+    }
+
+    public void testAdaptiveWindspeedSearch() {
+        final float[][] expected = new float[2][2];
+        final float[][] result = new float[2][2];
+        int numberOfAmbiguousCases = 0;
+        int numberOfMatches = 0;
+        for (int k = 0; k < 40; k++) {
+            final float merisSunZenith = 10.0f + 0.5f * (k % 4);
+            final float merisViewZenith = 6.0f + 0.3f * k;
+            final float aatsrAzimuthDifference = 30.0f + 3.0f * k;
+            final float merisAzimuthDifference = 180.0f - aatsrAzimuthDifference;
+            final float aatsrRad = 0.02f + 0.002f * (k % 10);
+
+            flintGeometricalConversionUnderTest.setAdaptiveWindspeedSearch(0);
+            flintGeometricalConversionUnderTest.convertAatsrRad37ToMerisRad(aatsrRad, merisSunZenith,
+                                                                            merisViewZenith,
+                                                                            aatsrAzimuthDifference,
+                                                                            merisAzimuthDifference, expected);
+            flintGeometricalConversionUnderTest.setAdaptiveWindspeedSearch(10);
+            flintGeometricalConversionUnderTest.convertAatsrRad37ToMerisRad(aatsrRad, merisSunZenith,
+                                                                            merisViewZenith,
+                                                                            aatsrAzimuthDifference,
+                                                                            merisAzimuthDifference, result);
+            assertEquals(FlintGeometricalConversion.windspeedFound(expected),
+                         FlintGeometricalConversion.windspeedFound(result));
+            for (int i = 0; i < 2; i++) {
+                if (expected[i][0] != -1.0f) {
+                    // at most one LUT windspeed step apart
+                    assertEquals(expected[i][0], result[i][0], 13.0f / 150.0f + 1.E-5f);
+                    assertEquals(expected[i][1], result[i][1], 1.E-3f);
+                    if (expected[i][0] == result[i][0]) {
+                        numberOfMatches++;
+                    }
+                }
+            }
+            if (FlintGeometricalConversion.windspeedFound(result) == 2) {
+                numberOfAmbiguousCases++;
+            }
+        }
+        assertTrue(numberOfAmbiguousCases > 0);
+        assertTrue(numberOfMatches > 0);
+
+        final FlintGeometricalConversion.SearchDeviation deviation =
+                flintGeometricalConversionUnderTest.getAdaptiveSearchDeviation(10);
+        assertTrue(deviation.getNumberOfSamples() > 0);
+        assertEquals(0, deviation.getNumberOfClassificationMismatches());
+        assertTrue(deviation.getMaxWindspeedDeviation() <= 13.0 / 150.0 + 1.E-5);
+        assertTrue(deviation.getMeanNumberOfEvaluations() < FlintGeometricalConversion.NUMBER_OF_LUT_WINDSPEEDS);
+
+        try {
+            flintGeometricalConversionUnderTest.setAdaptiveWindspeedSearch(-1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    // the original per-pixel LUT approach (breadboard step 2.a)
+    private float[][] convertAatsrRad37ToMerisRadReference(float aatsrRad, float merisSunZenith,
+                                                           float merisViewZenith, float aatsrAzimuthDifference,
+                                                           float merisAzimuthDifference) {
+        final int n = FlintGeometricalConversion.NUMBER_OF_LUT_WINDSPEEDS;
+        final double[] lutRadiance = new double[n];
+        for (int i = 0; i < n; i++) {
+            final double[] gaussPars = new double[4];
+            flintGeometricalConversionUnderTest.applyNeuralNetWindspeed(
+                    new double[]{FlintGeometricalConversion.getLutWindspeed(i),
+                            FlintGeometricalConversion.refractiveIndexReal037,
+                            Math.cos(Math.toRadians(merisSunZenith))}, gaussPars);
+            lutRadiance[i] = flintGeometricalConversionUnderTest.applyGauss2DRecall(merisViewZenith,
+                                                                                    aatsrAzimuthDifference,
+                                                                                    gaussPars);
+        }
+        double maximumAcceptableDiff = 0.0;
+        for (int i = 0; i < n - 1; i++) {
+            maximumAcceptableDiff = Math.max(maximumAcceptableDiff, Math.abs(lutRadiance[i] - lutRadiance[i + 1]));
+        }
+        final int maximumIndex = GlintHelpers.getMaximumValueIndexInDoubleArray(lutRadiance);
+
+        final float[][] result = new float[][]{{-1.0f, -1.0f}, {-1.0f, -1.0f}};
+        if (maximumIndex > 0 && maximumIndex < n - 1) {
+            result[0] = getRadianceFromLUTReference(lutRadiance, 0, maximumIndex - 1, aatsrRad, merisSunZenith,
+                                                    maximumAcceptableDiff, merisViewZenith, merisAzimuthDifference);
+            result[1] = getRadianceFromLUTReference(lutRadiance, maximumIndex, n - 1, aatsrRad, merisSunZenith,
+                                                    maximumAcceptableDiff, merisViewZenith, merisAzimuthDifference);
+        } else {
+            result[0] = getRadianceFromLUTReference(lutRadiance, 0, n - 1, aatsrRad, merisSunZenith,
+                                                    maximumAcceptableDiff, merisViewZenith, aatsrAzimuthDifference);
+        }
+        return result;
+    }
+
+    private float[] getRadianceFromLUTReference(double[] lutRadiance, int startIndex, int endIndex, float aatsrRad,
+                                                float merisSunZenith, double maximumAcceptableDiff,
+                                                float merisViewZenith, float azimuthDifference) {
+        final double[] radianceDiffs = new double[endIndex - startIndex + 1];
+        for (int i = startIndex; i <= endIndex; i++) {
+            radianceDiffs[i - startIndex] = Math.abs(lutRadiance[i] - aatsrRad);
+        }
+        final int windspeedIndex = startIndex + GlintHelpers.getMinimumValueIndexInDoubleArray(radianceDiffs);
+        final double windspeed = FlintGeometricalConversion.getLutWindspeed(windspeedIndex);
+
+        final float[] result = new float[]{-1.0f, -1.0f};
+        if (GlintHelpers.getMinimumValueInDoubleArray(radianceDiffs) <= maximumAcceptableDiff) {
+            final double[] gaussPars = new double[4];
+            flintGeometricalConversionUnderTest.applyNeuralNetWindspeed(
+                    new double[]{windspeed, FlintGeometricalConversion.refractiveIndexReal088,
+                            Math.cos(Math.toRadians(merisSunZenith))}, gaussPars);
+            result[0] = (float) windspeed;
+            result[1] = flintGeometricalConversionUnderTest.applyGauss2DRecall(merisViewZenith, azimuthDifference,
+                                                                               gaussPars);
+        }
+        return result;
+    }
+
+    public void testGaussParsGrid() {
+        FlintGaussParsGrid grid = new FlintGaussParsGrid(flintGeometricalConversionUnderTest,
+                                                         FlintGaussParsGrid.DEFAULT_NUMBER_OF_COS_SUN_ZENITHS);
+        double[] nnIn = new double[3];
+        double[] gaussParsFromNN = new double[4];
+        double[] gaussParsFromGrid = new double[4];
+        final double[] cosSunZeniths = new double[]{0.604043, 0.7123, 0.891719, 0.925029, 0.992609};
+        for (int i = 0; i < FlintGeometricalConversion.NUMBER_OF_LUT_WINDSPEEDS; i += 10) {
+            for (double cosSunZenith : cosSunZeniths) {
+                nnIn[0] = FlintGeometricalConversion.getLutWindspeed(i);
+                nnIn[1] = FlintGeometricalConversion.refractiveIndexReal037;
+                nnIn[2] = cosSunZenith;
+                flintGeometricalConversionUnderTest.applyNeuralNetWindspeed(nnIn, gaussParsFromNN);
+                grid.getGaussPars(i, FlintGeometricalConversion.refractiveIndexReal037, cosSunZenith, gaussParsFromGrid);
+                for (int k = 0; k < 4; k++) {
+                    assertEquals(gaussParsFromNN[k], gaussParsFromGrid[k], 1.E-5);
+                }
+
+                nnIn[1] = FlintGeometricalConversion.refractiveIndexReal088;
+                flintGeometricalConversionUnderTest.applyNeuralNetWindspeed(nnIn, gaussParsFromNN);
+                grid.getGaussPars(i, FlintGeometricalConversion.refractiveIndexReal088, cosSunZenith, gaussParsFromGrid);
+                for (int k = 0; k < 4; k++) {
+                    assertEquals(gaussParsFromNN[k], gaussParsFromGrid[k], 1.E-5);
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,117 @@
+package org.esa.beam.glint.operators;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.PixelPos;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class FlintPixelMappingTest extends TestCase {
+
+    private static final int MERIS_WIDTH = 30;
+    private static final int MERIS_HEIGHT = 20;
+    private static final int AATSR_WIDTH = 12;
+    private static final int AATSR_HEIGHT = 25;
+
+    private FlintPixelMapping mapping;
+    private File file;
+
+    protected void setUp() throws IOException {
+        // AATSR swath covers MERIS columns [6, 24), AATSR pixels are 1.5 MERIS pixels wide and shifted by 2 rows
+        final FlintPixelMapping.Locator locator = new FlintPixelMapping.Locator() {
+            @Override
+            public boolean locate(int merisX, int merisY, PixelPos aatsrPixelPos) {
+                if (merisX == 0) {
+                    // no geo-location
+                    return false;
+                }
+                aatsrPixelPos.x = (merisX + 0.5f - 6.0f) / 1.5f;
+                aatsrPixelPos.y = merisY + 0.5f + 2.0f;
+                return true;
+            }
+        };
+        mapping = FlintPixelMapping.create("MERIS", "AATSR", MERIS_WIDTH, MERIS_HEIGHT, AATSR_WIDTH, AATSR_HEIGHT,
+                                           locator);
+        file = File.createTempFile("flint-pixel-mapping", ".bin");
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testMapping() {
+        assertEquals(FlintPixelMapping.NO_SOURCE_PIXEL, mapping.getSourceIndex(0, 0));
+        assertEquals(FlintPixelMapping.NO_SOURCE_PIXEL, mapping.getSourceIndex(5, 3));
+        assertEquals(2 * AATSR_WIDTH, mapping.getSourceIndex(6, 0));
+        assertEquals(5 * AATSR_WIDTH + 2, mapping.getSourceIndex(9, 3));
+        assertEquals(21 * AATSR_WIDTH + 11, mapping.getSourceIndex(23, 19));
+        assertEquals(FlintPixelMapping.NO_SOURCE_PIXEL, mapping.getSourceIndex(24, 19));
+
+        assertNull(mapping.getSourceRectangle(new Rectangle(0, 0, 6, MERIS_HEIGHT)));
+        assertEquals(new Rectangle(2, 3, 4, 4), mapping.getSourceRectangle(new Rectangle(9, 1, 5, 4)));
+    }
+
+    public void testGather() {
+        final Rectangle rectangle = new Rectangle(4, 1, 8, 3);
+        final Rectangle sourceRectangle = mapping.getSourceRectangle(rectangle);
+        final float[] sourceSamples = new float[sourceRectangle.width * sourceRectangle.height];
+        final int[] sourceFlags = new int[sourceSamples.length];
+        for (int y = 0; y < sourceRectangle.height; y++) {
+            for (int x = 0; x < sourceRectangle.width; x++) {
+                final int aatsrX = sourceRectangle.x + x;
+                final int aatsrY = sourceRectangle.y + y;
+                sourceSamples[y * sourceRectangle.width + x] = 100.0f * aatsrY + aatsrX + 0.5f;
+                sourceFlags[y * sourceRectangle.width + x] = 100 * aatsrY + aatsrX;
+            }
+        }
+
+        final float[] samples = new float[rectangle.width * rectangle.height];
+        final int[] flags = new int[samples.length];
+        mapping.gather(rectangle, sourceSamples, sourceRectangle, -999.0f, samples);
+        mapping.gather(rectangle, sourceFlags, sourceRectangle, -1, flags);
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                final int i = (y - rectangle.y) * rectangle.width + x - rectangle.x;
+                final int index = mapping.getSourceIndex(x, y);
+                if (index == FlintPixelMapping.NO_SOURCE_PIXEL) {
+                    assertEquals(-999.0f, samples[i], 0.0f);
+                    assertEquals(-1, flags[i]);
+                } else {
+                    final int aatsrX = index % AATSR_WIDTH;
+                    final int aatsrY = index / AATSR_WIDTH;
+                    assertEquals(100.0f * aatsrY + aatsrX + 0.5f, samples[i], 0.0f);
+                    assertEquals(100 * aatsrY + aatsrX, flags[i]);
+                }
+            }
+        }
+    }
+
+    public void testWriteAndOpen() throws IOException {
+        mapping.write(file);
+        final FlintPixelMapping reread = FlintPixelMapping.open(file);
+        assertTrue(reread.isMappingOf("MERIS", "AATSR", MERIS_WIDTH, MERIS_HEIGHT, AATSR_WIDTH, AATSR_HEIGHT));
+        assertFalse(reread.isMappingOf("MERIS", "AATSR2", MERIS_WIDTH, MERIS_HEIGHT, AATSR_WIDTH, AATSR_HEIGHT));
+        assertFalse(reread.isMappingOf("MERIS", "AATSR", MERIS_WIDTH, MERIS_HEIGHT + 1, AATSR_WIDTH, AATSR_HEIGHT));
+        for (int y = 0; y < MERIS_HEIGHT; y++) {
+            for (int x = 0; x < MERIS_WIDTH; x++) {
+                assertEquals(mapping.getSourceIndex(x, y), reread.getSourceIndex(x, y));
+            }
+        }
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(randomAccessFile.length() - 3);
+            randomAccessFile.write(0x7f);
+        } finally {
+            randomAccessFile.close();
+        }
+        try {
+            FlintPixelMapping.open(file);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("checksum"));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.esa.beam.glint.operators;
+
+import junit.framework.TestCase;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+
+public class FlintRadianceCurveGridTest extends TestCase {
+
+    private static final int N = FlintGeometricalConversion.NUMBER_OF_LUT_WINDSPEEDS;
+
+    private FlintGeometricalConversion geometricalConversion;
+    private FlintRadianceCurveGrid.GeometrySource smoothGeometry;
+
+    protected void setUp() throws IOException {
+        geometricalConversion = new FlintGeometricalConversion();
+        geometricalConversion.loadFlintAuxData();
+        smoothGeometry = new FlintRadianceCurveGrid.GeometrySource() {
+            @Override
+            public float getSunZenith(int x, int y) {
+                return 10.0f + 0.02f * y;
+            }
+
+            @Override
+            public float getViewZenith(int x, int y) {
+                return 5.0f + 0.05f * x;
+            }
+
+            @Override
+            public float getAatsrAzimuthDifference(int x, int y) {
+                return 120.0f + 0.03f * x + 0.01f * y;
+            }
+        };
+    }
+
+    public void testNodeCurvesAreExact() {
+        final Rectangle rectangle = new Rectangle(20, 10, 50, 40);
+        final FlintRadianceCurveGrid grid = new FlintRadianceCurveGrid(geometricalConversion, smoothGeometry,
+                                                                       rectangle, 16);
+        final double[] curve = new double[N];
+        final double[] expected = new double[N];
+        // nodes: x = 20, 32, 48, 64, 69 and y = 10, 16, 32, 48, 49
+        final int[] nodeXs = new int[]{20, 32, 48, 64, 69};
+        final int[] nodeYs = new int[]{10, 16, 32, 48, 49};
+        for (int y : nodeYs) {
+            for (int x : nodeXs) {
+                assertTrue(grid.interpolateCurve(x, y, curve));
+                geometricalConversion.createNormalizedRadianceCurve(smoothGeometry.getSunZenith(x, y),
+                                                                    smoothGeometry.getViewZenith(x, y),
+                                                                    smoothGeometry.getAatsrAzimuthDifference(x, y),
+                                                                    expected);
+                for (int i = 0; i < N; i++) {
+                    assertEquals(expected[i], curve[i], 0.0);
+                }
+            }
+        }
+        assertEquals(25, grid.getNumberOfNodeCurves());
+
+        // all pixels of the tile are covered by the node curves computed so far
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                assertTrue(grid.interpolateCurve(x, y, curve));
+            }
+        }
+        assertEquals(25, grid.getNumberOfNodeCurves());
+    }
+
+    public void testInterpolatedCurvesAgreeWithExactCurves() {
+        final Rectangle rectangle = new Rectangle(0, 0, 33, 33);
+        final FlintRadianceCurveGrid grid = new FlintRadianceCurveGrid(geometricalConversion, smoothGeometry,
+                                                                       rectangle, 16);
+        final double[] curve = new double[N];
+        final double[] expected = new double[N];
+        final float[][] result = new float[2][2];
+        final float[][] expectedResult = new float[2][2];
+        for (int y = 0; y < 33; y += 3) {
+            for (int x = 0; x < 33; x += 5) {
+                final float sunZenith = smoothGeometry.getSunZenith(x, y);
+                final float viewZenith = smoothGeometry.getViewZenith(x, y);
+                final float aatsrAzimuthDifference = smoothGeometry.getAatsrAzimuthDifference(x, y);
+                assertTrue(grid.interpolateCurve(x, y, curve));
+                geometricalConversion.createNormalizedRadianceCurve(sunZenith, viewZenith, aatsrAzimuthDifference,
+                                                                    expected);
+                double maximum = 0.0;
+                for (int i = 0; i < N; i++) {
+                    maximum = Math.max(maximum, expected[i]);
+                }
+                for (int i = 0; i < N; i++) {
+                    assertEquals(expected[i], curve[i], 0.01 * maximum);
+                }
+
+                // the inversion with the exact curve is identical to the per-pixel conversion
+                final float aatsrRad = (float) (0.5 * maximum);
+                geometricalConversion.convertAatsrRad37ToMerisRad(aatsrRad, sunZenith, viewZenith,
+                                                                  aatsrAzimuthDifference, 60.0f, expectedResult);
+                geometricalConversion.convertAatsrRad37ToMerisRad(expected, aatsrRad, sunZenith, viewZenith,
+                                                                  aatsrAzimuthDifference, 60.0f, result);
+                for (int i = 0; i < 2; i++) {
+                    assertEquals(expectedResult[i][0], result[i][0], 0.0f);
+                    assertEquals(expectedResult[i][1], result[i][1], 0.0f);
+                }
+            }
+        }
+        assertEquals(9, grid.getNumberOfNodeCurves());
+    }
+
+    public void testCellsWithAzimuthJumpAreNotInterpolated() {
+        final FlintRadianceCurveGrid.GeometrySource nadirGeometry = new FlintRadianceCurveGrid.GeometrySource() {
+            @Override
+            public float getSunZenith(int x, int y) {
+                return 20.0f;
+            }
+
+            @Override
+            public float getViewZenith(int x, int y) {
+                return 0.5f * Math.abs(x - 24);
+            }
+
+            @Override
+            public float getAatsrAzimuthDifference(int x, int y) {
+                // the view azimuth flips at nadir (x = 24)
+                return x < 24 ? 80.0f : 100.0f + 0.1f * x;
+            }
+        };
+        final FlintRadianceCurveGrid grid = new FlintRadianceCurveGrid(geometricalConversion, nadirGeometry,
+                                                                       new Rectangle(0, 0, 48, 8), 16);
+        final double[] curve = new double[N];
+        assertTrue(grid.interpolateCurve(5, 3, curve));
+        assertFalse(grid.interpolateCurve(20, 3, curve));
+        assertFalse(grid.interpolateCurve(30, 3, curve));
+        assertTrue(grid.interpolateCurve(40, 3, curve));
+
+        try {
+            new FlintRadianceCurveGrid(geometricalConversion, nadirGeometry, new Rectangle(0, 0, 48, 8), 0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+
+    public void testNaNGeometryIsReadOncePerNode() {
+        final int[] numberOfCalls = new int[1];
+        final FlintRadianceCurveGrid.GeometrySource invalidGeometry = new FlintRadianceCurveGrid.GeometrySource() {
+            @Override
+            public float getSunZenith(int x, int y) {
+                return 20.0f;
+            }
+
+            @Override
+            public float getViewZenith(int x, int y) {
+                return 10.0f;
+            }
+
+            @Override
+            public float getAatsrAzimuthDifference(int x, int y) {
+                numberOfCalls[0]++;
+                return Float.NaN;
+            }
+        };
+        final FlintRadianceCurveGrid grid = new FlintRadianceCurveGrid(geometricalConversion, invalidGeometry,
+                                                                       new Rectangle(0, 0, 48, 8), 16);
+        final double[] curve = new double[N];
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 48; x++) {
+                assertFalse(grid.interpolateCurve(x, y, curve));
+            }
+        }
+        // nodes: x = 0, 16, 32, 47 and y = 0, 7
+        assertEquals(8, numberOfCalls[0]);
+        assertEquals(0, grid.getNumberOfNodeCurves());
+    }
+}
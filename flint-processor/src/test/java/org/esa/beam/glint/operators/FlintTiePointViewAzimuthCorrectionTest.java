@@ -0,0 +1,185 @@
+package org.esa.beam.glint.operators;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+
+public class FlintTiePointViewAzimuthCorrectionTest extends TestCase {
+
+    private static final int GRID_WIDTH = 21;
+    private static final int GRID_HEIGHT = 4;
+
+    private float[] tiePoints;
+
+    protected void setUp() {
+        tiePoints = new float[GRID_WIDTH * GRID_HEIGHT];
+        for (int j = 0; j < GRID_HEIGHT; j++) {
+            // nadir between tie-point columns 9 + j/2 and 10 + j/2
+            final int nadirColumn = 9 + j / 2;
+            for (int i = 0; i < GRID_WIDTH; i++) {
+                tiePoints[j * GRID_WIDTH + i] = getViewAzimuth(i, j, nadirColumn);
+            }
+        }
+        // no discontinuity in the last row
+        for (int i = 0; i < GRID_WIDTH; i++) {
+            tiePoints[(GRID_HEIGHT - 1) * GRID_WIDTH + i] = 100.0f + 0.5f * i;
+        }
+        // no-data margin in row 1
+        tiePoints[GRID_WIDTH] = 0.0f;
+    }
+
+    public void testTiePointsAreCorrectedOnBothSides() {
+        final float[] leftTiePoints = tiePoints.clone();
+        final float[] rightTiePoints = tiePoints.clone();
+        final float[] discontinuityColumns = new float[GRID_HEIGHT];
+        FlintTiePointViewAzimuthCorrection.correctTiePoints(tiePoints, GRID_WIDTH, GRID_HEIGHT,
+                                                            leftTiePoints, rightTiePoints, discontinuityColumns);
+
+        for (int j = 0; j < GRID_HEIGHT - 1; j++) {
+            final int nadirColumn = 9 + j / 2;
+            assertEquals(nadirColumn + 0.5f, discontinuityColumns[j], 0.0f);
+            final int startColumn = j == 1 ? 1 : 0;
+            for (int i = startColumn; i < GRID_WIDTH; i++) {
+                final int k = j * GRID_WIDTH + i;
+                // the linear profiles are continued across the discontinuity
+                assertEquals(getLeftViewAzimuth(i, j), leftTiePoints[k], 1.E-3f);
+                assertEquals(getRightViewAzimuth(i, j), rightTiePoints[k], 1.E-3f);
+                // tie-points away from the discontinuity are not modified
+                if (i < nadirColumn - 1) {
+                    assertEquals(tiePoints[k], leftTiePoints[k], 0.0f);
+                }
+                if (i > nadirColumn + 2) {
+                    assertEquals(tiePoints[k], rightTiePoints[k], 0.0f);
+                }
+            }
+        }
+        // margin is not modified
+        assertEquals(0.0f, leftTiePoints[GRID_WIDTH], 0.0f);
+        assertEquals(0.0f, rightTiePoints[GRID_WIDTH], 0.0f);
+
+        final int lastRow = (GRID_HEIGHT - 1) * GRID_WIDTH;
+        assertTrue(Float.isNaN(discontinuityColumns[GRID_HEIGHT - 1]));
+        for (int i = 0; i < GRID_WIDTH; i++) {
+            assertEquals(tiePoints[lastRow + i], leftTiePoints[lastRow + i], 0.0f);
+            assertEquals(tiePoints[lastRow + i], rightTiePoints[lastRow + i], 0.0f);
+        }
+    }
+
+    public void testTiePointRowsAreCorrectedLikeImageRows() {
+        final float[] leftTiePoints = tiePoints.clone();
+        final float[] rightTiePoints = tiePoints.clone();
+        final float[] discontinuityColumns = new float[GRID_HEIGHT];
+        FlintTiePointViewAzimuthCorrection.correctTiePoints(tiePoints, GRID_WIDTH, GRID_HEIGHT,
+                                                            leftTiePoints, rightTiePoints, discontinuityColumns);
+
+        final FlintPreparation preparation = new FlintPreparation();
+        final float[] row = new float[GRID_WIDTH];
+        for (int j = 0; j < GRID_HEIGHT; j++) {
+            System.arraycopy(tiePoints, j * GRID_WIDTH, row, 0, GRID_WIDTH);
+            preparation.correctViewAzimuthLinear(row, 0, GRID_WIDTH);
+            for (int i = 0; i < GRID_WIDTH; i++) {
+                final float expected = i < discontinuityColumns[j] || Float.isNaN(discontinuityColumns[j]) ?
+                                       leftTiePoints[j * GRID_WIDTH + i] : rightTiePoints[j * GRID_WIDTH + i];
+                assertEquals(expected, row[i], 0.0f);
+            }
+        }
+    }
+
+    public void testPixelsAgreeWithFullResolutionCorrection() {
+        assertPixelsAgreeWithFullResolutionCorrection(TiePointGrid.DISCONT_NONE, 1.E-4f, 1.E-4f);
+        // the full-resolution rows are interpolated via sine and cosine, the corrected grids linearly;
+        // near the discontinuity the full-resolution rows also mix tie-points of both sides
+        assertPixelsAgreeWithFullResolutionCorrection(TiePointGrid.DISCONT_AT_180, 0.05f, 0.2f);
+    }
+
+    public void testCorrectedGridsAreNotWrapped() {
+        // the left fit continued across the discontinuity exceeds 180 degrees
+        final int gridWidth = 11;
+        final float[] sceneTiePoints = new float[2 * gridWidth];
+        for (int j = 0; j < 2; j++) {
+            for (int i = 0; i < gridWidth; i++) {
+                sceneTiePoints[j * gridWidth + i] = i <= 5 ? 174.9f + i : -20.0f + i;
+            }
+        }
+        final TiePointGrid grid = new TiePointGrid("view_azimuth", gridWidth, 2, 0.5f, 0.5f, 16.0f, 16.0f,
+                                                   sceneTiePoints, TiePointGrid.DISCONT_AT_180);
+        final FlintTiePointViewAzimuthCorrection correction = new FlintTiePointViewAzimuthCorrection(grid);
+        // pixels left of the discontinuity (between tie-point columns 5 and 5.5), above 180 degrees from x = 82
+        for (int x = 80; x < 88; x++) {
+            assertTrue(correction.isLeftOfDiscontinuity(x, 8));
+            assertEquals(174.9f + x / 16.0f, correction.getSample(x, 8), 1.E-3f);
+        }
+        assertFalse(correction.isLeftOfDiscontinuity(88, 8));
+        assertEquals(-20.0f + 6.0f, correction.getSample(96, 8), 1.E-3f);
+    }
+
+    //
+    // Compares the correction with the correction of the interpolated full-resolution rows by
+    // correctViewAzimuthLinear, for a scene whose discontinuity moves across the tie-point columns.
+    // More than one tie-point cell away from the discontinuity the results agree within tolerance, closer
+    // to it within nearTolerance, except for pixels within half a cell which are assigned to different sides.
+    //
+    private static void assertPixelsAgreeWithFullResolutionCorrection(int discontinuity, float tolerance,
+                                                                      float nearTolerance) {
+        final int subSampling = 16;
+        final int gridWidth = 21;
+        final int gridHeight = 6;
+        final int width = (gridWidth - 1) * subSampling + 1;
+        final int height = (gridHeight - 1) * subSampling + 1;
+        final float[] sceneTiePoints = new float[gridWidth * gridHeight];
+        for (int j = 0; j < gridHeight; j++) {
+            for (int i = 0; i < gridWidth; i++) {
+                sceneTiePoints[j * gridWidth + i] = getSceneViewAzimuth(i * subSampling + 0.5f,
+                                                                        j * subSampling + 0.5f);
+            }
+        }
+        final TiePointGrid grid = new TiePointGrid("view_azimuth", gridWidth, gridHeight, 0.5f, 0.5f,
+                                                   subSampling, subSampling, sceneTiePoints, discontinuity);
+        final FlintTiePointViewAzimuthCorrection correction = new FlintTiePointViewAzimuthCorrection(grid);
+
+        final FlintPreparation preparation = new FlintPreparation();
+        final float[] row = new float[width];
+        int numberOfDeviatingPixels = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = grid.getPixelFloat(x, y);
+            }
+            preparation.correctViewAzimuthLinear(row, 0, width);
+            for (int x = 0; x < width; x++) {
+                final float distance = Math.abs(x + 0.5f - getSceneNadirX(y + 0.5f));
+                final float sample = correction.getSample(x, y);
+                if (distance > subSampling) {
+                    assertEquals(row[x], sample, tolerance);
+                } else if (Math.abs(row[x] - sample) > 1.0f) {
+                    // on the other side of the discontinuity
+                    assertTrue(distance <= 0.5f * subSampling);
+                    numberOfDeviatingPixels++;
+                } else {
+                    assertEquals(row[x], sample, nearTolerance);
+                }
+            }
+        }
+        // the sides of a few pixels per row differ
+        assertTrue(numberOfDeviatingPixels > 0);
+        assertTrue(numberOfDeviatingPixels < 4 * height);
+    }
+
+    private static float getSceneNadirX(float y) {
+        return 150.0f + 0.4f * y;
+    }
+
+    private static float getSceneViewAzimuth(float x, float y) {
+        return x < getSceneNadirX(y) ? 101.0f + 0.012f * x + 0.01f * y : -79.0f + 0.015f * x + 0.01f * y;
+    }
+
+    private static float getViewAzimuth(int i, int j, int nadirColumn) {
+        return i <= nadirColumn ? getLeftViewAzimuth(i, j) : getRightViewAzimuth(i, j);
+    }
+
+    private static float getLeftViewAzimuth(int i, int j) {
+        return 100.0f + 1.5f * i + 0.25f * j;
+    }
+
+    private static float getRightViewAzimuth(int i, int j) {
+        return -80.0f + 1.25f * i + 0.25f * j;
+    }
+}
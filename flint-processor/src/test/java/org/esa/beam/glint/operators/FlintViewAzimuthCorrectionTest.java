@@ -0,0 +1,175 @@
+package org.esa.beam.glint.operators;
+
+import junit.framework.TestCase;
+import org.esa.beam.glint.util.GlintHelpers;
+
+public class FlintViewAzimuthCorrectionTest extends TestCase {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 25;
+
+    private FlintPreparation preparation;
+    private float[] scene;
+    private int numberOfReads;
+
+    protected void setUp() {
+        preparation = new FlintPreparation();
+        scene = new float[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            if (y == 5) {
+                // row outside of the swath
+                continue;
+            }
+            // swath with discontinuity near the centre, no-data margins at the left and right
+            final int start = y % 4;
+            final int end = WIDTH - 1 - y % 3;
+            for (int x = start; x <= end; x++) {
+                final int i = x - start;
+                scene[y * WIDTH + x] = (i < 18 ? 100.0f + 1.5f * i : 60.0f + 1.2f * i) + 0.1f * y;
+                if (i >= 15 && i <= 20) {
+                    // distortion around the discontinuity
+                    scene[y * WIDTH + x] += 0.5f * (i - 14) * (i - 14);
+                }
+            }
+        }
+        numberOfReads = 0;
+    }
+
+    public void testCorrectedRowsAreIdenticalToRowByRowCorrection() {
+        final FlintViewAzimuthCorrection correction = createCorrection(8, 4);
+
+        final float[] row = new float[WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            System.arraycopy(scene, y * WIDTH, row, 0, WIDTH);
+            preparation.correctViewAzimuthLinear(row, 0, WIDTH);
+
+            final FlintViewAzimuthCorrection.Block block = correction.getBlock(y);
+            assertTrue(block.containsRow(y));
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(row[x], block.getSample(x, y), 0.0f);
+            }
+        }
+        // each block is read only once: 25 rows in blocks of 8
+        assertEquals(4, numberOfReads);
+    }
+
+    public void testRowCorrectionAgreesWithCorrectionProfile() {
+        final int y = 2;
+        final float[] row = new float[WIDTH];
+        System.arraycopy(scene, y * WIDTH, row, 0, WIDTH);
+        preparation.correctViewAzimuthLinear(row, 0, WIDTH);
+
+        // swath of row 2 is [2, 37]
+        final double[] yArray = new double[36];
+        for (int x = 2; x <= 37; x++) {
+            yArray[x - 2] = scene[y * WIDTH + x];
+        }
+        final double[] profile = preparation.getViewAzimuthCorrectionProfile(yArray);
+        boolean corrected = false;
+        for (int x = 2; x < 37; x++) {
+            assertEquals((float) profile[x - 2], row[x], 0.0f);
+            corrected |= row[x] != scene[y * WIDTH + x];
+        }
+        assertTrue(corrected);
+        // last swath pixel and margins are not modified
+        assertEquals(scene[y * WIDTH + 37], row[37], 0.0f);
+        assertEquals(0.0f, row[0], 0.0f);
+        assertEquals(0.0f, row[39], 0.0f);
+    }
+
+    public void testRowCorrectionAgreesWithReferenceImplementation() {
+        final float[][] rows = new float[][]{
+                // no discontinuity found
+                {0.0f, 10.0f, 11.0f, 12.0f, 13.0f, 14.0f, 15.0f, 16.0f, 0.0f},
+                // short swaths
+                {0.0f, 10.0f, 30.0f, 0.0f},
+                {0.0f, 10.0f, 30.0f, 20.0f, 40.0f, 0.0f},
+                // several matching indices, left side of discontinuity right of right side
+                {5.0f, 6.0f, 7.0f, 30.0f, 31.0f, 32.0f, 8.0f, 9.0f, 10.0f, 11.0f, 12.0f, 13.0f},
+                // swath without margins, NaN
+                {100.0f, 101.0f, 102.0f, 103.0f, Float.NaN, 104.0f, 105.0f, 60.0f, 61.0f, 62.0f, 63.0f},
+                // no swath
+                {0.0f, 0.0f, 0.0f, 0.0f, 0.0f},
+                {-0.0f, 5.0f, 0.0f, 6.0f, 7.0f, 0.0f}
+        };
+        for (float[] row : rows) {
+            assertCorrectionAgreesWithReference(row);
+        }
+        for (int y = 0; y < HEIGHT; y++) {
+            final float[] row = new float[WIDTH];
+            System.arraycopy(scene, y * WIDTH, row, 0, WIDTH);
+            assertCorrectionAgreesWithReference(row);
+        }
+    }
+
+    public void testCacheIsBounded() {
+        final FlintViewAzimuthCorrection correction = createCorrection(5, 2);
+        correction.getBlock(0);
+        correction.getBlock(4);
+        assertEquals(1, numberOfReads);
+        correction.getBlock(5);
+        correction.getBlock(12);
+        assertEquals(3, numberOfReads);
+        assertEquals(2, correction.getNumberOfCachedBlocks());
+
+        // block 0 has been evicted
+        correction.getBlock(1);
+        assertEquals(4, numberOfReads);
+        assertEquals(2, correction.getNumberOfCachedBlocks());
+
+        // last block has fewer rows
+        final FlintViewAzimuthCorrection.Block lastBlock = correction.getBlock(HEIGHT - 1);
+        assertTrue(lastBlock.containsRow(20));
+        assertFalse(lastBlock.containsRow(HEIGHT));
+    }
+
+    private void assertCorrectionAgreesWithReference(float[] row) {
+        // row-wise correction with getViewAzimuthCorrectionProfile, as done before the single-pass fit
+        final float[] expected = row.clone();
+        int startIndex = 0;
+        int endIndex = row.length - 1;
+        for (int x = 1; x < row.length; x++) {
+            if (row[x] != 0.0f && row[x - 1] == 0.0f) {
+                startIndex = x;
+                break;
+            }
+        }
+        for (int x = 0; x < row.length - 1; x++) {
+            if (row[x] != 0.0f && row[x + 1] == 0.0f) {
+                endIndex = x;
+                break;
+            }
+        }
+        if (startIndex < endIndex) {
+            final double[] yArray = new double[endIndex - startIndex + 1];
+            for (int x = startIndex; x <= endIndex; x++) {
+                yArray[x - startIndex] = row[x];
+            }
+            if (GlintHelpers.getMinimumValueInDoubleArray(yArray) != 0.0) {
+                final double[] profile = preparation.getViewAzimuthCorrectionProfile(yArray);
+                for (int x = startIndex; x < endIndex; x++) {
+                    expected[x] = (float) profile[x - startIndex];
+                }
+            }
+        }
+
+        // with offset
+        final float[] samples = new float[row.length + 3];
+        System.arraycopy(row, 0, samples, 3, row.length);
+        preparation.correctViewAzimuthLinear(samples, 3, row.length);
+        for (int x = 0; x < row.length; x++) {
+            assertEquals(Float.floatToIntBits(expected[x]), Float.floatToIntBits(samples[x + 3]));
+        }
+    }
+
+    private FlintViewAzimuthCorrection createCorrection(int blockHeight, int maxCachedBlocks) {
+        final FlintViewAzimuthCorrection.RowSource rowSource = new FlintViewAzimuthCorrection.RowSource() {
+            @Override
+            public void readRows(int y, int height, float[] samples) {
+                numberOfReads++;
+                System.arraycopy(scene, y * WIDTH, samples, 0, height * WIDTH);
+            }
+        };
+        return new FlintViewAzimuthCorrection(rowSource, preparation, WIDTH, HEIGHT, blockHeight, maxCachedBlocks);
+    }
+}
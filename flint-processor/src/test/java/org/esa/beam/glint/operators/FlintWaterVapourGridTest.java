@@ -0,0 +1,104 @@
+package org.esa.beam.glint.operators;
+
+import junit.framework.TestCase;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+
+public class FlintWaterVapourGridTest extends TestCase {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    private FlintSolarPart37WaterVapour waterVapour;
+    private float[] merisRad14;
+    private float[] merisRad15;
+    private float[] zonalWinds;
+
+    protected void setUp() throws IOException {
+        waterVapour = new FlintSolarPart37WaterVapour();
+        waterVapour.loadFlintAuxData();
+        merisRad14 = new float[WIDTH * HEIGHT];
+        merisRad15 = new float[WIDTH * HEIGHT];
+        zonalWinds = new float[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int i = y * WIDTH + x;
+                merisRad14[i] = 50.0f + 0.1f * x;
+                merisRad15[i] = 40.0f + 0.05f * y;
+                // the NN is only applied for high wind speeds (see computeWaterVapour)
+                zonalWinds[i] = 19.0f + 0.02f * x;
+            }
+        }
+        // a cloud edge
+        for (int y = 20; y < HEIGHT; y++) {
+            merisRad15[y * WIDTH + 25] = 80.0f;
+        }
+    }
+
+    public void testInterpolatedWaterVapour() {
+        final int[] numberOfExactComputations = new int[1];
+        final FlintWaterVapourGrid.PixelSource pixelSource = createPixelSource(numberOfExactComputations);
+        final FlintWaterVapourGrid grid = new FlintWaterVapourGrid(pixelSource, new Rectangle(0, 0, WIDTH, HEIGHT),
+                                                                   8);
+
+        float maxDeviation = 0.0f;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final float expected = computeWaterVapour(x, y);
+                final float result = grid.getWaterVapour(x, y);
+                if (x % 8 == 0 && y % 8 == 0 || x == 25 && y >= 20) {
+                    // nodes and pixels at the cloud edge are computed exactly
+                    assertEquals(expected, result, 0.0f);
+                }
+                maxDeviation = Math.max(maxDeviation, Math.abs(expected - result));
+            }
+        }
+        assertTrue(maxDeviation < 0.05f);
+        assertEquals(numberOfExactComputations[0], grid.getNumberOfComputations());
+        assertTrue(grid.getNumberOfComputations() < WIDTH * HEIGHT / 4);
+    }
+
+    public void testStandardValueIsNotInterpolated() {
+        // the NN is not applied for low wind speeds in the left part of the scene
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < 12; x++) {
+                zonalWinds[y * WIDTH + x] = 5.0f;
+            }
+        }
+        final FlintWaterVapourGrid grid = new FlintWaterVapourGrid(createPixelSource(new int[1]),
+                                                                   new Rectangle(0, 0, WIDTH, HEIGHT), 8);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < 24; x++) {
+                if (x < 12) {
+                    assertEquals(FlintSolarPart37WaterVapour.WATER_VAPOUR_STANDARD_VALUE, grid.getWaterVapour(x, y),
+                                 0.0f);
+                } else if (x < 16) {
+                    assertEquals(computeWaterVapour(x, y), grid.getWaterVapour(x, y), 0.0f);
+                }
+            }
+        }
+    }
+
+    private FlintWaterVapourGrid.PixelSource createPixelSource(final int[] numberOfExactComputations) {
+        return new FlintWaterVapourGrid.PixelSource() {
+            @Override
+            public float computeWaterVapour(int x, int y) {
+                numberOfExactComputations[0]++;
+                return FlintWaterVapourGridTest.this.computeWaterVapour(x, y);
+            }
+
+            @Override
+            public double getRadianceRatio(int x, int y) {
+                return FlintSolarPart37WaterVapour.getRadianceRatio(merisRad14[y * WIDTH + x],
+                                                                    merisRad15[y * WIDTH + x]);
+            }
+        };
+    }
+
+    private float computeWaterVapour(int x, int y) {
+        final int i = y * WIDTH + x;
+        return waterVapour.computeWaterVapour(zonalWinds[i], 1.0f, 60.0f + 0.1f * x, 10.0f + 0.2f * x,
+                                              30.0f + 0.1f * y, merisRad14[i], merisRad15[i]);
+    }
+}